@@ -0,0 +1,189 @@
+package org.truffle.cs.mj.test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PrintStream;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.truffle.cs.mj.parser.RecursiveDescendScanner;
+import org.truffle.cs.mj.parser.RecursiveDescentParser;
+
+import com.oracle.truffle.api.CallTarget;
+import com.oracle.truffle.api.Truffle;
+
+/**
+ * Language features of MicroJava++, each with a program next to this class as <code>name.mj</code>
+ * whose <code>void main(int n)</code> has to print <code>name.expected</code> for the argument of
+ * its test, like the programs of {@link org.truffle.cs.mj.benchmarks.MJCorpus}. Main runs
+ * {@link #RUNS} times in the same call target, so the later runs also go through the specializations
+ * and speculations the earlier ones left behind. A program that has to fail instead, such as
+ * <code>bounds-failure.mj</code>, has no expected output. Run with <code>mx mjTest</code>.
+ */
+public class MJFeatureTest {
+
+    private static final int RUNS = 3;
+
+    /** <code>auto</code> locals: types inferred from the first assignment, slot kinds speculated. */
+    @Test
+    public void auto() {
+        assertOutput("auto", 10);
+    }
+
+    /** Built-in math functions on ints and doubles, and a program function hiding one of them. */
+    @Test
+    public void math() {
+        assertOutput("math", 10);
+    }
+
+    /** Bitwise and shift operators, their precedence and their compound assignments. */
+    @Test
+    public void bitwise() {
+        assertOutput("bitwise", 10);
+    }
+
+    /** Class instances: default field values, references, aliasing, null and arrays of references. */
+    @Test
+    public void classes() {
+        assertOutput("classes", 10);
+    }
+
+    /** Cached field accesses: ints stored in double fields, compound assignments and field chains. */
+    @Test
+    public void fields() {
+        assertOutput("fields", 10);
+    }
+
+    /** Flattened arrays of structs: zeroed elements, field accesses and copies in and out. */
+    @Test
+    public void structArrays() {
+        assertOutput("structs", 10);
+    }
+
+    /** <code>for</code> loops, counted or not, and <code>foreach</code> over arrays of each primitive. */
+    @Test
+    public void forLoops() {
+        assertOutput("for", 10);
+    }
+
+    /**
+     * Counted loops speculating that their index stays within the arrays it indexes, and loops whose
+     * index leaves them, which invalidates the speculation.
+     */
+    @Test
+    public void boundsSpeculation() {
+        assertOutput("bounds", 10);
+    }
+
+    /** A counted loop that indexes past its array still fails, however it speculates. */
+    @Test
+    public void boundsFailure() {
+        assertFailure("bounds-failure", 10, ArrayIndexOutOfBoundsException.class);
+    }
+
+    /** Self tail calls, recursing deeper than the stack allows. */
+    @Test
+    public void selfTailCalls() {
+        assertOutput("self-tail", 10);
+    }
+
+    /**
+     * Tail calls through the trampoline of <code>tail</code> functions: mutual recursion deeper than
+     * the stack allows, more targets than the trampoline caches, and calls that are not in tail
+     * position.
+     */
+    @Test
+    public void tailFunctions() {
+        assertOutput("tail", 10);
+    }
+
+    /**
+     * Memoized calls of <code>pure</code> functions, with negative and char arguments, more keys than
+     * the memo table holds, and self tail calls.
+     */
+    @Test
+    public void pureFunctions() {
+        assertOutput("pure", 10);
+    }
+
+    /** <code>final</code> globals evaluated while parsing, from operators, intrinsics and pure calls. */
+    @Test
+    public void constantFolding() {
+        assertOutput("constants", 10);
+    }
+
+    /**
+     * Mutable globals of every kind, read as stable values until they are written again. Each run has
+     * to start from the default values.
+     */
+    @Test
+    public void globals() {
+        assertOutput("globals", 10);
+    }
+
+    private static void assertOutput(String name, int argument) {
+        RecursiveDescentParser parser = parse(name);
+        CallTarget callTarget = Truffle.getRuntime().createCallTarget(parser.getMain());
+        String expected = read(name + ".expected");
+        for (int run = 1; run <= RUNS; run++) {
+            parser.getGlobals().startRun();
+            Assert.assertEquals(name + ".mj, run " + run, expected, run(callTarget, argument));
+        }
+    }
+
+    /** Every run of <code>name.mj</code> has to throw <code>failure</code>. */
+    private static void assertFailure(String name, int argument, Class<? extends RuntimeException> failure) {
+        RecursiveDescentParser parser = parse(name);
+        CallTarget callTarget = Truffle.getRuntime().createCallTarget(parser.getMain());
+        for (int run = 1; run <= RUNS; run++) {
+            parser.getGlobals().startRun();
+            RuntimeException thrown = null;
+            try {
+                run(callTarget, argument);
+            } catch (RuntimeException e) {
+                thrown = e;
+            }
+            Assert.assertNotNull(name + ".mj, run " + run + " did not fail", thrown);
+            Assert.assertEquals(name + ".mj, run " + run, failure, thrown.getClass());
+        }
+    }
+
+    private static RecursiveDescentParser parse(String name) {
+        RecursiveDescentParser parser = new RecursiveDescentParser(new RecursiveDescendScanner(new StringReader(read(name + ".mj"))));
+        parser.parse();
+        return parser;
+    }
+
+    /** What <code>callTarget</code> prints for <code>argument</code>. */
+    private static String run(CallTarget callTarget, int argument) {
+        PrintStream out = System.out;
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        try {
+            System.setOut(new PrintStream(output, true));
+            callTarget.call(argument);
+        } finally {
+            System.setOut(out);
+        }
+        return new String(output.toByteArray()).replace("\r\n", "\n");
+    }
+
+    private static String read(String resource) {
+        try (InputStream in = MJFeatureTest.class.getResourceAsStream(resource)) {
+            if (in == null) {
+                throw new Error("Missing test resource " + resource);
+            }
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            byte[] buffer = new byte[4096];
+            int read;
+            while ((read = in.read(buffer)) > 0) {
+                bytes.write(buffer, 0, read);
+            }
+            return new String(bytes.toByteArray(), StandardCharsets.UTF_8);
+        } catch (IOException e) {
+            throw new Error("Cannot read test resource " + resource + ": " + e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,166 @@
+package org.truffle.cs.mj.test;
+
+import java.io.StringReader;
+import java.util.List;
+
+import org.graalvm.compiler.graph.Node;
+import org.graalvm.compiler.nodes.LoopBeginNode;
+import org.graalvm.compiler.nodes.StructuredGraph;
+import org.graalvm.compiler.nodes.StructuredGraph.AllowAssumptions;
+import org.graalvm.compiler.nodes.extended.BoxNode;
+import org.graalvm.compiler.nodes.java.MethodCallTargetNode;
+import org.graalvm.compiler.nodes.java.NewArrayNode;
+import org.graalvm.compiler.nodes.java.NewInstanceNode;
+import org.graalvm.compiler.nodes.virtual.CommitAllocationNode;
+import org.graalvm.compiler.phases.common.CanonicalizerPhase;
+import org.graalvm.compiler.truffle.runtime.OptimizedCallTarget;
+import org.graalvm.compiler.truffle.test.PartialEvaluationTest;
+import org.graalvm.compiler.virtual.phases.ea.PartialEscapePhase;
+import org.junit.Assert;
+import org.junit.Test;
+import org.truffle.cs.mj.nodes.MJFunction;
+import org.truffle.cs.mj.parser.RecursiveDescendScanner;
+import org.truffle.cs.mj.parser.RecursiveDescentParser;
+import org.truffle.cs.mj.tools.MJSpecializationReport;
+
+import com.oracle.truffle.api.Truffle;
+
+/**
+ * What partial evaluation has to make of key MicroJava++ snippets. Each snippet runs in the
+ * interpreter until its nodes are specialized, and then the graph of its main function, after escape
+ * analysis, must
+ * <ul>
+ * <li>allocate no frames, return or tail call exceptions, argument arrays or boxes, only the arrays
+ * the program creates itself;</li>
+ * <li>have exactly the loops of the source, so that walks over frame links and the nodes of blocks
+ * and calls were unrolled;</li>
+ * <li>call nothing.</li>
+ * </ul>
+ * Every node of a snippet also has to stay in a monomorphic specialization, see
+ * {@link MJSpecializationReport}. Run with <code>mx mjTest</code>.
+ */
+public class MJPartialEvaluationTest extends PartialEvaluationTest {
+
+    /** Calls of a snippet before its graph is built. */
+    private static final int WARMUP = 10;
+
+    @Test
+    public void localVariableLoop() {
+        assertPartialEvaluation("" +
+                        "program P {\n" +
+                        "  int main(int n) int i, s; {\n" +
+                        "    s = 0;\n" +
+                        "    for (i = 0; i < n; i++) { s += i * 2; }\n" +
+                        "    return s;\n" +
+                        "  }\n" +
+                        "}", 1, 0, 999000, 1000);
+    }
+
+    @Test
+    public void parameterReads() {
+        assertPartialEvaluation("" +
+                        "program P {\n" +
+                        "  int main(int n, int k) int i, s; {\n" +
+                        "    s = 0;\n" +
+                        "    i = 0;\n" +
+                        "    while (i < n) { s += k - i % k; i++; }\n" +
+                        "    return s;\n" +
+                        "  }\n" +
+                        "}", 1, 0, 4003, 1000, 7);
+    }
+
+    @Test
+    public void calls() {
+        assertPartialEvaluation("" +
+                        "program P {\n" +
+                        "  int add(int a, int b) { return a + b; }\n" +
+                        "  int twice(int x) { return add(x, x); }\n" +
+                        "  int main(int n) int i, s; {\n" +
+                        "    s = 0;\n" +
+                        "    for (i = 0; i < n; i++) { s = add(s, twice(i)); }\n" +
+                        "    return s;\n" +
+                        "  }\n" +
+                        "}", 1, 0, 9900, 100);
+    }
+
+    @Test
+    public void arrayLoop() {
+        assertPartialEvaluation("" +
+                        "program P {\n" +
+                        "  int main(int n) int[] a; double[] d; int i, s; {\n" +
+                        "    a = new int[n];\n" +
+                        "    d = new double[n];\n" +
+                        "    for (i = 0; i < len(a); i++) { a[i] = i; d[i] = i; }\n" +
+                        "    s = 0;\n" +
+                        "    for (i = 0; i < len(a); i++) { s += a[i]; d[i] = d[i] * 2; }\n" +
+                        "    return s;\n" +
+                        "  }\n" +
+                        "}", 2, 2, 499500, 1000);
+    }
+
+    @Test
+    public void variablesOfEnclosingBlocks() {
+        assertPartialEvaluation("" +
+                        "program P {\n" +
+                        "  int main(int n) int s; {\n" +
+                        "    { s = 0;\n" +
+                        "      for (int i = 0; i < n; i++) { { s = s + i; } }\n" +
+                        "      return s; }\n" +
+                        "  }\n" +
+                        "}", 1, 0, 499500, 1000);
+    }
+
+    @Test
+    public void returnFromLoop() {
+        assertPartialEvaluation("" +
+                        "program P {\n" +
+                        "  int main(int n) int i; {\n" +
+                        "    for (i = 0; i < n; i++) { if (i * i >= n) { return i; } }\n" +
+                        "    return -1;\n" +
+                        "  }\n" +
+                        "}", 1, 0, 32, 1000);
+    }
+
+    @Test
+    public void selfTailCall() {
+        assertPartialEvaluation("" +
+                        "program P {\n" +
+                        "  int sum(int n, int s) {\n" +
+                        "    { if (n == 0) { return s; } return sum(n - 1, s + n); }\n" +
+                        "  }\n" +
+                        "  int main(int n) { return sum(n, 0); }\n" +
+                        "}", 1, 0, 500500, 1000);
+    }
+
+    /**
+     * Runs the main function of <code>source</code> with <code>arguments</code>, which has to return
+     * <code>expected</code>, and checks its graph for <code>loops</code> loops and
+     * <code>arrays</code> array allocations.
+     */
+    private void assertPartialEvaluation(String source, int loops, int arrays, Object expected, Object... arguments) {
+        RecursiveDescentParser parser = new RecursiveDescentParser(new RecursiveDescendScanner(new StringReader(source)));
+        parser.parse();
+        OptimizedCallTarget target = (OptimizedCallTarget) Truffle.getRuntime().createCallTarget(parser.getMain());
+        for (int i = 0; i < WARMUP; i++) {
+            Assert.assertEquals(expected, target.call(arguments));
+        }
+        for (MJFunction function : parser.functions) {
+            List<String> nodes = MJSpecializationReport.findPolymorphicOrGeneric(function);
+            Assert.assertTrue(function.getName() + " is not monomorphic: " + nodes, nodes.isEmpty());
+        }
+
+        StructuredGraph graph = partialEval(target, arguments, AllowAssumptions.YES, getCompilationId(target));
+        new PartialEscapePhase(true, new CanonicalizerPhase(), graph.getOptions()).apply(graph, getDefaultHighTierContext());
+
+        assertNone(graph, NewInstanceNode.class);
+        assertNone(graph, CommitAllocationNode.class);
+        assertNone(graph, BoxNode.class);
+        assertNone(graph, MethodCallTargetNode.class);
+        Assert.assertEquals("array allocations", arrays, graph.getNodes().filter(NewArrayNode.class).count());
+        Assert.assertEquals("loops", loops, graph.getNodes().filter(LoopBeginNode.class).count());
+    }
+
+    private static void assertNone(StructuredGraph graph, Class<? extends Node> nodeClass) {
+        Assert.assertEquals(nodeClass.getSimpleName() + " nodes in " + graph, 0, graph.getNodes().filter(nodeClass).count());
+    }
+}
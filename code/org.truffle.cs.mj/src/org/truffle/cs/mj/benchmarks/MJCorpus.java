@@ -0,0 +1,105 @@
+package org.truffle.cs.mj.benchmarks;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Benchmark programs written in MicroJava++, next to this class as <code>name.mj</code>, each with
+ * the output its <code>void main(int n)</code> prints for the argument it is checked with in
+ * <code>name.expected</code>. Together they cover arithmetic on ints and doubles, arrays, calls,
+ * recursion, allocation and field accesses.
+ * <p>
+ * The arguments are small enough for the interpreter; benchmarks pass larger ones.
+ */
+public final class MJCorpus {
+
+    private static final List<Program> PROGRAMS = Collections.unmodifiableList(Arrays.asList(
+                    new Program("binarytrees", 10, "allocation, recursion, field reads"),
+                    new Program("fannkuch", 7, "int array permutations"),
+                    new Program("mandelbrot", 200, "double arithmetic, bit operations"),
+                    new Program("matmul", 60, "double arrays, nested loops"),
+                    new Program("nbody", 1000, "objects with double fields, sqrt"),
+                    new Program("richards", 1000, "object graphs, dispatch on task kinds"),
+                    new Program("sieve", 100000, "int arrays, loops"),
+                    new Program("spectralnorm", 100, "calls in loops, double division")));
+
+    private MJCorpus() {
+    }
+
+    public static List<Program> getPrograms() {
+        return PROGRAMS;
+    }
+
+    /** The program called <code>name</code>, or null if there is none. */
+    public static Program get(String name) {
+        for (Program program : PROGRAMS) {
+            if (program.getName().equals(name)) {
+                return program;
+            }
+        }
+        return null;
+    }
+
+    /** One program of the corpus. */
+    public static final class Program {
+        private final String name;
+        private final int argument;
+        private final String description;
+
+        Program(String name, int argument, String description) {
+            this.name = name;
+            this.argument = argument;
+            this.description = description;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        /** The argument of main the expected output is for. */
+        public int getArgument() {
+            return argument;
+        }
+
+        /** What the program exercises. */
+        public String getDescription() {
+            return description;
+        }
+
+        public String getSource() {
+            return read(name + ".mj");
+        }
+
+        /** The lines main prints for {@link #getArgument()}, each ended by a newline. */
+        public String getExpectedOutput() {
+            return read(name + ".expected");
+        }
+
+        private static String read(String resource) {
+            try (InputStream in = MJCorpus.class.getResourceAsStream(resource)) {
+                if (in == null) {
+                    throw new Error("Missing benchmark resource " + resource);
+                }
+                ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+                byte[] buffer = new byte[4096];
+                int read;
+                while ((read = in.read(buffer)) > 0) {
+                    bytes.write(buffer, 0, read);
+                }
+                return new String(bytes.toByteArray(), StandardCharsets.UTF_8);
+            } catch (IOException e) {
+                throw new Error("Cannot read benchmark resource " + resource + ": " + e.getMessage());
+            }
+        }
+
+        @Override
+        public String toString() {
+            return name + "(" + argument + ")";
+        }
+    }
+}
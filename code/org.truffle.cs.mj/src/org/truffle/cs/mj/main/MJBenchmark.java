@@ -0,0 +1,327 @@
+package org.truffle.cs.mj.main;
+
+import java.io.BufferedReader;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.io.StringReader;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+import org.truffle.cs.mj.benchmarks.MJCorpus;
+import org.truffle.cs.mj.parser.RecursiveDescendScanner;
+import org.truffle.cs.mj.parser.RecursiveDescentParser;
+
+import com.oracle.truffle.api.CallTarget;
+import com.oracle.truffle.api.Truffle;
+
+/**
+ * Measures how MicroJava++ programs start up and warm up. Every program runs in a fresh JVM, started
+ * with the options and class path of this one, which reports
+ * <ul>
+ * <li>the time to parse the program and to create the call target of its main function;</li>
+ * <li>the latency of every one of <code>--iterations</code> calls of main, the warmup curve;</li>
+ * <li>the time from the start of its JVM to the first result;</li>
+ * <li>the mean latency of the last <code>--steady</code> iterations, and the calls per second it
+ * amounts to.</li>
+ * </ul>
+ * The results are written as CSV, one row per program, or as JSON. With <code>--label</code>, every
+ * row carries the version it measured, so the CSV of several versions can be concatenated and charted.
+ *
+ * <pre>
+ * MJBenchmark [--iterations n] [--steady n] [--format csv|json] [--output file] [--label version] [--corpus] program.mj[:arg,...]...
+ * </pre>
+ *
+ * Programs are parsed and called as by {@link MJRuntime}, with the given int arguments; their own
+ * output is discarded. Every iteration starts with the globals at their default values. A program of the {@link MJCorpus} can be given by its name, by default with
+ * its own argument, and <code>--corpus</code> runs all of them.
+ */
+public final class MJBenchmark {
+
+    /** Prefix of the lines a measuring JVM reports on, to tell them from the program's output. */
+    private static final String REPORT = "#mj-benchmark ";
+
+    private int iterations = 50;
+    private int steady = 10;
+    private String format = "csv";
+    private String output = "";
+    private String label = "";
+    private final List<String> programs = new ArrayList<>();
+
+    private MJBenchmark() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        if (args.length > 0 && args[0].equals("--measure")) {
+            measure(args[1], Integer.parseInt(args[2]));
+            return;
+        }
+        MJBenchmark benchmark = new MJBenchmark();
+        benchmark.parseArguments(args);
+        List<Result> results = new ArrayList<>();
+        for (String program : benchmark.programs) {
+            System.err.println("[mj] benchmarking " + program);
+            results.add(benchmark.run(program));
+        }
+        PrintStream out = benchmark.output.isEmpty() ? System.out : new PrintStream(new FileOutputStream(benchmark.output), true, "UTF-8");
+        if (benchmark.format.equals("json")) {
+            benchmark.writeJson(results, out);
+        } else {
+            benchmark.writeCsv(results, out);
+        }
+        out.flush();
+        if (out != System.out) {
+            out.close();
+        }
+    }
+
+    private void parseArguments(String[] args) {
+        for (int i = 0; i < args.length; i++) {
+            String arg = args[i];
+            if (arg.startsWith("--") && !arg.equals("--corpus") && i + 1 == args.length) {
+                throw new Error("Missing value of " + arg);
+            }
+            if (arg.equals("--iterations")) {
+                iterations = Integer.parseInt(args[++i]);
+            } else if (arg.equals("--steady")) {
+                steady = Integer.parseInt(args[++i]);
+            } else if (arg.equals("--format")) {
+                format = args[++i];
+                if (!format.equals("csv") && !format.equals("json")) {
+                    throw new Error("Unknown format " + format + ", expected csv or json");
+                }
+            } else if (arg.equals("--output")) {
+                output = args[++i];
+            } else if (arg.equals("--label")) {
+                label = args[++i];
+            } else if (arg.equals("--corpus")) {
+                for (MJCorpus.Program program : MJCorpus.getPrograms()) {
+                    programs.add(program.getName());
+                }
+            } else if (arg.startsWith("--")) {
+                throw new Error("Unknown option " + arg);
+            } else {
+                programs.add(arg);
+            }
+        }
+        if (programs.isEmpty()) {
+            throw new Error("Usage: MJBenchmark [--iterations n] [--steady n] [--format csv|json] [--output file] [--label version] [--corpus] program.mj[:arg,...]...");
+        }
+        if (iterations < 1 || steady < 1) {
+            throw new Error("Iterations and steady iterations must be positive");
+        }
+        steady = Math.min(steady, iterations);
+    }
+
+    /** Runs <code>program</code> in a fresh JVM and collects what it reports. */
+    private Result run(String program) throws IOException, InterruptedException {
+        List<String> command = new ArrayList<>();
+        command.add(Paths.get(System.getProperty("java.home"), "bin", "java").toString());
+        for (String option : ManagementFactory.getRuntimeMXBean().getInputArguments()) {
+            // a debugger agent would clash on its port
+            if (!option.startsWith("-agentlib:jdwp") && !option.startsWith("-Xrunjdwp")) {
+                command.add(option);
+            }
+        }
+        command.add("-cp");
+        command.add(System.getProperty("java.class.path"));
+        command.add(MJBenchmark.class.getName());
+        command.add("--measure");
+        command.add(program);
+        command.add(String.valueOf(iterations));
+        Process process = new ProcessBuilder(command).redirectError(ProcessBuilder.Redirect.INHERIT).start();
+        Result result = new Result(program, iterations);
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(process.getInputStream(), StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.startsWith(REPORT)) {
+                    result.report(line.substring(REPORT.length()));
+                }
+            }
+        }
+        int exitCode = process.waitFor();
+        if (exitCode != 0 || result.completed < iterations) {
+            throw new Error("Benchmark " + program + " failed with exit code " + exitCode + " after " + result.completed + " iterations");
+        }
+        return result;
+    }
+
+    /** What the measuring JVM does: parse, create the call target and call main repeatedly. */
+    private static void measure(String program, int iterations) throws IOException {
+        int colon = program.lastIndexOf(':');
+        if (colon >= 0 && !program.substring(colon + 1).matches("[-0-9, ]*")) {
+            colon = -1;
+        }
+        String path = colon < 0 ? program : program.substring(0, colon);
+        Object[] arguments = colon < 0 ? new Object[0] : parseIntegers(program.substring(colon + 1));
+        String code;
+        MJCorpus.Program corpusProgram = MJCorpus.get(path);
+        if (corpusProgram != null && !Files.exists(Paths.get(path))) {
+            code = corpusProgram.getSource();
+            if (colon < 0) {
+                arguments = new Object[]{corpusProgram.getArgument()};
+            }
+        } else {
+            code = new String(Files.readAllBytes(Paths.get(path)), StandardCharsets.UTF_8);
+        }
+        // the reports go to the original stream, everything the program prints is dropped
+        PrintStream reports = System.out;
+        System.setOut(new PrintStream(new OutputStream() {
+            @Override
+            public void write(int b) {
+            }
+
+            @Override
+            public void write(byte[] b, int off, int len) {
+            }
+        }));
+
+        long start = System.nanoTime();
+        RecursiveDescentParser parser = new RecursiveDescentParser(new RecursiveDescendScanner(new StringReader(code)));
+        parser.parse();
+        long parsed = System.nanoTime();
+        if (parser.getMain() == null) {
+            throw new Error("Program " + path + " has no main function");
+        }
+        CallTarget callTarget = Truffle.getRuntime().createCallTarget(parser.getMain());
+        long created = System.nanoTime();
+        reports.println(REPORT + "parse " + (parsed - start));
+        reports.println(REPORT + "callTarget " + (created - parsed));
+
+        for (int i = 0; i < iterations; i++) {
+            parser.getGlobals().startRun();
+            long before = System.nanoTime();
+            Object result = callTarget.call(arguments);
+            long latency = System.nanoTime() - before;
+            if (i == 0) {
+                reports.println(REPORT + "firstResult " + ManagementFactory.getRuntimeMXBean().getUptime() + " " + result);
+            }
+            reports.println(REPORT + "iteration " + latency);
+        }
+        reports.flush();
+    }
+
+    private static Object[] parseIntegers(String list) {
+        if (list.isEmpty()) {
+            return new Object[0];
+        }
+        String[] parts = list.split(",");
+        Object[] values = new Object[parts.length];
+        for (int i = 0; i < parts.length; i++) {
+            values[i] = Integer.parseInt(parts[i].trim());
+        }
+        return values;
+    }
+
+    private void writeCsv(List<Result> results, PrintStream out) {
+        StringBuilder header = new StringBuilder("label,benchmark,result,parse_ms,call_target_ms,first_result_ms,steady_ms,throughput_per_s");
+        for (int i = 1; i <= iterations; i++) {
+            header.append(",iteration_").append(i).append("_ms");
+        }
+        out.println(header);
+        for (Result result : results) {
+            StringBuilder row = new StringBuilder();
+            row.append(csv(label)).append(',').append(csv(result.program)).append(',').append(csv(result.value));
+            row.append(',').append(millis(result.parseNanos)).append(',').append(millis(result.callTargetNanos));
+            row.append(',').append(result.firstResultMillis).append(',').append(millis(result.steadyNanos(steady)));
+            row.append(',').append(format(result.throughput(steady)));
+            for (long latency : result.latencies) {
+                row.append(',').append(millis(latency));
+            }
+            out.println(row);
+        }
+    }
+
+    private void writeJson(List<Result> results, PrintStream out) {
+        out.println("{");
+        out.println("  \"label\": " + json(label) + ",");
+        out.println("  \"iterations\": " + iterations + ",");
+        out.println("  \"steadyIterations\": " + steady + ",");
+        out.println("  \"benchmarks\": [");
+        for (int r = 0; r < results.size(); r++) {
+            Result result = results.get(r);
+            out.println("    {");
+            out.println("      \"benchmark\": " + json(result.program) + ",");
+            out.println("      \"result\": " + json(result.value) + ",");
+            out.println("      \"parseMs\": " + millis(result.parseNanos) + ",");
+            out.println("      \"callTargetMs\": " + millis(result.callTargetNanos) + ",");
+            out.println("      \"firstResultMs\": " + result.firstResultMillis + ",");
+            out.println("      \"steadyMs\": " + millis(result.steadyNanos(steady)) + ",");
+            out.println("      \"throughputPerS\": " + format(result.throughput(steady)) + ",");
+            StringBuilder latencies = new StringBuilder();
+            for (int i = 0; i < result.latencies.length; i++) {
+                latencies.append(i == 0 ? "" : ", ").append(millis(result.latencies[i]));
+            }
+            out.println("      \"iterationsMs\": [" + latencies + "]");
+            out.println(r == results.size() - 1 ? "    }" : "    },");
+        }
+        out.println("  ]");
+        out.println("}");
+    }
+
+    private static String millis(double nanos) {
+        return format(nanos / 1e6);
+    }
+
+    private static String format(double value) {
+        return String.format(Locale.ROOT, "%.3f", value);
+    }
+
+    private static String csv(String value) {
+        return value.indexOf(',') < 0 && value.indexOf('"') < 0 ? value : "\"" + value.replace("\"", "\"\"") + "\"";
+    }
+
+    private static String json(String value) {
+        return "\"" + value.replace("\\", "\\\\").replace("\"", "\\\"") + "\"";
+    }
+
+    /** What one measuring JVM reported. */
+    private static final class Result {
+        final String program;
+        final long[] latencies;
+        int completed;
+        long parseNanos;
+        long callTargetNanos;
+        long firstResultMillis;
+        String value = "";
+
+        Result(String program, int iterations) {
+            this.program = program;
+            this.latencies = new long[iterations];
+        }
+
+        void report(String line) {
+            String[] parts = line.split(" ", 3);
+            if (parts[0].equals("parse")) {
+                parseNanos = Long.parseLong(parts[1]);
+            } else if (parts[0].equals("callTarget")) {
+                callTargetNanos = Long.parseLong(parts[1]);
+            } else if (parts[0].equals("firstResult")) {
+                firstResultMillis = Long.parseLong(parts[1]);
+                value = parts[2];
+            } else if (parts[0].equals("iteration") && completed < latencies.length) {
+                latencies[completed++] = Long.parseLong(parts[1]);
+            }
+        }
+
+        /** Mean latency of the last <code>steady</code> iterations. */
+        double steadyNanos(int steady) {
+            long sum = 0;
+            for (int i = latencies.length - steady; i < latencies.length; i++) {
+                sum += latencies[i];
+            }
+            return (double) sum / steady;
+        }
+
+        double throughput(int steady) {
+            return 1e9 / Math.max(1, steadyNanos(steady));
+        }
+    }
+}
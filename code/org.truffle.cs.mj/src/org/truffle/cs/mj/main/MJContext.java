@@ -0,0 +1,76 @@
+package org.truffle.cs.mj.main;
+
+import org.truffle.cs.mj.nodes.MJGlobalValues;
+import org.truffle.cs.mj.nodes.MJGlobals;
+import org.truffle.cs.mj.tools.MJCompilationLog;
+import org.truffle.cs.mj.tools.MJProfiler;
+
+import com.oracle.truffle.api.CompilerDirectives;
+import com.oracle.truffle.api.CompilerDirectives.TruffleBoundary;
+import com.oracle.truffle.api.TruffleLanguage.Env;
+import com.oracle.truffle.api.nodes.Node;
+import com.oracle.truffle.api.nodes.RootNode;
+
+/**
+ * The state of one context of {@link MJLanguage}: the values of the globals of the programs it runs,
+ * and the tools its options started. Parsed programs are shared between contexts, so anything a run
+ * changes lives here.
+ */
+public final class MJContext {
+
+    private final Env env;
+    private final MJProfiler profiler;
+    private final MJCompilationLog compilationLog;
+    /** The values of every program, by {@link MJGlobals#getId}. */
+    private MJGlobalValues[] globals = new MJGlobalValues[0];
+
+    MJContext(Env env, MJProfiler profiler, MJCompilationLog compilationLog) {
+        this.env = env;
+        this.profiler = profiler;
+        this.compilationLog = compilationLog;
+    }
+
+    /** The context running <code>node</code>, <code>null</code> if it runs outside of an engine. */
+    public static MJContext get(Node node) {
+        RootNode root = node.getRootNode();
+        if (root == null || root.getLanguageInfo() == null) {
+            return null;
+        }
+        return MJLanguage.getCurrentContext();
+    }
+
+    public Env getEnv() {
+        return env;
+    }
+
+    /** The profiler of <code>--mj.profile</code>, <code>null</code> if not profiling. */
+    public MJProfiler getProfiler() {
+        return profiler;
+    }
+
+    /** The log of <code>--mj.compilation-log</code>, <code>null</code> if not logging. */
+    public MJCompilationLog getCompilationLog() {
+        return compilationLog;
+    }
+
+    /** The values of the globals of <code>program</code> in this context. */
+    public MJGlobalValues getGlobals(MJGlobals program) {
+        int id = program.getId();
+        if (id >= globals.length || globals[id] == null) {
+            CompilerDirectives.transferToInterpreter();
+            allocateGlobals(program);
+        }
+        return globals[id];
+    }
+
+    @TruffleBoundary
+    private void allocateGlobals(MJGlobals program) {
+        int id = program.getId();
+        if (id >= globals.length) {
+            MJGlobalValues[] grown = new MJGlobalValues[Math.max(id + 1, globals.length * 2)];
+            System.arraycopy(globals, 0, grown, 0, globals.length);
+            globals = grown;
+        }
+        globals[id] = program.newValues();
+    }
+}
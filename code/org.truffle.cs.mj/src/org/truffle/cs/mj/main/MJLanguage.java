@@ -0,0 +1,156 @@
+package org.truffle.cs.mj.main;
+
+import org.graalvm.options.OptionCategory;
+import org.graalvm.options.OptionDescriptors;
+import org.graalvm.options.OptionKey;
+import org.graalvm.options.OptionStability;
+import org.truffle.cs.mj.nodes.MJFunction;
+import org.truffle.cs.mj.nodes.MJGlobals;
+import org.truffle.cs.mj.nodes.MJTags;
+import org.truffle.cs.mj.parser.RecursiveDescendScanner;
+import org.truffle.cs.mj.parser.RecursiveDescentParser;
+import org.truffle.cs.mj.tools.MJCompilationLog;
+import org.truffle.cs.mj.tools.MJProfiler;
+
+import com.oracle.truffle.api.CallTarget;
+import com.oracle.truffle.api.Option;
+import com.oracle.truffle.api.Truffle;
+import com.oracle.truffle.api.TruffleLanguage;
+import com.oracle.truffle.api.frame.VirtualFrame;
+import com.oracle.truffle.api.instrumentation.ProvidedTags;
+import com.oracle.truffle.api.instrumentation.StandardTags;
+import com.oracle.truffle.api.interop.InteropLibrary;
+import com.oracle.truffle.api.interop.TruffleObject;
+import com.oracle.truffle.api.library.ExportLibrary;
+import com.oracle.truffle.api.library.ExportMessage;
+import com.oracle.truffle.api.nodes.DirectCallNode;
+import com.oracle.truffle.api.nodes.RootNode;
+import com.oracle.truffle.api.object.DynamicObject;
+import com.oracle.truffle.api.source.Source;
+
+/**
+ * MicroJava++ as a Truffle language, so programs can run in a polyglot engine and the Truffle tools
+ * (CPU sampler, tracer, coverage, ...) can instrument them through the tags below; allocation sites
+ * carry {@link MJTags.AllocationTag}. Evaluating a program calls its <code>main</code> with the
+ * arguments of the evaluation, if any; a <code>void</code> main evaluates to null. Every evaluation
+ * starts with the globals at their default values, which each {@link MJContext} keeps on its own.
+ * <p>
+ * {@link MJRuntime} runs programs without an engine; their nodes then have no language and are not
+ * instrumentable.
+ * <p>
+ * <code>--mj.profile</code> samples the program's stacks while it runs, see {@link MJProfiler}, and
+ * <code>--mj.compilation-log</code> logs when its functions are compiled and deoptimized, see
+ * {@link MJCompilationLog}.
+ */
+@TruffleLanguage.Registration(id = MJLanguage.ID, name = "MicroJava++", defaultMimeType = MJLanguage.MIME_TYPE, characterMimeTypes = MJLanguage.MIME_TYPE)
+@ProvidedTags({StandardTags.RootTag.class, StandardTags.StatementTag.class, StandardTags.CallTag.class, StandardTags.ExpressionTag.class, MJTags.AllocationTag.class})
+public final class MJLanguage extends TruffleLanguage<MJContext> {
+
+    public static final String ID = "mj";
+    public static final String MIME_TYPE = "application/x-mj";
+
+    @Option(name = "profile", help = "Sample the running functions and write their stacks for flame graphs.", category = OptionCategory.USER, stability = OptionStability.STABLE) //
+    static final OptionKey<Boolean> PROFILE = new OptionKey<>(false);
+
+    @Option(name = "profile.output", help = "File the collapsed stacks of --mj.profile are written to.", category = OptionCategory.USER, stability = OptionStability.STABLE) //
+    static final OptionKey<String> PROFILE_OUTPUT = new OptionKey<>("mj-profile.collapsed");
+
+    @Option(name = "profile.interval", help = "Milliseconds between two samples of --mj.profile.", category = OptionCategory.USER, stability = OptionStability.STABLE) //
+    static final OptionKey<Integer> PROFILE_INTERVAL = new OptionKey<>(10);
+
+    @Option(name = "compilation-log", help = "Log compilations, deopts and invalidations by MicroJava++ function and line.", category = OptionCategory.USER, stability = OptionStability.STABLE) //
+    static final OptionKey<Boolean> COMPILATION_LOG = new OptionKey<>(false);
+
+    @Option(name = "compilation-log.output", help = "File --mj.compilation-log writes to, the error stream if empty.", category = OptionCategory.USER, stability = OptionStability.STABLE) //
+    static final OptionKey<String> COMPILATION_LOG_OUTPUT = new OptionKey<>("");
+
+    @Option(name = "compilation-log.threshold", help = "Deopts after which --mj.compilation-log flags a function.", category = OptionCategory.USER, stability = OptionStability.STABLE) //
+    static final OptionKey<Integer> COMPILATION_LOG_THRESHOLD = new OptionKey<>(5);
+
+    @Override
+    protected OptionDescriptors getOptionDescriptors() {
+        return new MJLanguageOptionDescriptors();
+    }
+
+    @Override
+    protected MJContext createContext(Env env) {
+        MJProfiler profiler = null;
+        if (env.getOptions().get(PROFILE)) {
+            profiler = MJProfiler.start(env.getOptions().get(PROFILE_INTERVAL));
+        }
+        MJCompilationLog compilationLog = null;
+        if (env.getOptions().get(COMPILATION_LOG)) {
+            compilationLog = MJCompilationLog.start(env.getOptions().get(COMPILATION_LOG_OUTPUT), env.err(), env.getOptions().get(COMPILATION_LOG_THRESHOLD));
+        }
+        return new MJContext(env, profiler, compilationLog);
+    }
+
+    @Override
+    protected void disposeContext(MJContext context) {
+        Env env = context.getEnv();
+        if (context.getProfiler() != null) {
+            context.getProfiler().stop(env.getOptions().get(PROFILE_OUTPUT));
+        }
+        if (context.getCompilationLog() != null) {
+            context.getCompilationLog().stop();
+        }
+    }
+
+    /** The context of the program running on this thread. */
+    public static MJContext getCurrentContext() {
+        return getCurrentContext(MJLanguage.class);
+    }
+
+    @Override
+    protected boolean isObjectOfLanguage(Object object) {
+        return object instanceof DynamicObject || object == MJNull.INSTANCE;
+    }
+
+    @Override
+    protected CallTarget parse(ParsingRequest request) throws Exception {
+        Source source = request.getSource();
+        RecursiveDescentParser parser = new RecursiveDescentParser(new RecursiveDescendScanner(source.getReader()), source, this);
+        parser.parse();
+        MJFunction main = parser.getMain();
+        if (main == null) {
+            throw new Error("Program has no main function");
+        }
+        return Truffle.getRuntime().createCallTarget(new MJProgramRootNode(this, Truffle.getRuntime().createCallTarget(main), parser.getGlobals()));
+    }
+
+    /**
+     * Calls main with the globals at their default values, and turns its result into a value the
+     * engine accepts.
+     */
+    private static final class MJProgramRootNode extends RootNode {
+        @Child private DirectCallNode mainCall;
+        private final MJGlobals globals;
+
+        MJProgramRootNode(MJLanguage language, CallTarget main, MJGlobals globals) {
+            super(language);
+            this.mainCall = DirectCallNode.create(main);
+            this.globals = globals;
+        }
+
+        @Override
+        public Object execute(VirtualFrame frame) {
+            globals.startRun();
+            Object result = mainCall.call(frame.getArguments());
+            return result == null ? MJNull.INSTANCE : result;
+        }
+    }
+
+    /** The result of a <code>void</code> main, or of one returning <code>null</code>. */
+    @ExportLibrary(InteropLibrary.class)
+    static final class MJNull implements TruffleObject {
+        static final MJNull INSTANCE = new MJNull();
+
+        private MJNull() {
+        }
+
+        @ExportMessage
+        boolean isNull() {
+            return true;
+        }
+    }
+}
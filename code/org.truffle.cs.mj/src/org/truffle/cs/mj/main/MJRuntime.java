@@ -2,10 +2,17 @@
 package org.truffle.cs.mj.main;
 
 import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.InputStream;
 import java.io.InputStreamReader;
+import java.io.PrintStream;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 import java.util.Random;
 
+import org.truffle.cs.mj.benchmarks.MJCorpus;
 import org.truffle.cs.mj.parser.RecursiveDescendScanner;
 import org.truffle.cs.mj.parser.RecursiveDescentParser;
 
@@ -16,10 +23,17 @@ import com.oracle.truffle.api.TruffleRuntime;
 public class MJRuntime {
 
     public static void main(String[] args) {
+        if (args.length > 0 && args[0].equals("--corpus")) {
+            if (!runCorpus(Arrays.copyOfRange(args, 1, args.length))) {
+                System.exit(1);
+            }
+            return;
+        }
 // parseRD(SimpleRecursive);
 // parseRD(whileLoopRD);
 // parseRD(ifProgram);
         parseRDBenchmark(divAlgorithm);
+// parseRDTraversalBenchmark(listTraversal);
     }
 
     static String SimpleRecursive = ""//
@@ -116,9 +130,7 @@ public class MJRuntime {
                     + "                     return mul(b,a);"//
                     + "                 }"//
                     + "                 sum = 0;"//
-                    // TODO: Add abs function
-// + " i =abs(b);"//
-                    + "                 i = b;"//
+                    + "                 i = abs(b);"//
                     + "                 while(i>0) {"//
                     + "                     sum = sum +a;"//
                     + "                     i = i-1;"//
@@ -133,6 +145,67 @@ public class MJRuntime {
                     + "             }"//
                     + "}";
 
+    static String listTraversal = "program ListTraversal"//
+                    + "             class Node { int val; Node next; }"//
+                    + "             class Tree { int val; Tree left; Tree right; }"//
+                    + "{"//
+                    + "             Node buildList(int n) {"//
+                    + "                 Node head, x;"//
+                    + "                 int i;"//
+                    + "                 head = null;"//
+                    + "                 i = 0;"//
+                    + "                 while(i < n) {"//
+                    + "                     x = new Node;"//
+                    + "                     x.val = i;"//
+                    + "                     x.next = head;"//
+                    + "                     head = x;"//
+                    + "                     i++;"//
+                    + "                 }"//
+                    + "                 return head;"//
+                    + "             }"//
+                    + "             int sumList(Node list) {"//
+                    + "                 Node p;"//
+                    + "                 int sum;"//
+                    + "                 sum = 0;"//
+                    + "                 p = list;"//
+                    + "                 while(p != null) {"//
+                    + "                     sum += p.val;"//
+                    + "                     p = p.next;"//
+                    + "                 }"//
+                    + "                 return sum;"//
+                    + "             }"//
+                    + "             Tree buildTree(int depth) {"//
+                    + "                 Tree t;"//
+                    + "                 t = new Tree;"//
+                    + "                 t.val = depth;"//
+                    + "                 if(depth > 0) {"//
+                    + "                     t.left = buildTree(depth - 1);"//
+                    + "                     t.right = buildTree(depth - 1);"//
+                    + "                 }"//
+                    + "                 return t;"//
+                    + "             }"//
+                    + "             int sumTree(Tree t) {"//
+                    + "                 if(t == null) {"//
+                    + "                     return 0;"//
+                    + "                 }"//
+                    + "                 return t.val + sumTree(t.left) + sumTree(t.right);"//
+                    + "             }"//
+                    + "             int main(int n, int rounds) {"//
+                    + "                 Node list;"//
+                    + "                 Tree tree;"//
+                    + "                 int sum, i;"//
+                    + "                 list = buildList(n);"//
+                    + "                 tree = buildTree(10);"//
+                    + "                 sum = 0;"//
+                    + "                 i = 0;"//
+                    + "                 while(i < rounds) {"//
+                    + "                     sum = sum + sumList(list) + sumTree(tree);"//
+                    + "                     i++;"//
+                    + "                 }"//
+                    + "                 return sum;"//
+                    + "             }"//
+                    + "}";
+
     static void parseRD(String code) {
         InputStream is = new ByteArrayInputStream(code.getBytes());
         RecursiveDescendScanner scanner = new RecursiveDescendScanner(new InputStreamReader(is));
@@ -177,4 +250,73 @@ public class MJRuntime {
         System.out.println("#################################################################");
     }
 
+    /**
+     * Runs the programs of the {@link MJCorpus} called <code>names</code>, all of them if there are
+     * none, and compares what they print with their expected output.
+     */
+    static boolean runCorpus(String[] names) {
+        List<MJCorpus.Program> programs = new ArrayList<>();
+        for (String name : names) {
+            MJCorpus.Program program = MJCorpus.get(name);
+            if (program == null) {
+                throw new Error("No benchmark " + name + " in the corpus");
+            }
+            programs.add(program);
+        }
+        if (programs.isEmpty()) {
+            programs.addAll(MJCorpus.getPrograms());
+        }
+        boolean passed = true;
+        PrintStream out = System.out;
+        for (MJCorpus.Program program : programs) {
+            RecursiveDescentParser parser = new RecursiveDescentParser(new RecursiveDescendScanner(new StringReader(program.getSource())));
+            parser.parse();
+            CallTarget callTarget = Truffle.getRuntime().createCallTarget(parser.getMain());
+            ByteArrayOutputStream output = new ByteArrayOutputStream();
+            long start = System.currentTimeMillis();
+            try {
+                System.setOut(new PrintStream(output, true));
+                callTarget.call(program.getArgument());
+            } finally {
+                System.setOut(out);
+            }
+            long time = System.currentTimeMillis() - start;
+            String actual = new String(output.toByteArray()).replace("\r\n", "\n");
+            if (actual.equals(program.getExpectedOutput())) {
+                out.println(program + ": ok, " + time + " ms");
+            } else {
+                out.println(program + ": FAILED, " + time + " ms\n--- expected\n" + program.getExpectedOutput() + "--- actual\n" + actual);
+                passed = false;
+            }
+        }
+        return passed;
+    }
+
+    /** Traverses a list and a tree; once compiled, every field read in the loops is one guarded load. */
+    static void parseRDTraversalBenchmark(String code) {
+        InputStream is = new ByteArrayInputStream(code.getBytes());
+        RecursiveDescendScanner scanner = new RecursiveDescendScanner(new InputStreamReader(is));
+        RecursiveDescentParser parser = new RecursiveDescentParser(scanner);
+        parser.parse();
+        TruffleRuntime runtime = Truffle.getRuntime();
+        System.out.println("Calling main function...");
+        CallTarget callTarget = runtime.createCallTarget(parser.getMain());
+        System.out.println("#################################################################");
+
+        long start = System.currentTimeMillis();
+        callTarget.call(10000, 100);
+        long initialTimeNeeded = (System.currentTimeMillis() - start);
+        System.out.println("Time needed " + initialTimeNeeded);
+
+        // warmup
+        for (int i = 0; i < 200; i++) {
+            callTarget.call(1000, 10);
+        }
+        System.out.println("#################################################################");
+        start = System.currentTimeMillis();
+        Object result = callTarget.call(10000, 100);
+        System.out.println("Time needed " + (System.currentTimeMillis() - start) + "  | vs initial time=" + initialTimeNeeded + "  | result=" + result);
+        System.out.println("#################################################################");
+    }
+
 }
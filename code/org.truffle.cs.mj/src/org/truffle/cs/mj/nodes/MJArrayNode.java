@@ -1,249 +1,255 @@
 package org.truffle.cs.mj.nodes;
 
-import java.util.ArrayList;
-
-import javax.swing.text.StyledEditorKit.BoldAction;
-
+import org.truffle.cs.mj.parser.identifiertable.types.ArrayTypeDescriptor;
+import org.truffle.cs.mj.parser.identifiertable.types.ClassTypeDescriptor.FieldDescriptor;
+import org.truffle.cs.mj.parser.identifiertable.types.StructArray;
 import org.truffle.cs.mj.parser.identifiertable.types.TypeDescriptor;
-import org.truffle.cs.mj.parser.identifiertable.types.primitives.CharDescriptor;
-import org.truffle.cs.mj.parser.identifiertable.types.primitives.DoubleDescriptor;
 import org.truffle.cs.mj.parser.identifiertable.types.primitives.IntDescriptor;
-import org.truffle.cs.mj.parser.identifiertable.types.primitives.constants.ConstantTypeDescriptor;
 
 import com.oracle.truffle.api.CompilerDirectives;
+import com.oracle.truffle.api.dsl.Fallback;
+import com.oracle.truffle.api.dsl.ImportStatic;
 import com.oracle.truffle.api.dsl.NodeChild;
 import com.oracle.truffle.api.dsl.NodeField;
 import com.oracle.truffle.api.dsl.Specialization;
-import com.oracle.truffle.api.frame.FrameSlot;
-import com.oracle.truffle.api.frame.FrameSlotTypeException;
-import com.oracle.truffle.api.frame.VirtualFrame;
-import com.oracle.truffle.api.nodes.ExplodeLoop;
-
+import com.oracle.truffle.api.instrumentation.Tag;
+import com.oracle.truffle.api.object.DynamicObject;
+
+/**
+ * Arrays. Arrays of primitives are plain Java arrays, so every element access is one specialization
+ * doing an indexed load or store; see {@link ArrayTypeDescriptor} for the representation of the
+ * other arrays.
+ */
 public class MJArrayNode {
-    @NodeField(name = "slot", type = FrameSlot.class)
-    @NodeField(name = "type", type = TypeDescriptor.class)
-    @NodeChild(value = "index", type = MJExpressionNode.class)
-    public static abstract class MJReadArrayElement extends MJExpressionNode {
 
-        protected abstract FrameSlot getSlot();
+    @NodeChild(value = "length", type = MJExpressionNode.class)
+    @NodeField(name = "type", type = ArrayTypeDescriptor.class)
+    public static abstract class MJNewArrayNode extends MJExpressionNode {
+        @Override
+        public abstract ArrayTypeDescriptor getType();
 
         @Override
-        public abstract TypeDescriptor getType();
+        public boolean hasTag(Class<? extends Tag> tag) {
+            return tag == MJTags.AllocationTag.class || super.hasTag(tag);
+        }
+
+        @Specialization
+        public Object newArray(int length) {
+            if (length < 0)
+                throw new Error("Negative array length " + length);
+            return getType().newArray(length);
+        }
+    }
+
+    @NodeChild(value = "array", type = MJExpressionNode.class)
+    public static abstract class MJArrayLengthNode extends MJExpressionNode {
+        @Override
+        public TypeDescriptor getType() {
+            return IntDescriptor.INSTANCE;
+        }
 
-        @ExplodeLoop
-        private VirtualFrame getFrame(VirtualFrame frame) {
-            CompilerDirectives.transferToInterpreter();
-            while (!frame.getFrameDescriptor().getSlots().contains(getSlot())) {
-                frame = (VirtualFrame) frame.getArguments()[0];
-            }
-
-            return frame;
-        }
-
-        @Specialization(guards = "isBoolVariable(getType())")
-        public Object readBoolVariable(VirtualFrame frame, int index) {
-            try {
-                FrameSlot frameSlot = getSlot();
-                ArrayList<Boolean> a = (ArrayList<Boolean>) getFrame(frame).getObject(frameSlot);
-                return a.get(index);
-            } catch (FrameSlotTypeException e) {
-                CompilerDirectives.transferToInterpreterAndInvalidate();
-                e.printStackTrace();
-                throw new Error(e);
-            }
-        }
-
-        @Specialization(guards = "isCharVariable(getType())")
-        public Object readCharVariable(VirtualFrame frame, int index) {
-            try {
-                FrameSlot frameSlot = getSlot();
-                ArrayList<Character> a = (ArrayList<Character>) getFrame(frame).getObject(frameSlot);
-                return a.get(index);
-            } catch (FrameSlotTypeException e) {
-                CompilerDirectives.transferToInterpreterAndInvalidate();
-                e.printStackTrace();
-                throw new Error(e);
-            }
-        }
-
-        @Specialization(guards = "isIntVariable(getType())")
-        public Object readIntVariable(VirtualFrame frame, int index) {
-            try {
-                FrameSlot frameSlot = getSlot();
-                ArrayList<Integer> a = (ArrayList<Integer>) getFrame(frame).getObject(frameSlot);
-                return a.get(index);
-            } catch (FrameSlotTypeException e) {
-                CompilerDirectives.transferToInterpreterAndInvalidate();
-                e.printStackTrace();
-                throw new Error(e);
-            }
-        }
-
-        @Specialization(guards = "isDoubleVariable(getType())")
-        public Object readDoubleVariable(VirtualFrame frame, int index) {
-            try {
-                FrameSlot frameSlot = getSlot();
-                ArrayList<Double> a = (ArrayList<Double>) getFrame(frame).getObject(frameSlot);
-                return a.get(index);
-            } catch (FrameSlotTypeException e) {
-                CompilerDirectives.transferToInterpreterAndInvalidate();
-                e.printStackTrace();
-                throw new Error(e);
-            }
-        }
-
-        @Specialization
-        public Object readVariable(VirtualFrame frame, int index) {
-            try {
-                FrameSlot frameSlot = getSlot();
-                ArrayList<Object> a = (ArrayList<Object>) getFrame(frame).getObject(frameSlot);
-                return a.get(index);
-            } catch (FrameSlotTypeException e) {
-                CompilerDirectives.transferToInterpreterAndInvalidate();
-                e.printStackTrace();
-                throw new Error(e);
-            }
+        @Specialization
+        public int length(int[] array) {
+            return array.length;
         }
 
+        @Specialization
+        public int length(char[] array) {
+            return array.length;
+        }
+
+        @Specialization
+        public int length(double[] array) {
+            return array.length;
+        }
+
+        @Specialization
+        public int length(boolean[] array) {
+            return array.length;
+        }
+
+        @Specialization
+        public int length(Object[] array) {
+            return array.length;
+        }
+
+        @Specialization
+        public int length(StructArray array) {
+            return array.getLength();
+        }
+
+        @Fallback
+        public int lengthNull(Object array) {
+            throw new Error("Cannot take the length of " + array);
+        }
     }
 
-    @NodeChild(value = "value", type = MJExpressionNode.class)
+    /**
+     * Reads <code>array[index]</code>; <code>type</code> is the element type. Inside a counted loop
+     * over <code>index</code> that speculates on the bounds of <code>array</code> (see
+     * {@link MJCountedLoop}), the loop's guards let the compiler prove the index in range and drop the
+     * bounds check of the load.
+     */
+    @NodeChild(value = "array", type = MJExpressionNode.class)
     @NodeChild(value = "index", type = MJExpressionNode.class)
-    @NodeField(name = "slot", type = FrameSlot.class)
     @NodeField(name = "type", type = TypeDescriptor.class)
-    public static abstract class MJWriteArrayElement extends MJStatementNode {
-        protected abstract FrameSlot getSlot();
+    public static abstract class MJReadArrayElementNode extends MJExpressionNode {
+        @Override
+        public abstract TypeDescriptor getType();
+
+        @Specialization
+        public int readInt(int[] array, int index) {
+            return array[index];
+        }
+
+        @Specialization
+        public char readChar(char[] array, int index) {
+            return array[index];
+        }
+
+        @Specialization
+        public double readDouble(double[] array, int index) {
+            return array[index];
+        }
+
+        @Specialization
+        public boolean readBool(boolean[] array, int index) {
+            return array[index];
+        }
+
+        @Specialization
+        public Object readObject(Object[] array, int index) {
+            return array[index];
+        }
+
+        @Specialization
+        public DynamicObject readStruct(StructArray array, int index) {
+            return array.get(index);
+        }
 
+        @Fallback
+        public Object readNull(Object array, Object index) {
+            throw new Error("Cannot index " + array + " with " + index);
+        }
+    }
+
+    /** Writes <code>array[index]</code>, see {@link MJReadArrayElementNode} for bounds checks. */
+    @NodeChild(value = "array", type = MJExpressionNode.class)
+    @NodeChild(value = "index", type = MJExpressionNode.class)
+    @NodeChild(value = "value", type = MJExpressionNode.class)
+    @NodeField(name = "type", type = TypeDescriptor.class)
+    public static abstract class MJWriteArrayElementNode extends MJStatementNode {
         protected abstract TypeDescriptor getType();
 
-        @ExplodeLoop
-        private VirtualFrame getFrame(VirtualFrame frame) {
-            CompilerDirectives.transferToInterpreter();
-            while (!frame.getFrameDescriptor().getSlots().contains(getSlot())) {
-                frame = (VirtualFrame) frame.getArguments()[0];
-            }
-
-            return frame;
-        }
-
-        @Specialization(guards = {"isBoolVariable(getType())", "!isConstant(getType())"})
-        public Object execute(VirtualFrame frame, boolean value, int index) {
-            FrameSlot frameSlot = getSlot();
-            ArrayList<Boolean> a;
-            try {
-                try {
-                    a = (ArrayList<Boolean>) getFrame(frame).getObject(frameSlot);
-                } catch (FrameSlotTypeException e) {
-                    a = new ArrayList<>();
-                }
-                a.set(index, value);
-                getFrame(frame).setObject(getSlot(), a);
-                return null;
-            } catch (Exception e) {
-                CompilerDirectives.transferToInterpreterAndInvalidate();
-                e.printStackTrace();
-                throw new Error(e);
-            }
-        }
-
-        @Specialization(guards = {"isCharVariable(getType())", "!isConstant(getType())"})
-        public Object execute(VirtualFrame frame, char value, int index) {
-            FrameSlot frameSlot = getSlot();
-            ArrayList<Character> a;
-            try {
-                try {
-                    a = (ArrayList<Character>) getFrame(frame).getObject(frameSlot);
-                } catch (FrameSlotTypeException e) {
-                    a = new ArrayList<>();
-                }
-                a.set(index, value);
-                getFrame(frame).setObject(getSlot(), a);
-                return null;
-            } catch (Exception e) {
-                CompilerDirectives.transferToInterpreterAndInvalidate();
-                e.printStackTrace();
-                throw new Error(e);
-            }
-        }
-
-        @Specialization(guards = {"isDoubleVariable(getType())", "!isConstant(getType())"})
-        public Object executeImplicitDouble(VirtualFrame frame, int value, int index) {
-            FrameSlot frameSlot = getSlot();
-            ArrayList<Double> a;
-            try {
-                try {
-                    a = (ArrayList<Double>) getFrame(frame).getObject(frameSlot);
-                } catch (FrameSlotTypeException e) {
-                    a = new ArrayList<>();
-                }
-                a.set(index, (double) value);
-                getFrame(frame).setObject(getSlot(), a);
-                return null;
-            } catch (Exception e) {
-                CompilerDirectives.transferToInterpreterAndInvalidate();
-                e.printStackTrace();
-                throw new Error(e);
-            }
-        }
-
-        @Specialization(guards = {"isIntVariable(getType())", "!isConstant(getType())"})
-        public Object execute(VirtualFrame frame, int value, int index) {
-            FrameSlot frameSlot = getSlot();
-            ArrayList<Integer> a;
-            try {
-                try {
-                    a = (ArrayList<Integer>) getFrame(frame).getObject(frameSlot);
-                } catch (FrameSlotTypeException e) {
-                    a = new ArrayList<>();
-                }
-                a.set(index, value);
-                getFrame(frame).setObject(getSlot(), a);
-                return null;
-            } catch (Exception e) {
-                CompilerDirectives.transferToInterpreterAndInvalidate();
-                e.printStackTrace();
-                throw new Error(e);
-            }
-        }
-
-        @Specialization(guards = {"isDoubleVariable(getType())", "!isConstant(getType())"})
-        public Object execute(VirtualFrame frame, double value, int index) {
-            FrameSlot frameSlot = getSlot();
-            ArrayList<Double> a;
-            try {
-                try {
-                    a = (ArrayList<Double>) getFrame(frame).getObject(frameSlot);
-                } catch (FrameSlotTypeException e) {
-                    a = new ArrayList<>();
-                }
-                a.set(index, value);
-                getFrame(frame).setObject(getSlot(), a);
-                return null;
-            } catch (Exception e) {
-                CompilerDirectives.transferToInterpreterAndInvalidate();
-                e.printStackTrace();
-                throw new Error(e);
-            }
-        }
-
-        @Specialization(guards = "!isConstant(getType())")
-        public Object execute(VirtualFrame frame, Object value, int index) {
-            FrameSlot frameSlot = getSlot();
-            ArrayList<Object> a;
-            try {
-                try {
-                    a = (ArrayList<Object>) getFrame(frame).getObject(frameSlot);
-                } catch (FrameSlotTypeException e) {
-                    a = new ArrayList<>();
-                }
-                a.set(index, value);
-                getFrame(frame).setObject(getSlot(), a);
-                return null;
-            } catch (Exception e) {
-                CompilerDirectives.transferToInterpreterAndInvalidate();
-                e.printStackTrace();
-                throw new Error(e);
-            }
+        @Specialization
+        public Object writeInt(int[] array, int index, int value) {
+            array[index] = value;
+            return null;
+        }
+
+        @Specialization
+        public Object writeChar(char[] array, int index, char value) {
+            array[index] = value;
+            return null;
+        }
+
+        @Specialization
+        public Object writeDouble(double[] array, int index, double value) {
+            array[index] = value;
+            return null;
+        }
+
+        @Specialization
+        public Object writeBool(boolean[] array, int index, boolean value) {
+            array[index] = value;
+            return null;
+        }
+
+        @Specialization
+        public Object writeObject(Object[] array, int index, Object value) {
+            array[index] = value;
+            return null;
+        }
+
+        @Specialization
+        public Object writeStruct(StructArray array, int index, Object value) {
+            array.set(index, (DynamicObject) value);
+            return null;
+        }
+
+        @Fallback
+        public Object writeNull(Object array, Object index, Object value) {
+            throw new Error("Cannot index " + array + " with " + index);
+        }
+    }
+
+    /**
+     * Reads <code>array[index].field</code> of a {@link StructArray} straight from the field's column,
+     * without materializing the element.
+     */
+    @NodeChild(value = "array", type = MJExpressionNode.class)
+    @NodeChild(value = "index", type = MJExpressionNode.class)
+    @NodeField(name = "field", type = FieldDescriptor.class)
+    public static abstract class MJReadStructFieldNode extends MJExpressionNode {
+        protected abstract FieldDescriptor getField();
+
+        @Override
+        public TypeDescriptor getType() {
+            return getField().getType();
+        }
+
+        @Specialization(guards = "isIntVariable(getField().getType())")
+        public int readInt(StructArray array, int index) {
+            return CompilerDirectives.castExact(array.getColumn(getField().getIndex()), int[].class)[index];
+        }
+
+        @Specialization(guards = "isCharVariable(getField().getType())")
+        public char readChar(StructArray array, int index) {
+            return (char) CompilerDirectives.castExact(array.getColumn(getField().getIndex()), int[].class)[index];
+        }
+
+        @Specialization(guards = "isDoubleVariable(getField().getType())")
+        public double readDouble(StructArray array, int index) {
+            return CompilerDirectives.castExact(array.getColumn(getField().getIndex()), double[].class)[index];
+        }
+
+        @Specialization(guards = "isBoolVariable(getField().getType())")
+        public boolean readBool(StructArray array, int index) {
+            return CompilerDirectives.castExact(array.getColumn(getField().getIndex()), boolean[].class)[index];
+        }
+    }
+
+    /** Writes <code>array[index].field</code> of a {@link StructArray} straight into the field's column. */
+    @ImportStatic(MJExpressionNode.class)
+    @NodeChild(value = "array", type = MJExpressionNode.class)
+    @NodeChild(value = "index", type = MJExpressionNode.class)
+    @NodeChild(value = "value", type = MJExpressionNode.class)
+    @NodeField(name = "field", type = FieldDescriptor.class)
+    public static abstract class MJWriteStructFieldNode extends MJStatementNode {
+        protected abstract FieldDescriptor getField();
+
+        @Specialization(guards = "isIntVariable(getField().getType())")
+        public Object writeInt(StructArray array, int index, int value) {
+            CompilerDirectives.castExact(array.getColumn(getField().getIndex()), int[].class)[index] = value;
+            return null;
+        }
+
+        @Specialization(guards = "isCharVariable(getField().getType())")
+        public Object writeChar(StructArray array, int index, char value) {
+            CompilerDirectives.castExact(array.getColumn(getField().getIndex()), int[].class)[index] = value;
+            return null;
+        }
+
+        @Specialization(guards = "isDoubleVariable(getField().getType())")
+        public Object writeDouble(StructArray array, int index, double value) {
+            CompilerDirectives.castExact(array.getColumn(getField().getIndex()), double[].class)[index] = value;
+            return null;
+        }
+
+        @Specialization(guards = "isBoolVariable(getField().getType())")
+        public Object writeBool(StructArray array, int index, boolean value) {
+            CompilerDirectives.castExact(array.getColumn(getField().getIndex()), boolean[].class)[index] = value;
+            return null;
         }
     }
 }
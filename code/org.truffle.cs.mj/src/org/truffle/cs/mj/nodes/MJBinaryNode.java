@@ -2,11 +2,11 @@ package org.truffle.cs.mj.nodes;
 
 import org.truffle.cs.mj.parser.identifiertable.types.TypeDescriptor;
 import org.truffle.cs.mj.parser.identifiertable.types.primitives.BoolDescriptor;
+import org.truffle.cs.mj.parser.identifiertable.types.primitives.DoubleDescriptor;
 import org.truffle.cs.mj.parser.identifiertable.types.primitives.IntDescriptor;
 
 import com.oracle.truffle.api.dsl.NodeChild;
 import com.oracle.truffle.api.dsl.Specialization;
-import com.oracle.truffle.api.nodes.UnexpectedResultException;
 
 @NodeChild(value = "lhs", type = MJExpressionNode.class)
 @NodeChild(value = "rhs", type = MJExpressionNode.class)
@@ -14,11 +14,26 @@ public abstract class MJBinaryNode extends MJExpressionNode {
 
     public abstract MJExpressionNode getLhs();
 
+    public abstract MJExpressionNode getRhs();
+
+    /** Int operands stay int, a double on either side widens the result to double. */
+    protected TypeDescriptor getArithmeticType() {
+        if (getLhs().getType() instanceof DoubleDescriptor || getRhs().getType() instanceof DoubleDescriptor) {
+            return DoubleDescriptor.INSTANCE;
+        }
+        return IntDescriptor.INSTANCE;
+    }
+
+    /** Bitwise operators are only defined on int. */
+    protected TypeDescriptor getIntegerType() {
+        return IntDescriptor.INSTANCE;
+    }
+
     public static abstract class AddNode extends MJBinaryNode {
 
         @Override
         public TypeDescriptor getType() {
-            return getLhs().getType();
+            return getArithmeticType();
         }
 
         @Specialization
@@ -35,7 +50,7 @@ public abstract class MJBinaryNode extends MJExpressionNode {
     public static abstract class SubtractNode extends MJBinaryNode {
         @Override
         public TypeDescriptor getType() {
-            return getLhs().getType();
+            return getArithmeticType();
         }
 
         @Specialization
@@ -52,7 +67,7 @@ public abstract class MJBinaryNode extends MJExpressionNode {
     public static abstract class MultiplicationNode extends MJBinaryNode {
         @Override
         public TypeDescriptor getType() {
-            return getLhs().getType();
+            return getArithmeticType();
         }
 
         @Specialization
@@ -69,7 +84,7 @@ public abstract class MJBinaryNode extends MJExpressionNode {
     public static abstract class DividerNode extends MJBinaryNode {
         @Override
         public TypeDescriptor getType() {
-            return getLhs().getType();
+            return getArithmeticType();
         }
 
         @Specialization
@@ -86,7 +101,7 @@ public abstract class MJBinaryNode extends MJExpressionNode {
     public static abstract class ModulationNode extends MJBinaryNode {
         @Override
         public TypeDescriptor getType() {
-            return getLhs().getType();
+            return getArithmeticType();
         }
 
         @Specialization
@@ -103,7 +118,7 @@ public abstract class MJBinaryNode extends MJExpressionNode {
     public static abstract class EqualNode extends MJBinaryNode {
         @Override
         public TypeDescriptor getType() {
-            return new BoolDescriptor().getInstance();
+            return BoolDescriptor.INSTANCE;
         }
 
         @Specialization
@@ -122,7 +137,7 @@ public abstract class MJBinaryNode extends MJExpressionNode {
         }
 
         @Specialization
-        public boolean equal(Object lhs, Object rhs) {
+        public boolean equal(boolean lhs, boolean rhs) {
             return lhs == rhs;
         }
 
@@ -131,7 +146,7 @@ public abstract class MJBinaryNode extends MJExpressionNode {
     public static abstract class NotEqualNode extends MJBinaryNode {
         @Override
         public TypeDescriptor getType() {
-            return new BoolDescriptor().getInstance();
+            return BoolDescriptor.INSTANCE;
         }
 
         @Specialization
@@ -150,16 +165,46 @@ public abstract class MJBinaryNode extends MJExpressionNode {
         }
 
         @Specialization
-        public boolean notEqual(Object lhs, Object rhs) {
+        public boolean notEqual(boolean lhs, boolean rhs) {
             return lhs != rhs;
         }
 
     }
 
+    /**
+     * <code>==</code> on class instances, arrays and <code>null</code>, which compare by identity.
+     * The parser creates it when an operand is a reference, so {@link EqualNode} only sees
+     * primitives.
+     */
+    public static abstract class ReferenceEqualNode extends MJBinaryNode {
+        @Override
+        public TypeDescriptor getType() {
+            return BoolDescriptor.INSTANCE;
+        }
+
+        @Specialization
+        public boolean equal(Object lhs, Object rhs) {
+            return lhs == rhs;
+        }
+    }
+
+    /** <code>!=</code> on references, see {@link ReferenceEqualNode}. */
+    public static abstract class ReferenceNotEqualNode extends MJBinaryNode {
+        @Override
+        public TypeDescriptor getType() {
+            return BoolDescriptor.INSTANCE;
+        }
+
+        @Specialization
+        public boolean notEqual(Object lhs, Object rhs) {
+            return lhs != rhs;
+        }
+    }
+
     public static abstract class LessNode extends MJBinaryNode {
         @Override
         public TypeDescriptor getType() {
-            return new BoolDescriptor().getInstance();
+            return BoolDescriptor.INSTANCE;
         }
 
         @Specialization
@@ -176,7 +221,7 @@ public abstract class MJBinaryNode extends MJExpressionNode {
     public static abstract class LessEqualNode extends MJBinaryNode {
         @Override
         public TypeDescriptor getType() {
-            return new BoolDescriptor().getInstance();
+            return BoolDescriptor.INSTANCE;
         }
 
         @Specialization
@@ -193,7 +238,7 @@ public abstract class MJBinaryNode extends MJExpressionNode {
     public static abstract class GreaterNode extends MJBinaryNode {
         @Override
         public TypeDescriptor getType() {
-            return new BoolDescriptor().getInstance();
+            return BoolDescriptor.INSTANCE;
         }
 
         @Specialization
@@ -210,7 +255,7 @@ public abstract class MJBinaryNode extends MJExpressionNode {
     public static abstract class GreaterEqualNode extends MJBinaryNode {
         @Override
         public TypeDescriptor getType() {
-            return new BoolDescriptor().getInstance();
+            return BoolDescriptor.INSTANCE;
         }
 
         @Specialization
@@ -227,7 +272,7 @@ public abstract class MJBinaryNode extends MJExpressionNode {
     public static abstract class OrNode extends MJBinaryNode {
         @Override
         public TypeDescriptor getType() {
-            return new BoolDescriptor().getInstance();
+            return BoolDescriptor.INSTANCE;
         }
 
         @Specialization
@@ -239,7 +284,7 @@ public abstract class MJBinaryNode extends MJExpressionNode {
     public static abstract class AndNode extends MJBinaryNode {
         @Override
         public TypeDescriptor getType() {
-            return new BoolDescriptor().getInstance();
+            return BoolDescriptor.INSTANCE;
         }
 
         @Specialization
@@ -247,4 +292,76 @@ public abstract class MJBinaryNode extends MJExpressionNode {
             return lhs && rhs;
         }
     }
+
+    public static abstract class BitAndNode extends MJBinaryNode {
+        @Override
+        public TypeDescriptor getType() {
+            return getIntegerType();
+        }
+
+        @Specialization
+        public int bitAnd(int lhs, int rhs) {
+            return lhs & rhs;
+        }
+    }
+
+    public static abstract class BitOrNode extends MJBinaryNode {
+        @Override
+        public TypeDescriptor getType() {
+            return getIntegerType();
+        }
+
+        @Specialization
+        public int bitOr(int lhs, int rhs) {
+            return lhs | rhs;
+        }
+    }
+
+    public static abstract class BitXorNode extends MJBinaryNode {
+        @Override
+        public TypeDescriptor getType() {
+            return getIntegerType();
+        }
+
+        @Specialization
+        public int bitXor(int lhs, int rhs) {
+            return lhs ^ rhs;
+        }
+    }
+
+    public static abstract class ShiftLeftNode extends MJBinaryNode {
+        @Override
+        public TypeDescriptor getType() {
+            return getIntegerType();
+        }
+
+        @Specialization
+        public int shiftLeft(int lhs, int rhs) {
+            return lhs << rhs;
+        }
+    }
+
+    public static abstract class ShiftRightNode extends MJBinaryNode {
+        @Override
+        public TypeDescriptor getType() {
+            return getIntegerType();
+        }
+
+        @Specialization
+        public int shiftRight(int lhs, int rhs) {
+            return lhs >> rhs;
+        }
+    }
+
+    public static abstract class UnsignedShiftRightNode extends MJBinaryNode {
+        @Override
+        public TypeDescriptor getType() {
+            return getIntegerType();
+        }
+
+        @Specialization
+        public int unsignedShiftRight(int lhs, int rhs) {
+            return lhs >>> rhs;
+        }
+    }
 }
@@ -3,6 +3,8 @@ package org.truffle.cs.mj.nodes;
 import com.oracle.truffle.api.Truffle;
 import com.oracle.truffle.api.frame.FrameDescriptor;
 import com.oracle.truffle.api.frame.VirtualFrame;
+import com.oracle.truffle.api.instrumentation.StandardTags;
+import com.oracle.truffle.api.instrumentation.Tag;
 import com.oracle.truffle.api.nodes.ExplodeLoop;
 
 public class MJBlock extends MJStatementNode {
@@ -15,6 +17,12 @@ public class MJBlock extends MJStatementNode {
         this.frameDescriptor = descriptor;
     }
 
+    /** A block is no statement of its own, its statements are. */
+    @Override
+    public boolean hasTag(Class<? extends Tag> tag) {
+        return tag == StandardTags.RootTag.class && super.hasTag(tag);
+    }
+
     @Override
     @ExplodeLoop
     public Object execute(VirtualFrame frame) {
@@ -1,5 +1,6 @@
 package org.truffle.cs.mj.nodes;
 
+import org.truffle.cs.mj.parser.identifiertable.types.NullDescriptor;
 import org.truffle.cs.mj.parser.identifiertable.types.TypeDescriptor;
 import org.truffle.cs.mj.parser.identifiertable.types.primitives.BoolDescriptor;
 import org.truffle.cs.mj.parser.identifiertable.types.primitives.CharDescriptor;
@@ -15,7 +16,7 @@ public abstract class MJConstantNode extends MJExpressionNode {
 
         @Override
         public TypeDescriptor getType() {
-            return new CharDescriptor().getInstance();
+            return CharDescriptor.INSTANCE;
         }
 
         public CharNode(char constant) {
@@ -33,13 +34,17 @@ public abstract class MJConstantNode extends MJExpressionNode {
 
         @Override
         public TypeDescriptor getType() {
-            return new IntDescriptor().getInstance();
+            return IntDescriptor.INSTANCE;
         }
 
         public IntNode(int constant) {
             this.constant = constant;
         }
 
+        public int getValue() {
+            return constant;
+        }
+
         @Specialization
         public int doInt() {
             return constant;
@@ -51,7 +56,7 @@ public abstract class MJConstantNode extends MJExpressionNode {
 
         @Override
         public TypeDescriptor getType() {
-            return new BoolDescriptor().getInstance();
+            return BoolDescriptor.INSTANCE;
         }
 
         public BoolNode(boolean constant) {
@@ -69,7 +74,7 @@ public abstract class MJConstantNode extends MJExpressionNode {
 
         @Override
         public TypeDescriptor getType() {
-            return new DoubleDescriptor().getInstance();
+            return DoubleDescriptor.INSTANCE;
         }
 
         public DoubleNode(double constant) {
@@ -81,4 +86,16 @@ public abstract class MJConstantNode extends MJExpressionNode {
             return constant;
         }
     }
+
+    public static abstract class NullNode extends MJConstantNode {
+        @Override
+        public TypeDescriptor getType() {
+            return NullDescriptor.INSTANCE;
+        }
+
+        @Specialization
+        public Object doNull() {
+            return null;
+        }
+    }
 }
@@ -0,0 +1,191 @@
+package org.truffle.cs.mj.nodes;
+
+import org.truffle.cs.mj.nodes.MJContinueNode.MJContinueException;
+import org.truffle.cs.mj.tools.MJCompilationLog;
+import org.truffle.cs.mj.tools.MJProfiler;
+
+import com.oracle.truffle.api.Assumption;
+import com.oracle.truffle.api.CompilerDirectives.CompilationFinal;
+import com.oracle.truffle.api.frame.FrameSlot;
+import com.oracle.truffle.api.frame.FrameSlotTypeException;
+import com.oracle.truffle.api.frame.VirtualFrame;
+import com.oracle.truffle.api.nodes.ExplodeLoop;
+import com.oracle.truffle.api.nodes.UnexpectedResultException;
+
+/**
+ * A <code>for</code> loop over an int induction variable, <code>for (i = ...; i &lt; limit; i +=
+ * stride)</code> or one of the other relational operators, whose body does not assign the variable.
+ * The parser picks this node instead of {@link MJForLoop} when it sees that shape.
+ * <p>
+ * The variable is kept in a Java local and only stored to its slot for the body to read, so the
+ * compiled loop has a plain int phi with a constant stride compared against the limit. That is the
+ * form the compiler recognizes as a counted loop, and lets it prove the range of the variable and
+ * drop array bounds checks indexed by it.
+ * <p>
+ * An upward loop can also speculate that the variable stays within the arrays it indexes, see
+ * {@link #speculateInBounds}: on entry it checks that the variable starts at 0 or above and takes the
+ * smallest length of those arrays, and every iteration checks the limit against that length. The
+ * array accesses in the body are plain indexed loads and stores, and these guards let the compiler
+ * prove their indices in range and drop their bounds checks. An iteration that could step outside an
+ * array invalidates <code>inBounds</code>, which deoptimizes and drops the guards from then on.
+ */
+public class MJCountedLoop extends MJStatementNode {
+
+    public enum Comparison {
+        LESS,
+        LESS_EQUAL,
+        GREATER,
+        GREATER_EQUAL
+    }
+
+    private final FrameSlot slot;
+    private final Comparison comparison;
+    private final int stride;
+    @Child MJExpressionNode limit;
+    @Child MJStatementNode loopBody;
+    @CompilationFinal(dimensions = 1) private FrameSlot[] arrays;
+    @CompilationFinal private Assumption inBounds;
+    // how many frames up the slots are declared, see MJVariableNode.getFrame
+    @CompilationFinal private int depth = -1;
+    @CompilationFinal(dimensions = 1) private int[] arrayDepths;
+
+    public MJCountedLoop(FrameSlot slot, Comparison comparison, MJExpressionNode limit, int stride, MJStatementNode body) {
+        this.slot = slot;
+        this.comparison = comparison;
+        this.limit = limit;
+        this.stride = stride;
+        this.loopBody = body;
+    }
+
+    public FrameSlot getSlot() {
+        return slot;
+    }
+
+    public int getStride() {
+        return stride;
+    }
+
+    /**
+     * Guards the loop variable against the lengths of the local arrays in <code>arraySlots</code>,
+     * which the body indexes with it and must not assign, while <code>assumption</code> holds.
+     */
+    public void speculateInBounds(FrameSlot[] arraySlots, Assumption assumption) {
+        assert comparison == Comparison.LESS || comparison == Comparison.LESS_EQUAL;
+        assert stride > 0;
+        this.arrays = arraySlots;
+        this.inBounds = assumption;
+    }
+
+    private boolean isSpeculating() {
+        return inBounds != null && inBounds.isValid();
+    }
+
+    private void invalidateInBounds() {
+        MJCompilationLog.transferToInterpreterAndInvalidate(this, "index may leave the array bounds");
+        inBounds.invalidate();
+        MJCompilationLog.invalidated(this, "array bounds speculation of a counted loop");
+    }
+
+    /** The smallest length of the speculated arrays, or -1 if one is not an array of primitives. */
+    @ExplodeLoop
+    private int minArrayLength(VirtualFrame frame) {
+        int minLength = Integer.MAX_VALUE;
+        for (int a = 0; a < arrays.length; a++) {
+            Object value = MJVariableNode.getFrame(frame, arrayDepths[a]).getValue(arrays[a]);
+            int length;
+            if (value instanceof int[]) {
+                length = ((int[]) value).length;
+            } else if (value instanceof char[]) {
+                length = ((char[]) value).length;
+            } else if (value instanceof double[]) {
+                length = ((double[]) value).length;
+            } else if (value instanceof boolean[]) {
+                length = ((boolean[]) value).length;
+            } else {
+                return -1;
+            }
+            minLength = Math.min(minLength, length);
+        }
+        return minLength;
+    }
+
+    private void resolveDepths(VirtualFrame frame) {
+        if (arrays != null) {
+            int[] depths = new int[arrays.length];
+            for (int a = 0; a < arrays.length; a++) {
+                depths[a] = MJVariableNode.depth(frame, arrays[a]);
+            }
+            arrayDepths = depths;
+        }
+        depth = MJVariableNode.depth(frame, slot);
+    }
+
+    private boolean fits(int bound, int minLength) {
+        return comparison == Comparison.LESS ? bound <= minLength : bound < minLength;
+    }
+
+    @Override
+    public Object execute(VirtualFrame frame) {
+        if (depth < 0) {
+            MJCompilationLog.transferToInterpreterAndInvalidate(this, "first execution of a counted loop");
+            resolveDepths(frame);
+        }
+        VirtualFrame target = MJVariableNode.getFrame(frame, depth);
+        int i;
+        try {
+            i = target.getInt(slot);
+        } catch (FrameSlotTypeException e) {
+            MJCompilationLog.transferToInterpreterAndInvalidate(this, "frame slot holds another type");
+            throw new Error(e);
+        }
+        int minLength = 0;
+        if (isSpeculating()) {
+            minLength = minArrayLength(frame);
+            // the index must start in range and must not overflow past the limit
+            if (i < 0 || minLength < 0 || stride > Integer.MAX_VALUE - minLength) {
+                invalidateInBounds();
+            }
+        }
+        int count = 0;
+        try {
+            while (true) {
+                int bound = limit.executeI32(frame);
+                if (!compare(i, bound)) {
+                    break;
+                }
+                if (isSpeculating() && !fits(bound, minLength)) {
+                    invalidateInBounds();
+                }
+                count++;
+                MJProfiler.poll(this);
+                try {
+                    loopBody.execute(frame);
+                } catch (MJBreakNode.MJBreakException e) {
+                    break;
+                } catch (MJContinueException e) {
+                    // fall through to the increment
+                }
+                i += stride;
+                target.setInt(slot, i);
+            }
+        } catch (UnexpectedResultException e) {
+            throw new Error("Loop limit should be int");
+        } finally {
+            MJWhileLoop.reportLoopCount(this, count);
+        }
+        return null;
+    }
+
+    private boolean compare(int i, int bound) {
+        switch (comparison) {
+            case LESS:
+                return i < bound;
+            case LESS_EQUAL:
+                return i <= bound;
+            case GREATER:
+                return i > bound;
+            default:
+                return i >= bound;
+        }
+    }
+}
@@ -0,0 +1,35 @@
+package org.truffle.cs.mj.nodes;
+
+import com.oracle.truffle.api.CallTarget;
+import com.oracle.truffle.api.dsl.Cached;
+import com.oracle.truffle.api.dsl.Introspectable;
+import com.oracle.truffle.api.dsl.Specialization;
+import com.oracle.truffle.api.nodes.DirectCallNode;
+import com.oracle.truffle.api.nodes.IndirectCallNode;
+import com.oracle.truffle.api.nodes.Node;
+
+/**
+ * Calls a target only known at run time, as in the trampoline of {@link MJInvokeNode}. Up to
+ * {@link #INLINE_CACHE_SIZE} targets get their own {@link DirectCallNode}, so they can be inlined;
+ * beyond that every call goes through one {@link IndirectCallNode}.
+ */
+@Introspectable
+public abstract class MJDispatchNode extends Node {
+
+    static final int INLINE_CACHE_SIZE = 3;
+
+    public abstract Object executeDispatch(CallTarget target, Object[] arguments);
+
+    @Specialization(guards = "target == cachedTarget", limit = "INLINE_CACHE_SIZE")
+    protected Object dispatchDirect(CallTarget target, Object[] arguments,
+                    @Cached("target") CallTarget cachedTarget,
+                    @Cached("create(cachedTarget)") DirectCallNode callNode) {
+        return callNode.call(arguments);
+    }
+
+    @Specialization(replaces = "dispatchDirect")
+    protected Object dispatchIndirect(CallTarget target, Object[] arguments,
+                    @Cached("create()") IndirectCallNode callNode) {
+        return callNode.call(target, arguments);
+    }
+}
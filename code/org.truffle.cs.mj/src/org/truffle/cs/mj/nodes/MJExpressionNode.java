@@ -8,16 +8,52 @@ import org.truffle.cs.mj.parser.identifiertable.types.primitives.IntDescriptor;
 import org.truffle.cs.mj.parser.identifiertable.types.primitives.constants.ConstantTypeDescriptor;
 
 import com.oracle.truffle.api.CompilerDirectives;
+import com.oracle.truffle.api.dsl.Introspectable;
 import com.oracle.truffle.api.dsl.TypeSystemReference;
 import com.oracle.truffle.api.frame.VirtualFrame;
+import com.oracle.truffle.api.instrumentation.GenerateWrapper;
+import com.oracle.truffle.api.instrumentation.InstrumentableNode;
+import com.oracle.truffle.api.instrumentation.ProbeNode;
+import com.oracle.truffle.api.instrumentation.StandardTags;
+import com.oracle.truffle.api.instrumentation.Tag;
 import com.oracle.truffle.api.nodes.Node;
 import com.oracle.truffle.api.nodes.UnexpectedResultException;
+import com.oracle.truffle.api.source.SourceSection;
 
+/**
+ * Expressions that the parser gave a source section are instrumentable and tagged as expressions,
+ * see {@link MJStatementNode}. Expressions and statements built with the DSL are introspectable, so
+ * tools can list the specializations they ended up in.
+ */
+@Introspectable
+@GenerateWrapper
 @TypeSystemReference(MJTypes.class)
-public abstract class MJExpressionNode extends Node {
+public abstract class MJExpressionNode extends Node implements InstrumentableNode {
+    private SourceSection sourceSection;
 
     public abstract TypeDescriptor getType();
 
+    @Override
+    public SourceSection getSourceSection() {
+        return sourceSection;
+    }
+
+    public void setSourceSection(SourceSection sourceSection) {
+        this.sourceSection = sourceSection;
+    }
+
+    public boolean isInstrumentable() {
+        return sourceSection != null;
+    }
+
+    public boolean hasTag(Class<? extends Tag> tag) {
+        return tag == StandardTags.ExpressionTag.class;
+    }
+
+    public WrapperNode createWrapper(ProbeNode probe) {
+        return new MJExpressionNodeWrapper(this, probe);
+    }
+
     public abstract Object executeGeneric(VirtualFrame frame);
 
     public char executeChar(VirtualFrame frame) throws UnexpectedResultException {
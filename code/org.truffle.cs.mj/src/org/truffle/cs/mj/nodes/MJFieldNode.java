@@ -0,0 +1,402 @@
+package org.truffle.cs.mj.nodes;
+
+import org.truffle.cs.mj.parser.identifiertable.types.ClassTypeDescriptor;
+import org.truffle.cs.mj.parser.identifiertable.types.ClassTypeDescriptor.FieldDescriptor;
+import org.truffle.cs.mj.parser.identifiertable.types.TypeDescriptor;
+import org.truffle.cs.mj.parser.identifiertable.types.primitives.BoolDescriptor;
+import org.truffle.cs.mj.parser.identifiertable.types.primitives.CharDescriptor;
+import org.truffle.cs.mj.parser.identifiertable.types.primitives.DoubleDescriptor;
+import org.truffle.cs.mj.parser.identifiertable.types.primitives.IntDescriptor;
+import org.truffle.cs.mj.tools.MJCompilationLog;
+
+import com.oracle.truffle.api.CompilerDirectives.TruffleBoundary;
+import com.oracle.truffle.api.dsl.Cached;
+import com.oracle.truffle.api.dsl.Fallback;
+import com.oracle.truffle.api.dsl.ImportStatic;
+import com.oracle.truffle.api.dsl.NodeChild;
+import com.oracle.truffle.api.dsl.NodeField;
+import com.oracle.truffle.api.dsl.Specialization;
+import com.oracle.truffle.api.frame.VirtualFrame;
+import com.oracle.truffle.api.instrumentation.Tag;
+import com.oracle.truffle.api.object.BooleanLocation;
+import com.oracle.truffle.api.object.DoubleLocation;
+import com.oracle.truffle.api.object.DynamicObject;
+import com.oracle.truffle.api.object.FinalLocationException;
+import com.oracle.truffle.api.object.IncompatibleLocationException;
+import com.oracle.truffle.api.object.IntLocation;
+import com.oracle.truffle.api.object.Location;
+import com.oracle.truffle.api.object.Property;
+import com.oracle.truffle.api.object.Shape;
+
+/**
+ * Class instances: allocation and field access.
+ */
+public class MJFieldNode {
+
+    /** Number of receiver shapes a field access caches before it goes generic. */
+    public static final int CACHE_LIMIT = 3;
+
+    public static class MJNewObjectNode extends MJExpressionNode {
+        private final ClassTypeDescriptor classType;
+
+        public MJNewObjectNode(ClassTypeDescriptor classType) {
+            this.classType = classType;
+        }
+
+        @Override
+        public TypeDescriptor getType() {
+            return classType;
+        }
+
+        @Override
+        public boolean hasTag(Class<? extends Tag> tag) {
+            return tag == MJTags.AllocationTag.class || super.hasTag(tag);
+        }
+
+        @Override
+        public Object executeGeneric(VirtualFrame frame) {
+            return classType.newInstance();
+        }
+    }
+
+    @TruffleBoundary
+    static FieldDescriptor lookupField(DynamicObject receiver, String name) {
+        FieldDescriptor field = ClassTypeDescriptor.getClassDescriptor(receiver).getField(name);
+        if (field == null) {
+            throw new Error("Class " + ClassTypeDescriptor.getClassDescriptor(receiver).getName() + " has no field " + name);
+        }
+        return field;
+    }
+
+    /** The location of field <code>name</code> in <code>shape</code>. */
+    static Location getLocation(Shape shape, String name) {
+        Property property = shape.getProperty(name);
+        return property == null ? null : property.getLocation();
+    }
+
+    static IntLocation getIntLocation(Shape shape, String name) {
+        Location location = getLocation(shape, name);
+        return location instanceof IntLocation ? (IntLocation) location : null;
+    }
+
+    static DoubleLocation getDoubleLocation(Shape shape, String name) {
+        Location location = getLocation(shape, name);
+        return location instanceof DoubleLocation ? (DoubleLocation) location : null;
+    }
+
+    static BooleanLocation getBooleanLocation(Shape shape, String name) {
+        Location location = getLocation(shape, name);
+        return location instanceof BooleanLocation ? (BooleanLocation) location : null;
+    }
+
+    /**
+     * The parser knows the declared type of every field, so like for local variables it picks one of
+     * the concretely typed read/write nodes below up front. Primitive fields are read and written
+     * through their typed location and never boxed.
+     */
+    public static MJExpressionNode createRead(MJExpressionNode receiver, String name, TypeDescriptor type) {
+        if (type instanceof BoolDescriptor) {
+            return MJFieldNodeFactory.MJReadBoolFieldNodeGen.create(receiver, name, type);
+        } else if (type instanceof CharDescriptor) {
+            return MJFieldNodeFactory.MJReadCharFieldNodeGen.create(receiver, name, type);
+        } else if (type instanceof IntDescriptor) {
+            return MJFieldNodeFactory.MJReadIntFieldNodeGen.create(receiver, name, type);
+        } else if (type instanceof DoubleDescriptor) {
+            return MJFieldNodeFactory.MJReadDoubleFieldNodeGen.create(receiver, name, type);
+        }
+        return MJFieldNodeFactory.MJReadObjectFieldNodeGen.create(receiver, name, type);
+    }
+
+    public static MJStatementNode createWrite(MJExpressionNode receiver, MJExpressionNode value, String name, TypeDescriptor type) {
+        if (type instanceof BoolDescriptor) {
+            return MJFieldNodeFactory.MJWriteBoolFieldNodeGen.create(receiver, value, name, type);
+        } else if (type instanceof CharDescriptor) {
+            return MJFieldNodeFactory.MJWriteCharFieldNodeGen.create(receiver, value, name, type);
+        } else if (type instanceof IntDescriptor) {
+            return MJFieldNodeFactory.MJWriteIntFieldNodeGen.create(receiver, value, name, type);
+        } else if (type instanceof DoubleDescriptor) {
+            return MJFieldNodeFactory.MJWriteDoubleFieldNodeGen.create(receiver, value, name, type);
+        }
+        return MJFieldNodeFactory.MJWriteObjectFieldNodeGen.create(receiver, value, name, type);
+    }
+
+    /**
+     * Reads a field. The receiver's shape and the field's location are cached, so a monomorphic read
+     * compiles to a shape check and a single load; up to {@link #CACHE_LIMIT} shapes are chained
+     * before the node falls back to looking up the field by name.
+     */
+    @ImportStatic(MJFieldNode.class)
+    @NodeChild(value = "receiver", type = MJExpressionNode.class)
+    @NodeField(name = "name", type = String.class)
+    @NodeField(name = "type", type = TypeDescriptor.class)
+    public static abstract class MJReadFieldNode extends MJExpressionNode {
+        protected abstract String getName();
+
+        @Override
+        public abstract TypeDescriptor getType();
+
+        protected Error cannotRead(Object receiver) {
+            return new Error("Cannot read field " + getName() + " of " + receiver);
+        }
+
+        @TruffleBoundary
+        static Object read(DynamicObject receiver, String name) {
+            FieldDescriptor field = lookupField(receiver, name);
+            return field.fromStorage(receiver.get(name));
+        }
+    }
+
+    public static abstract class MJReadIntFieldNode extends MJReadFieldNode {
+        @Specialization(guards = {"receiver.getShape() == cachedShape", "location != null"}, assumptions = "cachedShape.getValidAssumption()", limit = "CACHE_LIMIT")
+        public int readCached(DynamicObject receiver,
+                        @Cached("receiver.getShape()") Shape cachedShape,
+                        @Cached("getIntLocation(cachedShape, getName())") IntLocation location) {
+            return location.getInt(receiver, cachedShape);
+        }
+
+        @Specialization(replaces = "readCached")
+        public int readGeneric(DynamicObject receiver) {
+            return (int) read(receiver, getName());
+        }
+
+        @Fallback
+        public int readNull(Object receiver) {
+            throw cannotRead(receiver);
+        }
+    }
+
+    /** Chars are stored widened to int. */
+    public static abstract class MJReadCharFieldNode extends MJReadFieldNode {
+        @Specialization(guards = {"receiver.getShape() == cachedShape", "location != null"}, assumptions = "cachedShape.getValidAssumption()", limit = "CACHE_LIMIT")
+        public char readCached(DynamicObject receiver,
+                        @Cached("receiver.getShape()") Shape cachedShape,
+                        @Cached("getIntLocation(cachedShape, getName())") IntLocation location) {
+            return (char) location.getInt(receiver, cachedShape);
+        }
+
+        @Specialization(replaces = "readCached")
+        public char readGeneric(DynamicObject receiver) {
+            return (char) read(receiver, getName());
+        }
+
+        @Fallback
+        public char readNull(Object receiver) {
+            throw cannotRead(receiver);
+        }
+    }
+
+    public static abstract class MJReadDoubleFieldNode extends MJReadFieldNode {
+        @Specialization(guards = {"receiver.getShape() == cachedShape", "location != null"}, assumptions = "cachedShape.getValidAssumption()", limit = "CACHE_LIMIT")
+        public double readCached(DynamicObject receiver,
+                        @Cached("receiver.getShape()") Shape cachedShape,
+                        @Cached("getDoubleLocation(cachedShape, getName())") DoubleLocation location) {
+            return location.getDouble(receiver, cachedShape);
+        }
+
+        @Specialization(replaces = "readCached")
+        public double readGeneric(DynamicObject receiver) {
+            return (double) read(receiver, getName());
+        }
+
+        @Fallback
+        public double readNull(Object receiver) {
+            throw cannotRead(receiver);
+        }
+    }
+
+    public static abstract class MJReadBoolFieldNode extends MJReadFieldNode {
+        @Specialization(guards = {"receiver.getShape() == cachedShape", "location != null"}, assumptions = "cachedShape.getValidAssumption()", limit = "CACHE_LIMIT")
+        public boolean readCached(DynamicObject receiver,
+                        @Cached("receiver.getShape()") Shape cachedShape,
+                        @Cached("getBooleanLocation(cachedShape, getName())") BooleanLocation location) {
+            return location.getBoolean(receiver, cachedShape);
+        }
+
+        @Specialization(replaces = "readCached")
+        public boolean readGeneric(DynamicObject receiver) {
+            return (boolean) read(receiver, getName());
+        }
+
+        @Fallback
+        public boolean readNull(Object receiver) {
+            throw cannotRead(receiver);
+        }
+    }
+
+    /** Fields of class and array types, which hold references and need no unboxing. */
+    public static abstract class MJReadObjectFieldNode extends MJReadFieldNode {
+        @Specialization(guards = {"receiver.getShape() == cachedShape", "location != null"}, assumptions = "cachedShape.getValidAssumption()", limit = "CACHE_LIMIT")
+        public Object readCached(DynamicObject receiver,
+                        @Cached("receiver.getShape()") Shape cachedShape,
+                        @Cached("getLocation(cachedShape, getName())") Location location) {
+            return location.get(receiver, cachedShape);
+        }
+
+        @Specialization(replaces = "readCached")
+        public Object readGeneric(DynamicObject receiver) {
+            return read(receiver, getName());
+        }
+
+        @Fallback
+        public Object readNull(Object receiver) {
+            throw cannotRead(receiver);
+        }
+    }
+
+    /** Writes a field, with the same shape cache as {@link MJReadFieldNode}. */
+    @ImportStatic(MJFieldNode.class)
+    @NodeChild(value = "receiver", type = MJExpressionNode.class)
+    @NodeChild(value = "value", type = MJExpressionNode.class)
+    @NodeField(name = "name", type = String.class)
+    @NodeField(name = "type", type = TypeDescriptor.class)
+    public static abstract class MJWriteFieldNode extends MJStatementNode {
+        protected abstract String getName();
+
+        protected abstract TypeDescriptor getType();
+
+        protected Error cannotWrite(Object receiver) {
+            return new Error("Cannot write field " + getName() + " of " + receiver);
+        }
+
+        /** The type checker only lets values of the declared type reach a field. */
+        protected void writeIncompatible(DynamicObject receiver, Object value) {
+            MJCompilationLog.transferToInterpreter(this, "field location does not fit the value");
+            write(receiver, getName(), value);
+        }
+
+        @TruffleBoundary
+        static void write(DynamicObject receiver, String name, Object value) {
+            FieldDescriptor field = lookupField(receiver, name);
+            if (!receiver.set(name, field.toStorage(value))) {
+                throw new Error("Cannot write field " + name);
+            }
+        }
+    }
+
+    public static abstract class MJWriteIntFieldNode extends MJWriteFieldNode {
+        @Specialization(guards = {"receiver.getShape() == cachedShape", "location != null"}, assumptions = "cachedShape.getValidAssumption()", limit = "CACHE_LIMIT")
+        public Object writeCached(DynamicObject receiver, int value,
+                        @Cached("receiver.getShape()") Shape cachedShape,
+                        @Cached("getIntLocation(cachedShape, getName())") IntLocation location) {
+            try {
+                location.setInt(receiver, value, cachedShape);
+            } catch (FinalLocationException e) {
+                writeIncompatible(receiver, value);
+            }
+            return null;
+        }
+
+        @Specialization(replaces = "writeCached")
+        public Object writeGeneric(DynamicObject receiver, int value) {
+            write(receiver, getName(), value);
+            return null;
+        }
+
+        @Fallback
+        public Object writeNull(Object receiver, Object value) {
+            throw cannotWrite(receiver);
+        }
+    }
+
+    /** Chars are stored widened to int. */
+    public static abstract class MJWriteCharFieldNode extends MJWriteFieldNode {
+        @Specialization(guards = {"receiver.getShape() == cachedShape", "location != null"}, assumptions = "cachedShape.getValidAssumption()", limit = "CACHE_LIMIT")
+        public Object writeCached(DynamicObject receiver, char value,
+                        @Cached("receiver.getShape()") Shape cachedShape,
+                        @Cached("getIntLocation(cachedShape, getName())") IntLocation location) {
+            try {
+                location.setInt(receiver, value, cachedShape);
+            } catch (FinalLocationException e) {
+                writeIncompatible(receiver, value);
+            }
+            return null;
+        }
+
+        @Specialization(replaces = "writeCached")
+        public Object writeGeneric(DynamicObject receiver, char value) {
+            write(receiver, getName(), value);
+            return null;
+        }
+
+        @Fallback
+        public Object writeNull(Object receiver, Object value) {
+            throw cannotWrite(receiver);
+        }
+    }
+
+    /** Int values are widened by the {@link MJTypes#castDouble(int) implicit cast}. */
+    public static abstract class MJWriteDoubleFieldNode extends MJWriteFieldNode {
+        @Specialization(guards = {"receiver.getShape() == cachedShape", "location != null"}, assumptions = "cachedShape.getValidAssumption()", limit = "CACHE_LIMIT")
+        public Object writeCached(DynamicObject receiver, double value,
+                        @Cached("receiver.getShape()") Shape cachedShape,
+                        @Cached("getDoubleLocation(cachedShape, getName())") DoubleLocation location) {
+            try {
+                location.setDouble(receiver, value, cachedShape);
+            } catch (FinalLocationException e) {
+                writeIncompatible(receiver, value);
+            }
+            return null;
+        }
+
+        @Specialization(replaces = "writeCached")
+        public Object writeGeneric(DynamicObject receiver, double value) {
+            write(receiver, getName(), value);
+            return null;
+        }
+
+        @Fallback
+        public Object writeNull(Object receiver, Object value) {
+            throw cannotWrite(receiver);
+        }
+    }
+
+    public static abstract class MJWriteBoolFieldNode extends MJWriteFieldNode {
+        @Specialization(guards = {"receiver.getShape() == cachedShape", "location != null"}, assumptions = "cachedShape.getValidAssumption()", limit = "CACHE_LIMIT")
+        public Object writeCached(DynamicObject receiver, boolean value,
+                        @Cached("receiver.getShape()") Shape cachedShape,
+                        @Cached("getBooleanLocation(cachedShape, getName())") BooleanLocation location) {
+            try {
+                location.setBoolean(receiver, value, cachedShape);
+            } catch (FinalLocationException e) {
+                writeIncompatible(receiver, value);
+            }
+            return null;
+        }
+
+        @Specialization(replaces = "writeCached")
+        public Object writeGeneric(DynamicObject receiver, boolean value) {
+            write(receiver, getName(), value);
+            return null;
+        }
+
+        @Fallback
+        public Object writeNull(Object receiver, Object value) {
+            throw cannotWrite(receiver);
+        }
+    }
+
+    public static abstract class MJWriteObjectFieldNode extends MJWriteFieldNode {
+        @Specialization(guards = {"receiver.getShape() == cachedShape", "location != null"}, assumptions = "cachedShape.getValidAssumption()", limit = "CACHE_LIMIT")
+        public Object writeCached(DynamicObject receiver, Object value,
+                        @Cached("receiver.getShape()") Shape cachedShape,
+                        @Cached("getLocation(cachedShape, getName())") Location location) {
+            try {
+                location.set(receiver, value, cachedShape);
+            } catch (IncompatibleLocationException | FinalLocationException e) {
+                writeIncompatible(receiver, value);
+            }
+            return null;
+        }
+
+        @Specialization(replaces = "writeCached")
+        public Object writeGeneric(DynamicObject receiver, Object value) {
+            write(receiver, getName(), value);
+            return null;
+        }
+
+        @Fallback
+        public Object writeNull(Object receiver, Object value) {
+            throw cannotWrite(receiver);
+        }
+    }
+}
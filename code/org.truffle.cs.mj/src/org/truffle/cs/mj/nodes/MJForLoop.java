@@ -0,0 +1,49 @@
+package org.truffle.cs.mj.nodes;
+
+import org.truffle.cs.mj.nodes.MJContinueNode.MJContinueException;
+import org.truffle.cs.mj.tools.MJProfiler;
+
+import com.oracle.truffle.api.frame.VirtualFrame;
+import com.oracle.truffle.api.nodes.UnexpectedResultException;
+
+/**
+ * <code>for (init; condition; update) body</code>. The init statement runs before this node; an
+ * absent condition is true and <code>continue</code> still runs the update.
+ */
+public class MJForLoop extends MJStatementNode {
+    @Child MJExpressionNode condition;
+    @Child MJStatementNode update;
+    @Child MJStatementNode loopBody;
+
+    public MJForLoop(MJExpressionNode condition, MJStatementNode update, MJStatementNode body) {
+        this.condition = condition;
+        this.update = update;
+        this.loopBody = body;
+    }
+
+    @Override
+    public Object execute(VirtualFrame frame) {
+        int count = 0;
+        try {
+            while (condition == null || condition.executeBool(frame)) {
+                count++;
+                MJProfiler.poll(this);
+                try {
+                    loopBody.execute(frame);
+                } catch (MJBreakNode.MJBreakException e) {
+                    break;
+                } catch (MJContinueException e) {
+                    // fall through to the update
+                }
+                if (update != null) {
+                    update.execute(frame);
+                }
+            }
+        } catch (UnexpectedResultException e) {
+            throw new Error("Condition should be bool");
+        } finally {
+            MJWhileLoop.reportLoopCount(this, count);
+        }
+        return null;
+    }
+}
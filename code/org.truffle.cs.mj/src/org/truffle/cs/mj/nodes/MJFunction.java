@@ -1,11 +1,15 @@
 package org.truffle.cs.mj.nodes;
 
 import org.truffle.cs.mj.parser.identifiertable.types.TypeDescriptor;
+import org.truffle.cs.mj.tools.MJCompilationLog;
+import org.truffle.cs.mj.tools.MJProfiler;
 
+import com.oracle.truffle.api.TruffleLanguage;
 import com.oracle.truffle.api.frame.FrameDescriptor;
 import com.oracle.truffle.api.frame.VirtualFrame;
 import com.oracle.truffle.api.nodes.NodeInfo;
 import com.oracle.truffle.api.nodes.RootNode;
+import com.oracle.truffle.api.source.SourceSection;
 
 @NodeInfo
 public class MJFunction extends RootNode {
@@ -13,30 +17,87 @@ public class MJFunction extends RootNode {
     final String name;
     @Child MJStatementNode body;
     public final TypeDescriptor returnType;
+    public final TypeDescriptor[] parameterTypes;
+    private MJMemoTable memoTable;
 
-    public MJFunction(String name, MJStatementNode body, FrameDescriptor frameDescriptor, TypeDescriptor returnType) {
-        super(null, frameDescriptor);
+    private SourceSection sourceSection;
+
+    public MJFunction(String name, MJStatementNode body, FrameDescriptor frameDescriptor, TypeDescriptor returnType, TypeDescriptor[] parameterTypes) {
+        this(null, name, body, frameDescriptor, returnType, parameterTypes);
+    }
+
+    /** A function of a program run by <code>language</code>, which lets tools instrument it. */
+    public MJFunction(TruffleLanguage<?> language, String name, MJStatementNode body, FrameDescriptor frameDescriptor, TypeDescriptor returnType, TypeDescriptor[] parameterTypes) {
+        super(language, frameDescriptor);
         this.body = body;
         this.name = name;
         this.returnType = returnType;
+        this.parameterTypes = parameterTypes;
+    }
+
+    /** Declares the function <code>pure</code>: calls look up their result first. */
+    public void memoize() {
+        memoTable = new MJMemoTable();
+    }
+
+    public boolean isPure() {
+        return memoTable != null;
+    }
+
+    /** The results of a pure function, <code>null</code> otherwise. */
+    public MJMemoTable getMemoTable() {
+        return memoTable;
+    }
+
+    /** Whether the body is parsed, <code>false</code> for a forward declaration. */
+    public boolean hasBody() {
+        return body != null;
+    }
+
+    public MJStatementNode getBody() {
+        return body;
     }
 
     public void changeBody(MJStatementNode newBody) {
-        this.body = newBody;
+        this.body = insert(newBody);
     }
 
+    /**
+     * Runs the body, and again for every {@link MJTailCallNode} of the function itself that reaches
+     * the top, which bound the new arguments already; each round is reported like a loop iteration.
+     */
     @Override
     public Object execute(VirtualFrame frame) {
+        MJCompilationLog.enter(this);
+        int count = 0;
         try {
-            body.execute(frame);
-        } catch (MJReturnNode.MJReturnException e) {
-            return e.value;
+            while (true) {
+                MJProfiler.poll(body);
+                try {
+                    body.execute(frame);
+                    return null;
+                } catch (MJReturnNode.MJReturnException e) {
+                    return e.value;
+                } catch (MJTailCallNode.MJSelfTailCallException e) {
+                    count++;
+                }
+            }
+        } finally {
+            MJWhileLoop.reportLoopCount(body, count);
         }
-        return null;
     }
 
     @Override
     public String getName() {
         return name;
     }
+
+    @Override
+    public SourceSection getSourceSection() {
+        return sourceSection;
+    }
+
+    public void setSourceSection(SourceSection sourceSection) {
+        this.sourceSection = sourceSection;
+    }
 }
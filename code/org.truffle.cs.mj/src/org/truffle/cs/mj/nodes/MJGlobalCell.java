@@ -0,0 +1,120 @@
+package org.truffle.cs.mj.nodes;
+
+import org.truffle.cs.mj.parser.identifiertable.types.TypeDescriptor;
+import org.truffle.cs.mj.parser.identifiertable.types.primitives.DoubleDescriptor;
+import org.truffle.cs.mj.tools.MJCompilationLog;
+
+import com.oracle.truffle.api.Assumption;
+import com.oracle.truffle.api.CompilerDirectives;
+import com.oracle.truffle.api.CompilerDirectives.TruffleBoundary;
+import com.oracle.truffle.api.Truffle;
+import com.oracle.truffle.api.utilities.NeverValidAssumption;
+
+/**
+ * A program-level variable: its slot in the {@link MJGlobalValues} of the program's
+ * {@link MJGlobals}, which all functions share.
+ * <p>
+ * Globals are mostly configuration that is set once and then only read, so the values keep an
+ * assumption per global that its value is stable: {@link MJGlobalNode.MJReadGlobalNode} folds the
+ * value into compiled code under the assumption, and only a write that changes the value invalidates
+ * it. A global that keeps changing gives up after {@link #MAX_INVALIDATIONS} writes in a run, and
+ * from then on is read like a field.
+ */
+public final class MJGlobalCell {
+
+    private static final int MAX_INVALIDATIONS = 8;
+
+    private final MJGlobals program;
+    private final String name;
+    private final TypeDescriptor type;
+    private final int index;
+
+    MJGlobalCell(MJGlobals program, String name, TypeDescriptor type, int index) {
+        this.program = program;
+        this.name = name;
+        this.type = type;
+        this.index = index;
+    }
+
+    public MJGlobals getProgram() {
+        return program;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public TypeDescriptor getType() {
+        return type;
+    }
+
+    public int getIndex() {
+        return index;
+    }
+
+    Assumption createStableAssumption() {
+        return Truffle.getRuntime().createAssumption(name + " is stable");
+    }
+
+    /**
+     * Valid as long as the value in <code>values</code> does not change, never valid once the global
+     * proved to change often in the current run.
+     */
+    public Assumption getStableAssumption(MJGlobalValues values) {
+        return values.stable[index];
+    }
+
+    public Object read(MJGlobalValues values) {
+        return values.values[index];
+    }
+
+    public void write(MJGlobalValues values, Object newValue) {
+        if (type instanceof DoubleDescriptor && newValue instanceof Integer) {
+            newValue = (double) (int) newValue;
+        }
+        Assumption stable = values.stable[index];
+        if (stable.isValid()) {
+            if (same(values.values[index], newValue)) {
+                return;
+            }
+            CompilerDirectives.transferToInterpreterAndInvalidate();
+            stable.invalidate();
+            MJCompilationLog.invalidated(program.getContext(), "stable value of global " + name);
+            values.values[index] = newValue;
+            values.invalidations[index]++;
+            values.stable[index] = values.invalidations[index] < MAX_INVALIDATIONS ? createStableAssumption() : NeverValidAssumption.INSTANCE;
+            return;
+        }
+        values.values[index] = newValue;
+    }
+
+    /**
+     * Puts the default value back for a new run, which starts with a stable value and all of its
+     * invalidations. Only code that folded another value is deoptimized.
+     */
+    @TruffleBoundary
+    void reset(MJGlobalValues values) {
+        Object initial = type.getDefaultValue();
+        if (!same(values.values[index], initial)) {
+            values.values[index] = initial;
+            if (values.stable[index].isValid()) {
+                values.stable[index].invalidate();
+                MJCompilationLog.invalidated(program.getContext(), "stable value of global " + name);
+            }
+        }
+        if (!values.stable[index].isValid()) {
+            values.stable[index] = createStableAssumption();
+        }
+        values.invalidations[index] = 0;
+    }
+
+    @TruffleBoundary
+    private static boolean same(Object a, Object b) {
+        return a == b || (a != null && a.equals(b));
+    }
+
+    @Override
+    public String toString() {
+        return name;
+    }
+}
@@ -0,0 +1,63 @@
+package org.truffle.cs.mj.nodes;
+
+import org.truffle.cs.mj.parser.identifiertable.types.TypeDescriptor;
+
+import com.oracle.truffle.api.Assumption;
+import com.oracle.truffle.api.dsl.Cached;
+import com.oracle.truffle.api.dsl.NodeChild;
+import com.oracle.truffle.api.dsl.NodeField;
+import com.oracle.truffle.api.dsl.Specialization;
+
+/**
+ * Program-level variables, stored in the {@link MJGlobalValues} of the current context at the slot of
+ * their {@link MJGlobalCell}.
+ */
+public class MJGlobalNode {
+
+    /**
+     * Reads a global. While its value is stable the read is the cached value, a constant in compiled
+     * code, as long as it reads the same values; a write that changes it invalidates the assumption,
+     * and the next read caches the new value, until the values stop offering an assumption for the
+     * global. Each context has values and assumptions of its own; beyond the DSL's default limit of
+     * cached contexts, and once a global changes too often, the read is a field read.
+     */
+    @NodeField(name = "cell", type = MJGlobalCell.class)
+    public static abstract class MJReadGlobalNode extends MJExpressionNode {
+        public abstract MJGlobalCell getCell();
+
+        @Override
+        public TypeDescriptor getType() {
+            return getCell().getType();
+        }
+
+        protected MJGlobalValues values() {
+            return getCell().getProgram().getValues();
+        }
+
+        @Specialization(guards = "values() == values", assumptions = "stable")
+        public Object readStable(
+                        @Cached("values()") MJGlobalValues values,
+                        @Cached("getCell().getStableAssumption(values)") Assumption stable,
+                        @Cached("getCell().read(values)") Object value) {
+            return value;
+        }
+
+        @Specialization(replaces = "readStable")
+        public Object readMutable() {
+            return getCell().read(values());
+        }
+    }
+
+    /** Writes a global; the parser checked that the value is assignable. */
+    @NodeChild(value = "value", type = MJExpressionNode.class)
+    @NodeField(name = "cell", type = MJGlobalCell.class)
+    public static abstract class MJWriteGlobalNode extends MJStatementNode {
+        public abstract MJGlobalCell getCell();
+
+        @Specialization
+        public Object write(Object value) {
+            getCell().write(getCell().getProgram().getValues(), value);
+            return null;
+        }
+    }
+}
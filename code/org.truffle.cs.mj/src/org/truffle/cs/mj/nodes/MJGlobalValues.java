@@ -0,0 +1,28 @@
+package org.truffle.cs.mj.nodes;
+
+import java.util.List;
+
+import com.oracle.truffle.api.Assumption;
+
+/**
+ * The values of the globals of one program in one context, by the slots of their
+ * {@link MJGlobalCell cells}. Each global also has its assumption that its value is stable here, so
+ * a write in one context neither deoptimizes code that read the value of another one, nor uses up
+ * the invalidations another context may still make.
+ */
+public final class MJGlobalValues {
+
+    final Object[] values;
+    final Assumption[] stable;
+    final int[] invalidations;
+
+    MJGlobalValues(List<MJGlobalCell> cells) {
+        values = new Object[cells.size()];
+        stable = new Assumption[cells.size()];
+        invalidations = new int[cells.size()];
+        for (MJGlobalCell cell : cells) {
+            values[cell.getIndex()] = cell.getType().getDefaultValue();
+            stable[cell.getIndex()] = cell.createStableAssumption();
+        }
+    }
+}
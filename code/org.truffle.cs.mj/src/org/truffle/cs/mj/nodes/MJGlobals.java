@@ -0,0 +1,77 @@
+package org.truffle.cs.mj.nodes;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.truffle.cs.mj.main.MJContext;
+import org.truffle.cs.mj.main.MJLanguage;
+import org.truffle.cs.mj.parser.identifiertable.types.TypeDescriptor;
+
+import com.oracle.truffle.api.CompilerDirectives;
+import com.oracle.truffle.api.CompilerDirectives.TruffleBoundary;
+
+/**
+ * The globals of one parsed program, a {@link MJGlobalCell} each. The program's nodes are shared by
+ * every context that runs it, so they hold no values: each {@link MJContext} keeps
+ * {@link MJGlobalValues} for the program, indexed by the slots of the cells. A program parsed outside
+ * of an engine has no context and keeps its values here.
+ * <p>
+ * Every run of the program starts with the default values, see {@link #startRun}.
+ */
+public final class MJGlobals {
+
+    private static final AtomicInteger ids = new AtomicInteger();
+
+    private final int id = ids.getAndIncrement();
+    private final boolean detached;
+    private final List<MJGlobalCell> cells = new ArrayList<>();
+    private MJGlobalValues detachedValues;
+
+    /** The globals of a program run in a context, or outside of an engine if <code>detached</code>. */
+    public MJGlobals(boolean detached) {
+        this.detached = detached;
+    }
+
+    /** Index of the values of this program in {@link MJContext#getGlobals}. */
+    public int getId() {
+        return id;
+    }
+
+    public MJGlobalCell add(String name, TypeDescriptor type) {
+        MJGlobalCell cell = new MJGlobalCell(this, name, type, cells.size());
+        cells.add(cell);
+        return cell;
+    }
+
+    /** Values holding the default of every global. */
+    public MJGlobalValues newValues() {
+        return new MJGlobalValues(cells);
+    }
+
+    /** The values of the current run, those of the current context unless the program is detached. */
+    public MJGlobalValues getValues() {
+        if (detached) {
+            if (detachedValues == null) {
+                CompilerDirectives.transferToInterpreter();
+                detachedValues = newValues();
+            }
+            return detachedValues;
+        }
+        return getContext().getGlobals(this);
+    }
+
+    /** The context running the program, <code>null</code> if it is detached. */
+    public MJContext getContext() {
+        return detached ? null : MJLanguage.getCurrentContext();
+    }
+
+    /** Puts the default values back, before main is called again; see {@link MJGlobalCell#reset}. */
+    @TruffleBoundary
+    public void startRun() {
+        MJGlobalValues values = getValues();
+        for (MJGlobalCell cell : cells) {
+            cell.reset(values);
+        }
+    }
+}
@@ -1,15 +1,22 @@
 package org.truffle.cs.mj.nodes;
 
 import org.truffle.cs.mj.parser.identifiertable.types.TypeDescriptor;
+import org.truffle.cs.mj.tools.MJCompilationLog;
 
 import com.oracle.truffle.api.CallTarget;
+import com.oracle.truffle.api.RootCallTarget;
 import com.oracle.truffle.api.frame.VirtualFrame;
+import com.oracle.truffle.api.instrumentation.StandardTags;
+import com.oracle.truffle.api.instrumentation.Tag;
 import com.oracle.truffle.api.nodes.DirectCallNode;
 import com.oracle.truffle.api.nodes.ExplodeLoop;
+import com.oracle.truffle.api.nodes.RootNode;
 
 public class MJInvokeNode extends MJExpressionNode {
     @Child private DirectCallNode callNode;
     @Children private final MJExpressionNode[] params;
+    @Child private MJDispatchNode dispatchNode;
+    private final MJMemoTable memoTable;
     private TypeDescriptor returnType;
 
     @Override
@@ -21,6 +28,25 @@ public class MJInvokeNode extends MJExpressionNode {
         callNode = DirectCallNode.create(target);
         this.params = params;
         this.returnType = returnType;
+        this.memoTable = ((MJFunction) ((RootCallTarget) target).getRootNode()).getMemoTable();
+    }
+
+    @Override
+    public boolean hasTag(Class<? extends Tag> tag) {
+        return tag == StandardTags.CallTag.class || super.hasTag(tag);
+    }
+
+    public CallTarget getCallTarget() {
+        return callNode.getCallTarget();
+    }
+
+    /** Whether this calls <code>function</code>. */
+    public boolean isCallTo(RootNode function) {
+        return ((RootCallTarget) callNode.getCallTarget()).getRootNode() == function;
+    }
+
+    public MJExpressionNode[] getParams() {
+        return params;
     }
 
     @Override
@@ -30,7 +56,45 @@ public class MJInvokeNode extends MJExpressionNode {
         for (int i = 0; i < params.length; i++) {
             argumentValuesObjects[i + 1] = params[i].executeGeneric(frame);
         }
-        return callNode.call(argumentValuesObjects);
+        if (memoTable != null) {
+            long key = MJMemoTable.key(argumentValuesObjects);
+            Object result = memoTable.get(key);
+            if (result == null) {
+                result = call(argumentValuesObjects);
+                memoTable.put(key, result);
+            }
+            return result;
+        }
+        return call(argumentValuesObjects);
+    }
+
+    private Object call(Object[] arguments) {
+        try {
+            return callNode.call(arguments);
+        } catch (MJTailCallNode.MJTailCallException e) {
+            return trampoline(e);
+        }
+    }
+
+    /**
+     * Keeps calling the targets of the tail calls that unwind to this call, until one returns; see
+     * {@link MJTailCallNode}.
+     */
+    private Object trampoline(MJTailCallNode.MJTailCallException tailCall) {
+        if (dispatchNode == null) {
+            MJCompilationLog.transferToInterpreterAndInvalidate(this, "first tail call through this call");
+            dispatchNode = insert(MJDispatchNodeGen.create());
+        }
+        CallTarget target = tailCall.target;
+        Object[] arguments = tailCall.arguments;
+        while (true) {
+            try {
+                return dispatchNode.executeDispatch(target, arguments);
+            } catch (MJTailCallNode.MJTailCallException e) {
+                target = e.target;
+                arguments = e.arguments;
+            }
+        }
     }
 
 }
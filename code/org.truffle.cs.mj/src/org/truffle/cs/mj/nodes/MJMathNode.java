@@ -0,0 +1,145 @@
+package org.truffle.cs.mj.nodes;
+
+import org.truffle.cs.mj.parser.identifiertable.types.TypeDescriptor;
+import org.truffle.cs.mj.parser.identifiertable.types.primitives.DoubleDescriptor;
+
+import com.oracle.truffle.api.dsl.NodeChild;
+import com.oracle.truffle.api.dsl.Specialization;
+
+/**
+ * Built-in math functions. Every specialization maps to a single {@link Math} method, which the
+ * compiler replaces by the matching machine instruction or intrinsic.
+ */
+public class MJMathNode {
+
+    @NodeChild(value = "value", type = MJExpressionNode.class)
+    public static abstract class MJUnaryMathNode extends MJExpressionNode {
+        public abstract MJExpressionNode getValue();
+
+        /** For functions that map int to int and double to double. */
+        protected TypeDescriptor getPreservedType() {
+            return getValue().getType();
+        }
+
+        /** For functions that are only defined on doubles, int arguments are widened. */
+        protected TypeDescriptor getDoubleType() {
+            return DoubleDescriptor.INSTANCE;
+        }
+    }
+
+    public static abstract class AbsNode extends MJUnaryMathNode {
+        @Override
+        public TypeDescriptor getType() {
+            return getPreservedType();
+        }
+
+        @Specialization
+        public int abs(int value) {
+            return Math.abs(value);
+        }
+
+        @Specialization
+        public double abs(double value) {
+            return Math.abs(value);
+        }
+    }
+
+    public static abstract class FloorNode extends MJUnaryMathNode {
+        @Override
+        public TypeDescriptor getType() {
+            return getPreservedType();
+        }
+
+        @Specialization
+        public int floor(int value) {
+            return value;
+        }
+
+        @Specialization
+        public double floor(double value) {
+            return Math.floor(value);
+        }
+    }
+
+    public static abstract class SqrtNode extends MJUnaryMathNode {
+        @Override
+        public TypeDescriptor getType() {
+            return getDoubleType();
+        }
+
+        @Specialization
+        public double sqrt(double value) {
+            return Math.sqrt(value);
+        }
+    }
+
+    public static abstract class SinNode extends MJUnaryMathNode {
+        @Override
+        public TypeDescriptor getType() {
+            return getDoubleType();
+        }
+
+        @Specialization
+        public double sin(double value) {
+            return Math.sin(value);
+        }
+    }
+
+    public static abstract class CosNode extends MJUnaryMathNode {
+        @Override
+        public TypeDescriptor getType() {
+            return getDoubleType();
+        }
+
+        @Specialization
+        public double cos(double value) {
+            return Math.cos(value);
+        }
+    }
+
+    public static abstract class MinNode extends MJBinaryNode {
+        @Override
+        public TypeDescriptor getType() {
+            return getArithmeticType();
+        }
+
+        @Specialization
+        public int min(int lhs, int rhs) {
+            return Math.min(lhs, rhs);
+        }
+
+        @Specialization
+        public double min(double lhs, double rhs) {
+            return Math.min(lhs, rhs);
+        }
+    }
+
+    public static abstract class MaxNode extends MJBinaryNode {
+        @Override
+        public TypeDescriptor getType() {
+            return getArithmeticType();
+        }
+
+        @Specialization
+        public int max(int lhs, int rhs) {
+            return Math.max(lhs, rhs);
+        }
+
+        @Specialization
+        public double max(double lhs, double rhs) {
+            return Math.max(lhs, rhs);
+        }
+    }
+
+    public static abstract class PowNode extends MJBinaryNode {
+        @Override
+        public TypeDescriptor getType() {
+            return DoubleDescriptor.INSTANCE;
+        }
+
+        @Specialization
+        public double pow(double lhs, double rhs) {
+            return Math.pow(lhs, rhs);
+        }
+    }
+}
@@ -0,0 +1,123 @@
+package org.truffle.cs.mj.nodes;
+
+import java.util.concurrent.atomic.LongAdder;
+
+import com.oracle.truffle.api.CompilerDirectives.TruffleBoundary;
+
+/**
+ * Results of a <code>pure</code> function by arguments. A pure function takes at most two int, char
+ * or bool arguments, so they pack into a <code>long</code> key, see {@link #key}.
+ * <p>
+ * The table has a fixed number of entries and uses open addressing: a key may only sit in the
+ * {@link #WAYS} entries following its hash. When they are all taken, the CLOCK algorithm picks the
+ * one to replace: a hit marks an entry referenced, and the hand skips and unmarks referenced entries
+ * until it finds one that was not used since it last passed.
+ * <p>
+ * The function, and with it the table, is shared by every context and thread that runs the program.
+ * An entry is an immutable pair in a single array slot, so a lookup sees a key with its own value or
+ * no entry, never a key with the value of another one. A pure function gives the same result in any
+ * context, so two threads that race to fill a slot store equal results. The reference bits and the
+ * hands only steer the choice of the entry to replace, and may see each other's updates late.
+ */
+public final class MJMemoTable {
+
+    private static final int CAPACITY = 4096;
+    private static final int WAYS = 4;
+
+    private final Entry[] entries = new Entry[CAPACITY];
+    private final boolean[] referenced = new boolean[CAPACITY];
+    private final int[] hands = new int[CAPACITY / WAYS];
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+
+    private static final class Entry {
+        final long key;
+        final Object value;
+
+        Entry(long key, Object value) {
+            this.key = key;
+            this.value = value;
+        }
+    }
+
+    /** Packs the arguments, as passed to a call target after the leading frame slot. */
+    public static long key(Object[] arguments) {
+        long key = 0;
+        for (int i = 1; i < arguments.length; i++) {
+            key = (key << 32) | (toInt(arguments[i]) & 0xFFFFFFFFL);
+        }
+        return key;
+    }
+
+    private static int toInt(Object argument) {
+        if (argument instanceof Integer) {
+            return (int) argument;
+        } else if (argument instanceof Character) {
+            return (char) argument;
+        } else if (argument instanceof Boolean) {
+            return (boolean) argument ? 1 : 0;
+        }
+        throw new Error("Cannot memoize argument " + argument);
+    }
+
+    private static int bucket(long key) {
+        long hash = key * 0x9E3779B97F4A7C15L;
+        return (int) (hash >>> 32) & (CAPACITY / WAYS - 1);
+    }
+
+    /** The result for <code>key</code>, or <code>null</code> if it is not cached. */
+    @TruffleBoundary
+    public Object get(long key) {
+        int start = bucket(key) * WAYS;
+        for (int i = start; i < start + WAYS; i++) {
+            Entry entry = entries[i];
+            if (entry == null) {
+                break;
+            }
+            if (entry.key == key) {
+                referenced[i] = true;
+                hits.increment();
+                return entry.value;
+            }
+        }
+        misses.increment();
+        return null;
+    }
+
+    @TruffleBoundary
+    public void put(long key, Object value) {
+        int bucket = bucket(key);
+        int start = bucket * WAYS;
+        Entry added = new Entry(key, value);
+        for (int i = start; i < start + WAYS; i++) {
+            Entry entry = entries[i];
+            if (entry == null || entry.key == key) {
+                entries[i] = added;
+                return;
+            }
+        }
+        int hand = hands[bucket];
+        while (referenced[start + hand]) {
+            referenced[start + hand] = false;
+            hand = (hand + 1) % WAYS;
+        }
+        entries[start + hand] = added;
+        hands[bucket] = (hand + 1) % WAYS;
+    }
+
+    public long getHits() {
+        return hits.sum();
+    }
+
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    /** Fraction of lookups that found a result, 0 before the first lookup. */
+    public double getHitRate() {
+        long found = hits.sum();
+        long lookups = found + misses.sum();
+        return lookups == 0 ? 0 : (double) found / lookups;
+    }
+}
@@ -28,8 +28,8 @@ public abstract class MJPrintNode extends MJStatementNode {
     }
 
     @Specialization
-    Object printO(Object o) {
-        print(o);
+    Object printB(boolean b) {
+        print(b);
         return null;
     }
 
@@ -49,7 +49,7 @@ public abstract class MJPrintNode extends MJStatementNode {
     }
 
     @TruffleBoundary
-    private static void print(Object o) {
-        System.out.print(o);
+    private static void print(boolean b) {
+        System.out.println(b);
     }
 }
@@ -20,7 +20,7 @@ public class MJReadNode extends MJExpressionNode {
 
     @Override
     public TypeDescriptor getType() {
-        return new CharDescriptor().getInstance();
+        return CharDescriptor.INSTANCE;
     }
 
     @Override
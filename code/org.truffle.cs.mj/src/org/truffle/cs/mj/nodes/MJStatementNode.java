@@ -1,10 +1,58 @@
 package org.truffle.cs.mj.nodes;
 
+import com.oracle.truffle.api.dsl.Introspectable;
+import com.oracle.truffle.api.dsl.TypeSystemReference;
 import com.oracle.truffle.api.frame.VirtualFrame;
+import com.oracle.truffle.api.instrumentation.GenerateWrapper;
+import com.oracle.truffle.api.instrumentation.InstrumentableNode;
+import com.oracle.truffle.api.instrumentation.ProbeNode;
+import com.oracle.truffle.api.instrumentation.StandardTags;
+import com.oracle.truffle.api.instrumentation.Tag;
 import com.oracle.truffle.api.nodes.Node;
 import com.oracle.truffle.api.nodes.NodeInfo;
+import com.oracle.truffle.api.source.SourceSection;
 
+/**
+ * Statements that the parser gave a source section are instrumentable and tagged as statements;
+ * the body of a function is tagged as its root. Tools attach through a
+ * <code>MJStatementNodeWrapper</code>, which only exists while one is attached.
+ */
 @NodeInfo
-public abstract class MJStatementNode extends Node {
+@Introspectable
+@GenerateWrapper
+@TypeSystemReference(MJTypes.class)
+public abstract class MJStatementNode extends Node implements InstrumentableNode {
+    private SourceSection sourceSection;
+    private boolean hasRootTag;
+
     public abstract Object execute(VirtualFrame frame);
+
+    @Override
+    public SourceSection getSourceSection() {
+        return sourceSection;
+    }
+
+    public void setSourceSection(SourceSection sourceSection) {
+        this.sourceSection = sourceSection;
+    }
+
+    /** Marks the body of a function. */
+    public void addRootTag() {
+        hasRootTag = true;
+    }
+
+    public boolean isInstrumentable() {
+        return sourceSection != null;
+    }
+
+    public boolean hasTag(Class<? extends Tag> tag) {
+        if (tag == StandardTags.RootTag.class) {
+            return hasRootTag;
+        }
+        return tag == StandardTags.StatementTag.class && !hasRootTag;
+    }
+
+    public WrapperNode createWrapper(ProbeNode probe) {
+        return new MJStatementNodeWrapper(this, probe);
+    }
 }
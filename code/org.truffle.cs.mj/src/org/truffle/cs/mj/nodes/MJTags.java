@@ -0,0 +1,19 @@
+package org.truffle.cs.mj.nodes;
+
+import com.oracle.truffle.api.instrumentation.Tag;
+
+/**
+ * Tags MicroJava++ provides in addition to the standard ones.
+ */
+public final class MJTags {
+
+    private MJTags() {
+    }
+
+    /** <code>new X</code> and <code>new X[n]</code>; the value of the node is the new instance. */
+    @Tag.Identifier("ALLOCATION")
+    public static final class AllocationTag extends Tag {
+        private AllocationTag() {
+        }
+    }
+}
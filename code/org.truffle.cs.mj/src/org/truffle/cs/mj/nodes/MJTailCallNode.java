@@ -0,0 +1,103 @@
+package org.truffle.cs.mj.nodes;
+
+import org.truffle.cs.mj.tools.MJCompilationLog;
+
+import com.oracle.truffle.api.CallTarget;
+import com.oracle.truffle.api.CompilerDirectives.CompilationFinal;
+import com.oracle.truffle.api.frame.VirtualFrame;
+import com.oracle.truffle.api.instrumentation.StandardTags;
+import com.oracle.truffle.api.instrumentation.Tag;
+import com.oracle.truffle.api.nodes.ControlFlowException;
+import com.oracle.truffle.api.nodes.ExplodeLoop;
+
+/**
+ * <code>return f(...)</code> in tail position. Instead of calling, it evaluates the arguments and
+ * unwinds:
+ * <ul>
+ * <li>inside <code>f</code> itself (no <code>target</code>) to {@link MJFunction#execute}, which runs
+ * the body again, so self-recursion runs as a loop. The arguments are bound as the new parameters in
+ * place before, so the signal carries nothing and is thrown without allocating;</li>
+ * <li>in a <code>tail</code> function, out of the function to the trampoline in the
+ * {@link MJInvokeNode} that called it, which then calls <code>target</code>, so mutual recursion also
+ * runs in constant stack space.</li>
+ * </ul>
+ */
+public class MJTailCallNode extends MJStatementNode {
+    private final CallTarget target;
+    @Children private final MJExpressionNode[] params;
+    /** How many block frames the node runs below the frame of its function. */
+    @CompilationFinal private int depth = -1;
+
+    /** A tail call of the enclosing function. */
+    public MJTailCallNode(MJExpressionNode[] params) {
+        this(null, params);
+    }
+
+    public MJTailCallNode(CallTarget target, MJExpressionNode[] params) {
+        this.target = target;
+        this.params = params;
+    }
+
+    @Override
+    public boolean hasTag(Class<? extends Tag> tag) {
+        return tag == StandardTags.CallTag.class || super.hasTag(tag);
+    }
+
+    /** The function to call, <code>null</code> for the enclosing function. */
+    public CallTarget getTarget() {
+        return target;
+    }
+
+    @Override
+    @ExplodeLoop
+    public Object execute(VirtualFrame frame) {
+        if (target == null) {
+            // all arguments are evaluated before the first parameter changes
+            Object[] values = new Object[params.length];
+            for (int i = 0; i < params.length; i++) {
+                values[i] = params[i].executeGeneric(frame);
+            }
+            if (depth < 0) {
+                MJCompilationLog.transferToInterpreterAndInvalidate(this, "first execution of a tail call");
+                depth = MJVariableNode.functionDepth(frame);
+            }
+            rebindArguments(MJVariableNode.getFrame(frame, depth).getArguments(), values);
+            throw MJSelfTailCallException.INSTANCE;
+        }
+        // same layout as the arguments of MJInvokeNode
+        Object[] arguments = new Object[params.length + 1];
+        for (int i = 0; i < params.length; i++) {
+            arguments[i + 1] = params[i].executeGeneric(frame);
+        }
+        // a fresh exception per call, so contexts running the same AST share no state
+        throw new MJTailCallException(target, arguments);
+    }
+
+    /** Parameters are the trailing elements of the argument array, see {@link MJReadParameterNode}. */
+    @ExplodeLoop
+    private static void rebindArguments(Object[] arguments, Object[] values) {
+        int offset = arguments.length - values.length;
+        for (int i = 0; i < values.length; i++) {
+            arguments[offset + i] = values[i];
+        }
+    }
+
+    /** Runs the body of the function again, its parameters already hold the new arguments. */
+    public static final class MJSelfTailCallException extends ControlFlowException {
+        static final MJSelfTailCallException INSTANCE = new MJSelfTailCallException();
+
+        private MJSelfTailCallException() {
+        }
+    }
+
+    /** Calls <code>target</code> with <code>arguments</code> in the trampoline of the caller. */
+    public static class MJTailCallException extends ControlFlowException {
+        public final CallTarget target;
+        public final Object[] arguments;
+
+        MJTailCallException(CallTarget target, Object[] arguments) {
+            this.target = target;
+            this.arguments = arguments;
+        }
+    }
+}
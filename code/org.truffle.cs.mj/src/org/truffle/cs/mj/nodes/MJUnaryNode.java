@@ -0,0 +1,25 @@
+package org.truffle.cs.mj.nodes;
+
+import org.truffle.cs.mj.parser.identifiertable.types.TypeDescriptor;
+import org.truffle.cs.mj.parser.identifiertable.types.primitives.IntDescriptor;
+
+import com.oracle.truffle.api.dsl.NodeChild;
+import com.oracle.truffle.api.dsl.Specialization;
+
+@NodeChild(value = "value", type = MJExpressionNode.class)
+public abstract class MJUnaryNode extends MJExpressionNode {
+
+    public abstract MJExpressionNode getValue();
+
+    public static abstract class BitNotNode extends MJUnaryNode {
+        @Override
+        public TypeDescriptor getType() {
+            return IntDescriptor.INSTANCE;
+        }
+
+        @Specialization
+        public int bitNot(int value) {
+            return ~value;
+        }
+    }
+}
@@ -1,205 +1,375 @@
 package org.truffle.cs.mj.nodes;
 
-import org.truffle.cs.mj.parser.identifiertable.TypeTable;
 import org.truffle.cs.mj.parser.identifiertable.types.TypeDescriptor;
 import org.truffle.cs.mj.parser.identifiertable.types.primitives.BoolDescriptor;
 import org.truffle.cs.mj.parser.identifiertable.types.primitives.CharDescriptor;
 import org.truffle.cs.mj.parser.identifiertable.types.primitives.DoubleDescriptor;
 import org.truffle.cs.mj.parser.identifiertable.types.primitives.IntDescriptor;
-import org.truffle.cs.mj.parser.identifiertable.types.primitives.constants.ConstantBoolDescriptor;
-import org.truffle.cs.mj.parser.identifiertable.types.primitives.constants.ConstantCharDescriptor;
-import org.truffle.cs.mj.parser.identifiertable.types.primitives.constants.ConstantDoubleDescriptor;
-import org.truffle.cs.mj.parser.identifiertable.types.primitives.constants.ConstantIntDescriptor;
-import org.truffle.cs.mj.parser.identifiertable.types.primitives.constants.ConstantTypeDescriptor;
+import org.truffle.cs.mj.tools.MJCompilationLog;
 
-import com.oracle.truffle.api.CompilerDirectives;
+import com.oracle.truffle.api.CompilerAsserts;
+import com.oracle.truffle.api.CompilerDirectives.CompilationFinal;
 import com.oracle.truffle.api.dsl.ImportStatic;
 import com.oracle.truffle.api.dsl.NodeChild;
 import com.oracle.truffle.api.dsl.NodeField;
 import com.oracle.truffle.api.dsl.Specialization;
+import com.oracle.truffle.api.frame.FrameDescriptor;
 import com.oracle.truffle.api.frame.FrameSlot;
 import com.oracle.truffle.api.frame.FrameSlotKind;
 import com.oracle.truffle.api.frame.FrameSlotTypeException;
 import com.oracle.truffle.api.frame.VirtualFrame;
 import com.oracle.truffle.api.nodes.ExplodeLoop;
 
+/**
+ * Local variable access. The parser knows the declared type of every variable, so it picks one of
+ * the concretely typed read/write nodes below up front instead of letting a single node guard on
+ * the type descriptor at run time.
+ */
 public class MJVariableNode {
 
+    public static MJExpressionNode createRead(FrameSlot slot, TypeDescriptor type) {
+        if (type instanceof BoolDescriptor) {
+            return MJVariableNodeFactory.MJReadBoolLocalVariableNodeGen.create(slot, type);
+        } else if (type instanceof CharDescriptor) {
+            return MJVariableNodeFactory.MJReadCharLocalVariableNodeGen.create(slot, type);
+        } else if (type instanceof IntDescriptor) {
+            return MJVariableNodeFactory.MJReadIntLocalVariableNodeGen.create(slot, type);
+        } else if (type instanceof DoubleDescriptor) {
+            return MJVariableNodeFactory.MJReadDoubleLocalVariableNodeGen.create(slot, type);
+        }
+        return MJVariableNodeFactory.MJReadObjectLocalVariableNodeGen.create(slot, type);
+    }
+
+    /** Reads an <code>auto</code> variable, whose type the parser inferred as <code>type</code>. */
+    public static MJExpressionNode createAutoRead(FrameSlot slot, TypeDescriptor type) {
+        return MJVariableNodeFactory.MJReadAutoLocalVariableNodeGen.create(slot, type);
+    }
+
+    public static MJStatementNode createWrite(MJExpressionNode value, FrameSlot slot, TypeDescriptor type) {
+        if (type instanceof BoolDescriptor) {
+            return MJVariableNodeFactory.MJWriteBoolLocalVariableNodeGen.create(value, slot, type);
+        } else if (type instanceof CharDescriptor) {
+            return MJVariableNodeFactory.MJWriteCharLocalVariableNodeGen.create(value, slot, type);
+        } else if (type instanceof IntDescriptor) {
+            return MJVariableNodeFactory.MJWriteIntLocalVariableNodeGen.create(value, slot, type);
+        } else if (type instanceof DoubleDescriptor) {
+            return MJVariableNodeFactory.MJWriteDoubleLocalVariableNodeGen.create(value, slot, type);
+        }
+        return MJVariableNodeFactory.MJWriteObjectLocalVariableNodeGen.create(value, slot, type);
+    }
+
+    /** Writes an <code>auto</code> variable, whose type the parser inferred as <code>type</code>. */
+    public static MJStatementNode createAutoWrite(MJExpressionNode value, FrameSlot slot, TypeDescriptor type) {
+        return MJVariableNodeFactory.MJWriteAutoLocalVariableNodeGen.create(value, slot, type);
+    }
+
+    /**
+     * Every block runs in a frame of its own whose first argument is the frame of the enclosing
+     * block, so a variable lives <code>depth</code> frames up from the frame its access runs in. The
+     * depth only depends on where the access is in the program: nodes find it once with
+     * {@link #depth} and compiled code then follows a constant number of links.
+     */
+    @ExplodeLoop
+    static VirtualFrame getFrame(VirtualFrame frame, int depth) {
+        VirtualFrame target = frame;
+        for (int i = 0; i < depth; i++) {
+            target = (VirtualFrame) target.getArguments()[0];
+        }
+        return target;
+    }
+
+    /** Number of frames between <code>frame</code> and the frame that declares <code>slot</code>. */
+    static int depth(VirtualFrame frame, FrameSlot slot) {
+        CompilerAsserts.neverPartOfCompilation();
+        int depth = 0;
+        VirtualFrame target = frame;
+        while (!target.getFrameDescriptor().getSlots().contains(slot)) {
+            target = (VirtualFrame) target.getArguments()[0];
+            depth++;
+        }
+        return depth;
+    }
+
+    /** Number of block frames between <code>frame</code> and the frame of its function. */
+    static int functionDepth(VirtualFrame frame) {
+        CompilerAsserts.neverPartOfCompilation();
+        int depth = 0;
+        VirtualFrame target = frame;
+        while (target.getArguments().length == 1 && target.getArguments()[0] instanceof VirtualFrame) {
+            target = (VirtualFrame) target.getArguments()[0];
+            depth++;
+        }
+        return depth;
+    }
+
     @NodeField(name = "slot", type = FrameSlot.class)
     @NodeField(name = "type", type = TypeDescriptor.class)
     public static abstract class MJReadLocalVariableNode extends MJExpressionNode {
-        protected abstract FrameSlot getSlot();
+        @CompilationFinal private int depth = -1;
+
+        public abstract FrameSlot getSlot();
 
         @Override
         public abstract TypeDescriptor getType();
 
-        @Specialization(guards = "isBoolVariable(getType())")
-        public Object readBoolVariable(VirtualFrame frame) {
+        protected VirtualFrame getFrame(VirtualFrame frame) {
+            if (depth < 0) {
+                MJCompilationLog.transferToInterpreterAndInvalidate(this, "first execution of a variable access");
+                depth = MJVariableNode.depth(frame, getSlot());
+            }
+            return MJVariableNode.getFrame(frame, depth);
+        }
+    }
+
+    public static abstract class MJReadBoolLocalVariableNode extends MJReadLocalVariableNode {
+        @Specialization
+        public boolean readBool(VirtualFrame frame) {
             try {
                 return getFrame(frame).getBoolean(getSlot());
             } catch (FrameSlotTypeException e) {
-                CompilerDirectives.transferToInterpreterAndInvalidate();
-                e.printStackTrace();
+                MJCompilationLog.transferToInterpreterAndInvalidate(this, "frame slot holds another type");
                 throw new Error(e);
             }
         }
+    }
 
-        @Specialization(guards = "isCharVariable(getType())")
-        public Object readCharVariable(VirtualFrame frame) {
+    public static abstract class MJReadCharLocalVariableNode extends MJReadLocalVariableNode {
+        @Specialization
+        public char readChar(VirtualFrame frame) {
             try {
-                return getFrame(frame).getByte(getSlot());
+                return (char) getFrame(frame).getInt(getSlot());
             } catch (FrameSlotTypeException e) {
-                CompilerDirectives.transferToInterpreterAndInvalidate();
-                e.printStackTrace();
+                MJCompilationLog.transferToInterpreterAndInvalidate(this, "frame slot holds another type");
                 throw new Error(e);
             }
         }
+    }
 
-        @Specialization(guards = "isIntVariable(getType())")
-        public Object readIntVariable(VirtualFrame frame) {
+    public static abstract class MJReadIntLocalVariableNode extends MJReadLocalVariableNode {
+        @Specialization
+        public int readInt(VirtualFrame frame) {
             try {
                 return getFrame(frame).getInt(getSlot());
             } catch (FrameSlotTypeException e) {
-                CompilerDirectives.transferToInterpreterAndInvalidate();
-                e.printStackTrace();
+                MJCompilationLog.transferToInterpreterAndInvalidate(this, "frame slot holds another type");
                 throw new Error(e);
             }
         }
+    }
 
-        @Specialization(guards = "isDoubleVariable(getType())")
-        public Object readDoubleVariable(VirtualFrame frame) {
+    public static abstract class MJReadDoubleLocalVariableNode extends MJReadLocalVariableNode {
+        @Specialization
+        public double readDouble(VirtualFrame frame) {
             try {
                 return getFrame(frame).getDouble(getSlot());
             } catch (FrameSlotTypeException e) {
-                CompilerDirectives.transferToInterpreterAndInvalidate();
-                e.printStackTrace();
+                MJCompilationLog.transferToInterpreterAndInvalidate(this, "frame slot holds another type");
                 throw new Error(e);
             }
         }
+    }
 
+    public static abstract class MJReadObjectLocalVariableNode extends MJReadLocalVariableNode {
         @Specialization
-        public Object readVariable(VirtualFrame frame) {
+        public Object readObject(VirtualFrame frame) {
             try {
                 return getFrame(frame).getObject(getSlot());
             } catch (FrameSlotTypeException e) {
-                CompilerDirectives.transferToInterpreterAndInvalidate();
-                e.printStackTrace();
+                MJCompilationLog.transferToInterpreterAndInvalidate(this, "frame slot holds another type");
+                throw new Error(e);
+            }
+        }
+    }
+
+    /**
+     * Reads an <code>auto</code> variable according to the kind its slot has been speculated to. A
+     * slot only ever moves from Illegal to Int, Double or Boolean, from Int to Double, and from there
+     * to Object. Every change invalidates the frame descriptor, so compiled reads depend on the
+     * current kind.
+     */
+    @ImportStatic(FrameSlotKind.class)
+    public static abstract class MJReadAutoLocalVariableNode extends MJReadLocalVariableNode {
+        @Specialization(guards = "isKind(frame, Int)")
+        public int readInt(VirtualFrame frame) {
+            try {
+                return getFrame(frame).getInt(getSlot());
+            } catch (FrameSlotTypeException e) {
+                MJCompilationLog.transferToInterpreterAndInvalidate(this, "frame slot holds another type");
+                throw new Error(e);
+            }
+        }
+
+        @Specialization(guards = "isKind(frame, Double)")
+        public double readDouble(VirtualFrame frame) {
+            VirtualFrame target = getFrame(frame);
+            try {
+                return target.getDouble(getSlot());
+            } catch (FrameSlotTypeException e) {
+                MJCompilationLog.transferToInterpreterAndInvalidate(this, "frame slot holds another type");
+                if (target.isInt(getSlot())) {
+                    // written as int by an activation that started before the slot was widened
+                    return (int) target.getValue(getSlot());
+                }
+                throw new Error(e);
+            }
+        }
+
+        @Specialization(guards = "isKind(frame, Boolean)")
+        public boolean readBool(VirtualFrame frame) {
+            try {
+                return getFrame(frame).getBoolean(getSlot());
+            } catch (FrameSlotTypeException e) {
+                MJCompilationLog.transferToInterpreterAndInvalidate(this, "frame slot holds another type");
                 throw new Error(e);
             }
         }
 
-        @ExplodeLoop
-        private VirtualFrame getFrame(VirtualFrame frame) {
-            CompilerDirectives.transferToInterpreter();
-            while (!frame.getFrameDescriptor().getSlots().contains(getSlot())) {
-                frame = (VirtualFrame) frame.getArguments()[0];
+        @Specialization(replaces = {"readInt", "readDouble", "readBool"})
+        public Object readObject(VirtualFrame frame) {
+            VirtualFrame target = getFrame(frame);
+            if (!target.isObject(getSlot())) {
+                // still holds a primitive from before the slot was generalized, box it once
+                MJCompilationLog.transferToInterpreter(this, "primitive left in a generalized slot");
+                Object value = target.getValue(getSlot());
+                target.setObject(getSlot(), value);
+                return value;
+            }
+            try {
+                return target.getObject(getSlot());
+            } catch (FrameSlotTypeException e) {
+                MJCompilationLog.transferToInterpreterAndInvalidate(this, "frame slot holds another type");
+                throw new Error(e);
             }
+        }
 
-            return frame;
+        protected boolean isKind(VirtualFrame frame, FrameSlotKind kind) {
+            return getFrame(frame).getFrameDescriptor().getFrameSlotKind(getSlot()) == kind;
         }
     }
 
+    /**
+     * Writes are only created for variables the parser allowed to be written, so constness is not
+     * checked here.
+     */
     @NodeChild(value = "value", type = MJExpressionNode.class)
     @NodeField(name = "slot", type = FrameSlot.class)
     @NodeField(name = "type", type = TypeDescriptor.class)
-    @ImportStatic(MJExpressionNode.class)
     public static abstract class MJWriteLocalVariableNode extends MJStatementNode {
-        protected abstract FrameSlot getSlot();
+        @CompilationFinal private int depth = -1;
+
+        public abstract MJExpressionNode getValue();
+
+        public abstract FrameSlot getSlot();
 
         protected abstract TypeDescriptor getType();
 
-        @ExplodeLoop
-        private VirtualFrame getFrame(VirtualFrame frame) {
-            CompilerDirectives.transferToInterpreter();
-            while (!frame.getFrameDescriptor().getSlots().contains(getSlot())) {
-                frame = (VirtualFrame) frame.getArguments()[0];
+        protected VirtualFrame getFrame(VirtualFrame frame) {
+            if (depth < 0) {
+                MJCompilationLog.transferToInterpreterAndInvalidate(this, "first execution of a variable access");
+                depth = MJVariableNode.depth(frame, getSlot());
             }
-
-            return frame;
+            return MJVariableNode.getFrame(frame, depth);
         }
+    }
 
-        @Specialization(guards = {"isBoolVariable(getType())", "!isConstant(getType())"})
-        public Object execute(VirtualFrame frame, boolean value) {
+    public static abstract class MJWriteBoolLocalVariableNode extends MJWriteLocalVariableNode {
+        @Specialization
+        public Object writeBool(VirtualFrame frame, boolean value) {
             getFrame(frame).setBoolean(getSlot(), value);
             return null;
         }
+    }
 
-        @Specialization(guards = {"isCharVariable(getType())", "!isConstant(getType())"})
-        public Object execute(VirtualFrame frame, char value) {
-            getFrame(frame).setByte(getSlot(), (byte) value);
-            return null;
-        }
-
-        @Specialization(guards = {"isDoubleVariable(getType())", "!isConstant(getType())"})
-        public Object executeImplicitDouble(VirtualFrame frame, int value) {
-            getFrame(frame).setDouble(getSlot(), (double) value);
+    public static abstract class MJWriteCharLocalVariableNode extends MJWriteLocalVariableNode {
+        @Specialization
+        public Object writeChar(VirtualFrame frame, char value) {
+            getFrame(frame).setInt(getSlot(), value);
             return null;
         }
+    }
 
-        @Specialization(guards = {"isIntVariable(getType())", "!isConstant(getType())"})
-        public Object execute(VirtualFrame frame, int value) {
+    public static abstract class MJWriteIntLocalVariableNode extends MJWriteLocalVariableNode {
+        @Specialization
+        public Object writeInt(VirtualFrame frame, int value) {
             getFrame(frame).setInt(getSlot(), value);
             return null;
         }
+    }
 
-        @Specialization(guards = {"isDoubleVariable(getType())", "!isConstant(getType())"})
-        public Object execute(VirtualFrame frame, double value) {
+    /** Int values are widened by the {@link MJTypes#castDouble(int) implicit cast}. */
+    public static abstract class MJWriteDoubleLocalVariableNode extends MJWriteLocalVariableNode {
+        @Specialization
+        public Object writeDouble(VirtualFrame frame, double value) {
             getFrame(frame).setDouble(getSlot(), value);
             return null;
         }
+    }
 
-        @Specialization(guards = "!isConstant(getType())")
-        public Object execute(VirtualFrame frame, Object value) {
-            getFrame(frame).setObject(getSlot(), value);
+    /**
+     * Writes an <code>auto</code> variable and speculates on its slot kind: the first write fixes Int,
+     * Double or Boolean, an int slot that sees a double is widened to Double, and any other mismatch
+     * generalizes the slot to Object. A variable inferred as double stores its int values widened, so
+     * its reads never see an int.
+     */
+    @ImportStatic(FrameSlotKind.class)
+    public static abstract class MJWriteAutoLocalVariableNode extends MJWriteLocalVariableNode {
+        @Specialization(guards = {"!isDouble()", "isKindOrIllegal(frame, Int)"})
+        public Object writeInt(VirtualFrame frame, int value) {
+            VirtualFrame target = getFrame(frame);
+            setKind(target.getFrameDescriptor(), FrameSlotKind.Int);
+            target.setInt(getSlot(), value);
             return null;
         }
-    }
-
-    @NodeChild(value = "value", type = MJExpressionNode.class)
-    @NodeField(name = "slot", type = FrameSlot.class)
-    @NodeField(name = "type", type = TypeDescriptor.class)
-    @ImportStatic(MJExpressionNode.class)
-    public static abstract class MJWriteConstantLocalVariableNode extends MJStatementNode {
-        protected abstract FrameSlot getSlot();
-
-        protected abstract TypeDescriptor getType();
-
-        @ExplodeLoop
-        private VirtualFrame getFrame(VirtualFrame frame) {
-            CompilerDirectives.transferToInterpreter();
-            while (!frame.getFrameDescriptor().getSlots().contains(getSlot())) {
-                frame = (VirtualFrame) frame.getArguments()[0];
-            }
 
-            return frame;
+        @Specialization(guards = {"isKindOrIllegal(frame, Double) || isKind(frame, Int)"})
+        public Object writeDouble(VirtualFrame frame, double value) {
+            VirtualFrame target = getFrame(frame);
+            setKind(target.getFrameDescriptor(), FrameSlotKind.Double);
+            target.setDouble(getSlot(), value);
+            return null;
         }
 
-        @Specialization(guards = "isBoolVariable(getType())")
-        public Object execute(VirtualFrame frame, boolean value) {
-            getFrame(frame).setBoolean(getSlot(), value);
+        @Specialization(guards = "isKindOrIllegal(frame, Boolean)")
+        public Object writeBool(VirtualFrame frame, boolean value) {
+            VirtualFrame target = getFrame(frame);
+            setKind(target.getFrameDescriptor(), FrameSlotKind.Boolean);
+            target.setBoolean(getSlot(), value);
             return null;
         }
 
-        @Specialization(guards = "isCharVariable(getType())")
-        public Object execute(VirtualFrame frame, char value) {
-            getFrame(frame).setByte(getSlot(), (byte) value);
+        @Specialization(replaces = {"writeInt", "writeDouble", "writeBool"})
+        public Object writeObject(VirtualFrame frame, Object value) {
+            VirtualFrame target = getFrame(frame);
+            setKind(target.getFrameDescriptor(), FrameSlotKind.Object);
+            target.setObject(getSlot(), value);
             return null;
         }
 
-        @Specialization(guards = "isIntVariable(getType())")
-        public Object execute(VirtualFrame frame, int value) {
-            getFrame(frame).setInt(getSlot(), value);
-            return null;
+        protected boolean isKind(VirtualFrame frame, FrameSlotKind kind) {
+            return getFrame(frame).getFrameDescriptor().getFrameSlotKind(getSlot()) == kind;
         }
 
-        @Specialization(guards = "isDoubleVariable(getType())")
-        public Object execute(VirtualFrame frame, double value) {
-            getFrame(frame).setDouble(getSlot(), value);
-            return null;
+        protected boolean isDouble() {
+            return getType() == DoubleDescriptor.INSTANCE;
         }
 
+        protected boolean isKindOrIllegal(VirtualFrame frame, FrameSlotKind kind) {
+            FrameSlotKind current = getFrame(frame).getFrameDescriptor().getFrameSlotKind(getSlot());
+            return current == kind || current == FrameSlotKind.Illegal;
+        }
+
+        /** Setting a different kind invalidates the descriptor and deoptimizes dependent code. */
+        private void setKind(FrameDescriptor descriptor, FrameSlotKind kind) {
+            if (descriptor.getFrameSlotKind(getSlot()) != kind) {
+                MJCompilationLog.transferToInterpreterAndInvalidate(this, "auto variable changed its slot kind");
+                descriptor.setFrameSlotKind(getSlot(), kind);
+            }
+        }
+    }
+
+    public static abstract class MJWriteObjectLocalVariableNode extends MJWriteLocalVariableNode {
         @Specialization
-        public Object execute(VirtualFrame frame, Object value) {
+        public Object writeObject(VirtualFrame frame, Object value) {
             getFrame(frame).setObject(getSlot(), value);
             return null;
         }
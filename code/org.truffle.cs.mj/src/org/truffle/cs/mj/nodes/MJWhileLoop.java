@@ -1,10 +1,12 @@
 package org.truffle.cs.mj.nodes;
 
 import org.truffle.cs.mj.nodes.MJContinueNode.MJContinueException;
+import org.truffle.cs.mj.tools.MJProfiler;
 
+import com.oracle.truffle.api.CompilerDirectives;
 import com.oracle.truffle.api.frame.VirtualFrame;
+import com.oracle.truffle.api.nodes.LoopNode;
 import com.oracle.truffle.api.nodes.UnexpectedResultException;
-import com.sun.org.apache.bcel.internal.generic.RETURN;
 
 public class MJWhileLoop extends MJStatementNode {
     @Child MJExpressionNode condition;
@@ -17,8 +19,11 @@ public class MJWhileLoop extends MJStatementNode {
 
     @Override
     public Object execute(VirtualFrame frame) {
+        int count = 0;
         try {
             while (condition.executeBool(frame)) {
+                count++;
+                MJProfiler.poll(this);
                 try {
                     loopBody.execute(frame);
                 } catch (MJBreakNode.MJBreakException e) {
@@ -29,8 +34,19 @@ public class MJWhileLoop extends MJStatementNode {
             }
         } catch (UnexpectedResultException e) {
             throw new Error("Condition should be bool");
+        } finally {
+            reportLoopCount(this, count);
         }
         return null;
     }
 
+    /**
+     * Tells the runtime how many iterations a loop ran in the interpreter, so methods that spend their
+     * time in a few long loops get compiled as early as methods that are called often.
+     */
+    static void reportLoopCount(MJStatementNode loop, int count) {
+        if (CompilerDirectives.inInterpreter() && count > 0) {
+            LoopNode.reportLoopCount(loop, count);
+        }
+    }
 }
@@ -0,0 +1,47 @@
+package org.truffle.cs.mj.parser;
+
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+
+import org.truffle.cs.mj.nodes.MJCountedLoop;
+
+import com.oracle.truffle.api.Truffle;
+import com.oracle.truffle.api.frame.FrameSlot;
+
+/**
+ * Parse-time state of an upward counted loop whose body is being parsed: the array variables that
+ * the body indexes with the induction variable. Once the body is parsed, the loop speculates on them
+ * with a fresh assumption if it qualifies, see {@link MJCountedLoop#speculateInBounds}.
+ */
+final class MJBoundsSpeculation {
+    final FrameSlot inductionSlot;
+    private final Set<FrameSlot> arrays = new LinkedHashSet<>();
+    private final Map<FrameSlot, Integer> writeCountsBefore;
+
+    MJBoundsSpeculation(FrameSlot inductionSlot, Map<FrameSlot, Integer> writeCountsBefore) {
+        this.inductionSlot = inductionSlot;
+        this.writeCountsBefore = writeCountsBefore;
+    }
+
+    void addArray(FrameSlot arraySlot) {
+        arrays.add(arraySlot);
+    }
+
+    /**
+     * Speculates on <code>loop</code> if every indexed array is declared outside of it and not
+     * assigned in the body.
+     */
+    void finish(MJCountedLoop loop, MJFunctionContext context) {
+        if (loop == null || arrays.isEmpty()) {
+            return;
+        }
+        for (FrameSlot array : arrays) {
+            Integer before = writeCountsBefore.get(array);
+            if (!context.isVisible(array) || context.getWriteCount(array) != (before == null ? 0 : before)) {
+                return;
+            }
+        }
+        loop.speculateInBounds(arrays.toArray(new FrameSlot[arrays.size()]), Truffle.getRuntime().createAssumption("in bounds"));
+    }
+}
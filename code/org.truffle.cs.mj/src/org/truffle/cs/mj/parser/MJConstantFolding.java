@@ -0,0 +1,66 @@
+package org.truffle.cs.mj.parser;
+
+import org.truffle.cs.mj.nodes.MJExpressionNode;
+import org.truffle.cs.mj.nodes.MJFunction;
+import org.truffle.cs.mj.nodes.MJGlobalNode.MJReadGlobalNode;
+import org.truffle.cs.mj.nodes.MJInvokeNode;
+import org.truffle.cs.mj.nodes.MJReadNode;
+import org.truffle.cs.mj.nodes.MJReadParameterNode;
+import org.truffle.cs.mj.nodes.MJReturnNode;
+import org.truffle.cs.mj.nodes.MJVariableNode.MJReadLocalVariableNode;
+import org.truffle.cs.mj.parser.identifiertable.types.TypeDescriptor;
+import org.truffle.cs.mj.parser.identifiertable.types.primitives.DoubleDescriptor;
+
+import com.oracle.truffle.api.RootCallTarget;
+import com.oracle.truffle.api.Truffle;
+import com.oracle.truffle.api.frame.FrameDescriptor;
+import com.oracle.truffle.api.nodes.Node;
+
+/**
+ * Evaluates the initializer of a <code>final</code> global while parsing. The initializer may use
+ * literals, operators, intrinsics, other <code>final</code> globals and calls of <code>pure</code>
+ * functions defined before it; it runs once in the interpreter and every read of the global becomes
+ * an {@link org.truffle.cs.mj.nodes.MJConstantNode} of the result.
+ */
+final class MJConstantFolding {
+
+    private MJConstantFolding() {
+    }
+
+    /** The value of <code>expression</code> as a <code>type</code>. */
+    static Object evaluate(String name, MJExpressionNode expression, TypeDescriptor type) {
+        String reason = findNonConstant(expression);
+        if (reason != null) {
+            throw new Error("Initializer of constant " + name + " " + reason);
+        }
+        MJFunction initializer = new MJFunction(name, new MJReturnNode(expression), new FrameDescriptor(), type, new TypeDescriptor[0]);
+        RootCallTarget target = Truffle.getRuntime().createCallTarget(initializer);
+        Object value = target.call(new Object[]{null});
+        if (MJTypeChecker.baseType(type) == DoubleDescriptor.INSTANCE && value instanceof Integer) {
+            return (double) (int) value;
+        }
+        return value;
+    }
+
+    private static String findNonConstant(Node node) {
+        if (node instanceof MJReadLocalVariableNode || node instanceof MJReadGlobalNode || node instanceof MJReadParameterNode) {
+            return "reads a variable";
+        } else if (node instanceof MJReadNode) {
+            return "reads input";
+        } else if (node instanceof MJInvokeNode) {
+            MJFunction callee = (MJFunction) ((RootCallTarget) ((MJInvokeNode) node).getCallTarget()).getRootNode();
+            if (!callee.isPure()) {
+                return "calls " + callee.getName() + ", which is not pure";
+            } else if (!callee.hasBody()) {
+                return "calls " + callee.getName() + ", which is not defined yet";
+            }
+        }
+        for (Node child : node.getChildren()) {
+            String reason = findNonConstant(child);
+            if (reason != null) {
+                return reason;
+            }
+        }
+        return null;
+    }
+}
@@ -0,0 +1,87 @@
+package org.truffle.cs.mj.parser;
+
+import org.truffle.cs.mj.nodes.MJBinaryNode;
+import org.truffle.cs.mj.nodes.MJConstantNode;
+import org.truffle.cs.mj.nodes.MJCountedLoop;
+import org.truffle.cs.mj.nodes.MJCountedLoop.Comparison;
+import org.truffle.cs.mj.nodes.MJExpressionNode;
+import org.truffle.cs.mj.nodes.MJStatementNode;
+import org.truffle.cs.mj.nodes.MJVariableNode.MJReadIntLocalVariableNode;
+import org.truffle.cs.mj.nodes.MJVariableNode.MJWriteIntLocalVariableNode;
+import org.truffle.cs.mj.parser.identifiertable.types.primitives.IntDescriptor;
+
+import com.oracle.truffle.api.frame.FrameSlot;
+
+/**
+ * Recognizes <code>for</code> loops that can run as a {@link MJCountedLoop}: the update is
+ * <code>i++</code>, <code>i--</code>, <code>i += c</code> or <code>i -= c</code> of an int local
+ * <code>i</code> and a constant <code>c</code>, and the condition compares <code>i</code> with an
+ * int limit using <code>&lt; &lt;= &gt; &gt;=</code>. The caller checks that the body does not assign
+ * <code>i</code>.
+ */
+final class MJCountedLoopMatcher {
+
+    private MJCountedLoopMatcher() {
+    }
+
+    /** The slot of the induction variable written by <code>update</code>, or <code>null</code>. */
+    static FrameSlot inductionSlot(MJStatementNode update) {
+        return stride(update) == 0 ? null : ((MJWriteIntLocalVariableNode) update).getSlot();
+    }
+
+    /** The constant added by <code>update</code>, or 0 if it is not an induction step. */
+    private static int stride(MJStatementNode update) {
+        if (!(update instanceof MJWriteIntLocalVariableNode)) {
+            return 0;
+        }
+        MJWriteIntLocalVariableNode write = (MJWriteIntLocalVariableNode) update;
+        if (!(write.getValue() instanceof MJBinaryNode.AddNode || write.getValue() instanceof MJBinaryNode.SubtractNode)) {
+            return 0;
+        }
+        MJBinaryNode step = (MJBinaryNode) write.getValue();
+        if (!readsSlot(step.getLhs(), write.getSlot()) || !(step.getRhs() instanceof MJConstantNode.IntNode)) {
+            return 0;
+        }
+        int constant = ((MJConstantNode.IntNode) step.getRhs()).getValue();
+        return step instanceof MJBinaryNode.AddNode ? constant : -constant;
+    }
+
+    private static boolean readsSlot(MJExpressionNode node, FrameSlot slot) {
+        return node instanceof MJReadIntLocalVariableNode && ((MJReadIntLocalVariableNode) node).getSlot() == slot;
+    }
+
+    /**
+     * Whether <code>condition</code> and <code>update</code> count the induction variable up to a
+     * limit, the only direction in which the loop speculates on array bounds.
+     */
+    static boolean isUpward(MJExpressionNode condition, MJStatementNode update) {
+        FrameSlot slot = inductionSlot(update);
+        return slot != null && stride(update) > 0 && (condition instanceof MJBinaryNode.LessNode || condition instanceof MJBinaryNode.LessEqualNode) &&
+                        readsSlot(((MJBinaryNode) condition).getLhs(), slot);
+    }
+
+    /** A counted loop for <code>condition</code> and <code>update</code>, or <code>null</code>. */
+    static MJCountedLoop match(MJExpressionNode condition, MJStatementNode update, MJStatementNode body) {
+        FrameSlot slot = inductionSlot(update);
+        if (slot == null || !(condition instanceof MJBinaryNode)) {
+            return null;
+        }
+        MJBinaryNode compare = (MJBinaryNode) condition;
+        Comparison comparison;
+        if (compare instanceof MJBinaryNode.LessNode) {
+            comparison = Comparison.LESS;
+        } else if (compare instanceof MJBinaryNode.LessEqualNode) {
+            comparison = Comparison.LESS_EQUAL;
+        } else if (compare instanceof MJBinaryNode.GreaterNode) {
+            comparison = Comparison.GREATER;
+        } else if (compare instanceof MJBinaryNode.GreaterEqualNode) {
+            comparison = Comparison.GREATER_EQUAL;
+        } else {
+            return null;
+        }
+        if (!readsSlot(compare.getLhs(), slot) || MJTypeChecker.typeOf(compare.getRhs()) != IntDescriptor.INSTANCE) {
+            return null;
+        }
+        return new MJCountedLoop(slot, comparison, compare.getRhs(), stride(update), body);
+    }
+}
@@ -1,19 +1,24 @@
 package org.truffle.cs.mj.parser;
 
 import java.util.HashMap;
+import java.util.Map;
 
 import org.graalvm.collections.Pair;
 import org.truffle.cs.mj.nodes.MJConstantNodeFactory;
 import org.truffle.cs.mj.nodes.MJExpressionNode;
-import org.truffle.cs.mj.nodes.MJVariableNodeFactory;
+import org.truffle.cs.mj.nodes.MJGlobalCell;
+import org.truffle.cs.mj.nodes.MJGlobals;
+import org.truffle.cs.mj.nodes.MJGlobalNodeFactory;
+import org.truffle.cs.mj.nodes.MJVariableNode;
 import org.truffle.cs.mj.parser.identifiertable.types.TypeDescriptor;
 import org.truffle.cs.mj.nodes.MJStatementNode;
-import org.truffle.cs.mj.nodes.MJVariableNode.MJReadLocalVariableNode;
-import org.truffle.cs.mj.nodes.MJVariableNode.MJWriteLocalVariableNode;
 import org.truffle.cs.mj.nodes.MJReadParameterNode;
 import org.truffle.cs.mj.nodes.MJConstantNodeFactory;
 import org.truffle.cs.mj.parser.identifiertable.TypeTable;
+import org.truffle.cs.mj.parser.identifiertable.types.AutoDescriptor;
+import org.truffle.cs.mj.parser.identifiertable.types.NullDescriptor;
 import org.truffle.cs.mj.parser.identifiertable.types.TypeDescriptor;
+import org.truffle.cs.mj.parser.identifiertable.types.primitives.BoolDescriptor;
 import org.truffle.cs.mj.parser.identifiertable.types.primitives.CharDescriptor;
 import org.truffle.cs.mj.parser.identifiertable.types.primitives.DoubleDescriptor;
 import org.truffle.cs.mj.parser.identifiertable.types.primitives.IntDescriptor;
@@ -26,8 +31,17 @@ public class MJFunctionContext {
     private LexicalScope currentLexicalScope;
     private HashMap<String, Pair<Integer, TypeDescriptor>> parameterNames;
     private HashMap<String, Pair<Object, TypeDescriptor>> globalConstVars;
+    /** Program-level variables; they live in the values of {@link #globals} instead of frames. */
+    private HashMap<String, MJGlobalCell> globalVars = new HashMap<>();
+    private final MJGlobals globals;
+    /** Number of writes parsed so far per local variable, see {@link #getWriteCount(FrameSlot)}. */
+    private HashMap<FrameSlot, Integer> writeCounts = new HashMap<>();
+    /** Types of the <code>auto</code> locals, inferred from the first value assigned to each. */
+    private HashMap<FrameSlot, TypeDescriptor> autoTypes = new HashMap<>();
 
-    public MJFunctionContext() {
+    /** <code>detached</code> if the program runs outside of an engine, see {@link MJGlobals}. */
+    public MJFunctionContext(boolean detached) {
+        this.globals = new MJGlobals(detached);
         this.currentLexicalScope = new LexicalScope(null, "global");
         parameterNames = new HashMap<>();
         globalConstVars = new HashMap<>();
@@ -60,8 +74,9 @@ public class MJFunctionContext {
     public void createParameter(String typeName, String varname) {
         if (isDeclared(varname))
             throw new Error("Double declaration");
-        parameterNames.put(varname, Pair.create(parameterNames.size(),
-                        currentLexicalScope.getTypeDescriptor(typeName)));
+        TypeDescriptor typeDescriptor = currentLexicalScope.getTypeDescriptor(typeName);
+        MJTypeChecker.checkNotAuto("Parameter " + varname, typeDescriptor);
+        parameterNames.put(varname, Pair.create(parameterNames.size(), typeDescriptor));
     }
 
     public void createLocalVar(String typeName, String varname) {
@@ -74,12 +89,26 @@ public class MJFunctionContext {
         TypeDescriptor typeDescriptor = currentLexicalScope.getTypeDescriptor(typeName, isConstant);
         if (typeDescriptor == null)
             throw new Error("Type " + typeName + " was not defined");
-        currentLexicalScope.addVariable(varname, typeDescriptor);
+        if (currentLexicalScope.getParentScope() == null) {
+            MJTypeChecker.checkNotAuto("Global " + varname, typeDescriptor);
+            globalVars.put(varname, globals.add(varname, typeDescriptor));
+        } else
+            currentLexicalScope.addVariable(varname, typeDescriptor);
+    }
+
+    private int temporaries;
+
+    /** Declares a variable the program cannot name, for values the parser introduces itself. */
+    public String createTemporary(TypeDescriptor typeDescriptor) {
+        String name = "$tmp" + temporaries++;
+        currentLexicalScope.addVariable(name, typeDescriptor);
+        return name;
     }
 
     public MJStatementNode createConstLocalVarAndWrite(String typeName, String varname, MJExpressionNode value) {
         createLocalVar(typeName, varname, true);
-        return MJVariableNodeFactory.MJWriteConstantLocalVariableNodeGen.create(value,
+        MJTypeChecker.checkAssignable(currentLexicalScope.getVisibleIdentifierDescriptor(varname), value);
+        return MJVariableNode.createWrite(value,
                         currentLexicalScope.getVisibleFrameSlot(varname),
                         currentLexicalScope.getVisibleIdentifierDescriptor(varname));
     }
@@ -89,6 +118,8 @@ public class MJFunctionContext {
             return readGlobalConstant(varname);
         if (parameterNames.containsKey(varname))
             return readParameter(varname);
+        if (globalVars.containsKey(varname))
+            return MJGlobalNodeFactory.MJReadGlobalNodeGen.create(globalVars.get(varname));
         return readLocalVar(varname);
     }
 
@@ -97,9 +128,25 @@ public class MJFunctionContext {
             throw new Error("Cannot write to constant");
         if (parameterNames.containsKey(varname))
             throw new Error("Cannot write to parameter");
+        if (globalVars.containsKey(varname)) {
+            MJTypeChecker.checkAssignable(globalVars.get(varname).getType(), value);
+            return MJGlobalNodeFactory.MJWriteGlobalNodeGen.create(value, globalVars.get(varname));
+        }
         return writeLocalVar(varname, value);
     }
 
+    public MJGlobals getGlobals() {
+        return globals;
+    }
+
+    public TypeDescriptor[] getParameterTypes() {
+        TypeDescriptor[] parameterTypes = new TypeDescriptor[parameterNames.size()];
+        for (Pair<Integer, TypeDescriptor> p : parameterNames.values()) {
+            parameterTypes[p.getLeft()] = p.getRight();
+        }
+        return parameterTypes;
+    }
+
     public FrameDescriptor getContextFrameDescriptor() {
         return currentLexicalScope.getFrameDescriptor();
     }
@@ -113,6 +160,8 @@ public class MJFunctionContext {
             System.out.println(globalConstVars);
             return true;
         }
+        if (globalVars.containsKey(varname))
+            return true;
         if (parameterNames.containsKey(varname)) {
             System.out.println(parameterNames);
             System.out.println(varname);
@@ -128,8 +177,14 @@ public class MJFunctionContext {
         if (frameSlot == null) {
             throw new Error("Variable was not declared");
         }
-        return MJVariableNodeFactory.MJReadLocalVariableNodeGen.create(frameSlot,
-                        currentLexicalScope.getVisibleIdentifierDescriptor(varname));
+        TypeDescriptor typeDescriptor = currentLexicalScope.getVisibleIdentifierDescriptor(varname);
+        if (typeDescriptor instanceof AutoDescriptor) {
+            TypeDescriptor inferred = autoTypes.get(frameSlot);
+            if (inferred == null)
+                throw new Error("Variable " + varname + " is read before it is assigned");
+            return MJVariableNode.createAutoRead(frameSlot, inferred);
+        }
+        return MJVariableNode.createRead(frameSlot, typeDescriptor);
     }
 
     private MJExpressionNode readParameter(String varname) {
@@ -145,6 +200,10 @@ public class MJFunctionContext {
         Pair<Object, TypeDescriptor> p = globalConstVars.get(varname);
         if (p.getRight() instanceof IntDescriptor)
             return MJConstantNodeFactory.IntNodeGen.create((int) p.getLeft());
+        else if (p.getRight() instanceof DoubleDescriptor)
+            return MJConstantNodeFactory.DoubleNodeGen.create((double) p.getLeft());
+        else if (p.getRight() instanceof BoolDescriptor)
+            return MJConstantNodeFactory.BoolNodeGen.create((boolean) p.getLeft());
         else
             return MJConstantNodeFactory.CharNodeGen.create((char) p.getLeft());
     }
@@ -157,7 +216,45 @@ public class MJFunctionContext {
         TypeDescriptor typeDescriptor = currentLexicalScope.getVisibleIdentifierDescriptor(varname);
         if (typeDescriptor instanceof ConstantTypeDescriptor)
             throw new Error("Cannot write to constant");
-        return MJVariableNodeFactory.MJWriteLocalVariableNodeGen.create(value, frameSlot, typeDescriptor);
+        writeCounts.put(frameSlot, getWriteCount(frameSlot) + 1);
+        if (typeDescriptor instanceof AutoDescriptor)
+            return writeAutoLocalVar(varname, frameSlot, value);
+        MJTypeChecker.checkAssignable(typeDescriptor, value);
+        return MJVariableNode.createWrite(value, frameSlot, typeDescriptor);
+    }
+
+    /** The first write of an <code>auto</code> local fixes its type, later ones are checked against it. */
+    private MJStatementNode writeAutoLocalVar(String varname, FrameSlot frameSlot, MJExpressionNode value) {
+        TypeDescriptor inferred = autoTypes.get(frameSlot);
+        if (inferred == null) {
+            inferred = MJTypeChecker.typeOf(value);
+            if (inferred == NullDescriptor.INSTANCE)
+                throw new Error("Cannot infer the type of " + varname + " from null");
+            autoTypes.put(frameSlot, inferred);
+        } else {
+            MJTypeChecker.checkAssignable(inferred, value);
+        }
+        return MJVariableNode.createAutoWrite(value, frameSlot, inferred);
+    }
+
+    /** Whether <code>frameSlot</code> belongs to the current scope or one enclosing it. */
+    public boolean isVisible(FrameSlot frameSlot) {
+        for (LexicalScope scope = currentLexicalScope; scope != null; scope = scope.getParentScope()) {
+            if (scope.getFrameDescriptor().getSlots().contains(frameSlot)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /** Lets the parser find out whether a statement assigns a variable, by comparing counts. */
+    public Map<FrameSlot, Integer> getWriteCounts() {
+        return new HashMap<>(writeCounts);
+    }
+
+    public int getWriteCount(FrameSlot frameSlot) {
+        Integer count = writeCounts.get(frameSlot);
+        return count == null ? 0 : count;
     }
 
 }
@@ -0,0 +1,80 @@
+package org.truffle.cs.mj.parser;
+
+import org.truffle.cs.mj.nodes.MJArrayNode.MJWriteArrayElementNode;
+import org.truffle.cs.mj.nodes.MJArrayNode.MJWriteStructFieldNode;
+import org.truffle.cs.mj.nodes.MJFieldNode.MJWriteFieldNode;
+import org.truffle.cs.mj.nodes.MJFunction;
+import org.truffle.cs.mj.nodes.MJGlobalNode.MJReadGlobalNode;
+import org.truffle.cs.mj.nodes.MJGlobalNode.MJWriteGlobalNode;
+import org.truffle.cs.mj.nodes.MJInvokeNode;
+import org.truffle.cs.mj.nodes.MJPrintNode;
+import org.truffle.cs.mj.nodes.MJReadNode;
+import org.truffle.cs.mj.nodes.MJTailCallNode;
+
+import com.oracle.truffle.api.CallTarget;
+import com.oracle.truffle.api.RootCallTarget;
+import com.oracle.truffle.api.nodes.Node;
+
+/**
+ * Checks the body of a <code>pure</code> function: its result may only depend on its arguments, and
+ * calling it may not have any visible effect, so a call can be answered from the
+ * {@link org.truffle.cs.mj.nodes.MJMemoTable}. That rules out <code>print</code> and
+ * <code>read</code>, reading or writing global variables, writing arrays or fields, and calling
+ * functions that are not pure themselves.
+ */
+final class MJPurityAnalysis {
+
+    private final MJFunction function;
+
+    private MJPurityAnalysis(MJFunction function) {
+        this.function = function;
+    }
+
+    /** Throws if the body of <code>function</code> is not pure. */
+    static void check(MJFunction function, Node body) {
+        String sideEffect = new MJPurityAnalysis(function).findSideEffect(body);
+        if (sideEffect != null) {
+            throw new Error("Pure function " + function.getName() + " " + sideEffect);
+        }
+    }
+
+    private String findSideEffect(Node node) {
+        if (node instanceof MJPrintNode) {
+            return "prints";
+        } else if (node instanceof MJReadNode) {
+            return "reads input";
+        } else if (node instanceof MJWriteArrayElementNode || node instanceof MJWriteStructFieldNode) {
+            return "writes an array";
+        } else if (node instanceof MJWriteFieldNode) {
+            return "writes a field";
+        } else if (node instanceof MJWriteGlobalNode) {
+            return "writes global variable " + ((MJWriteGlobalNode) node).getCell().getName();
+        } else if (node instanceof MJReadGlobalNode) {
+            return "reads global variable " + ((MJReadGlobalNode) node).getCell().getName();
+        } else if (node instanceof MJInvokeNode && !isPure(((MJInvokeNode) node).getCallTarget())) {
+            return "calls " + callee(((MJInvokeNode) node).getCallTarget()).getName() + ", which is not pure";
+        } else if (node instanceof MJTailCallNode && !isPure(((MJTailCallNode) node).getTarget())) {
+            return "calls " + callee(((MJTailCallNode) node).getTarget()).getName() + ", which is not pure";
+        }
+        for (Node child : node.getChildren()) {
+            String sideEffect = findSideEffect(child);
+            if (sideEffect != null) {
+                return sideEffect;
+            }
+        }
+        return null;
+    }
+
+    /** Whether a call of <code>target</code> is pure; <code>null</code> is a tail call of the function itself. */
+    private boolean isPure(CallTarget target) {
+        if (target == null) {
+            return true;
+        }
+        MJFunction callee = callee(target);
+        return callee == function || callee.isPure();
+    }
+
+    private static MJFunction callee(CallTarget target) {
+        return (MJFunction) ((RootCallTarget) target).getRootNode();
+    }
+}
@@ -0,0 +1,202 @@
+package org.truffle.cs.mj.parser;
+
+import java.util.List;
+
+import org.truffle.cs.mj.nodes.MJExpressionNode;
+import org.truffle.cs.mj.parser.identifiertable.types.ArrayTypeDescriptor;
+import org.truffle.cs.mj.parser.identifiertable.types.AutoDescriptor;
+import org.truffle.cs.mj.parser.identifiertable.types.ClassTypeDescriptor;
+import org.truffle.cs.mj.parser.identifiertable.types.ClassTypeDescriptor.FieldDescriptor;
+import org.truffle.cs.mj.parser.identifiertable.types.NullDescriptor;
+import org.truffle.cs.mj.parser.identifiertable.types.TypeDescriptor;
+import org.truffle.cs.mj.parser.identifiertable.types.primitives.BoolDescriptor;
+import org.truffle.cs.mj.parser.identifiertable.types.primitives.CharDescriptor;
+import org.truffle.cs.mj.parser.identifiertable.types.primitives.DoubleDescriptor;
+import org.truffle.cs.mj.parser.identifiertable.types.primitives.IntDescriptor;
+
+/**
+ * Static type rules of MicroJava++. The parser runs every expression through these checks while it
+ * builds the AST, so an ill-typed program is rejected before anything executes and every node that
+ * reaches the interpreter only ever sees the types reported by its children's
+ * {@link MJExpressionNode#getType()}.
+ * <p>
+ * <code>auto</code> is not a type of its own: the parser infers the type of an <code>auto</code>
+ * local from its first assignment, see {@link MJFunctionContext}, and checks it like a declared one.
+ */
+public final class MJTypeChecker {
+
+    private MJTypeChecker() {
+    }
+
+    /** Strips constness, e.g. <code>const_int</code> and <code>int</code> are the same type. */
+    public static TypeDescriptor baseType(TypeDescriptor type) {
+        if (type instanceof BoolDescriptor) {
+            return BoolDescriptor.INSTANCE;
+        } else if (type instanceof CharDescriptor) {
+            return CharDescriptor.INSTANCE;
+        } else if (type instanceof IntDescriptor) {
+            return IntDescriptor.INSTANCE;
+        } else if (type instanceof DoubleDescriptor) {
+            return DoubleDescriptor.INSTANCE;
+        }
+        return type;
+    }
+
+    public static TypeDescriptor typeOf(MJExpressionNode expression) {
+        if (expression == null) {
+            throw new Error("Expression is not supported");
+        }
+        TypeDescriptor type = expression.getType();
+        if (type == null) {
+            throw new Error("Expression has no value");
+        }
+        return baseType(type);
+    }
+
+    public static boolean isNumeric(TypeDescriptor type) {
+        return type == IntDescriptor.INSTANCE || type == DoubleDescriptor.INSTANCE;
+    }
+
+    public static boolean isPrimitive(TypeDescriptor type) {
+        TypeDescriptor base = baseType(type);
+        return base == BoolDescriptor.INSTANCE || base == CharDescriptor.INSTANCE || base == IntDescriptor.INSTANCE || base == DoubleDescriptor.INSTANCE;
+    }
+
+    /** Parameters, fields, globals and return types need a declared type. */
+    public static void checkNotAuto(String what, TypeDescriptor type) {
+        if (type == AutoDescriptor.INSTANCE) {
+            throw new Error(what + " cannot be auto");
+        }
+    }
+
+    /** Operands of <code>+ - * / %</code>, unary minus and the relational operators. */
+    public static void checkNumeric(String operator, MJExpressionNode lhs, MJExpressionNode rhs) {
+        TypeDescriptor lhsType = typeOf(lhs);
+        TypeDescriptor rhsType = typeOf(rhs);
+        if (!isNumeric(lhsType) || !isNumeric(rhsType)) {
+            throw new Error("Operator " + operator + " is not defined for " + name(lhsType) + " and " + name(rhsType));
+        }
+    }
+
+    /** Class instances, arrays and <code>null</code>. */
+    public static boolean isReference(TypeDescriptor type) {
+        return type instanceof ClassTypeDescriptor || type instanceof ArrayTypeDescriptor || type == NullDescriptor.INSTANCE;
+    }
+
+    /** Operands of the bitwise and shift operators. */
+    public static void checkInteger(String operator, MJExpressionNode lhs, MJExpressionNode rhs) {
+        TypeDescriptor lhsType = typeOf(lhs);
+        TypeDescriptor rhsType = typeOf(rhs);
+        if (lhsType != IntDescriptor.INSTANCE || rhsType != IntDescriptor.INSTANCE) {
+            throw new Error("Operator " + operator + " is not defined for " + name(lhsType) + " and " + name(rhsType));
+        }
+    }
+
+    /** Operands of <code>== !=</code>: equal types, two numeric types, or an object and <code>null</code>. */
+    public static void checkEquality(String operator, MJExpressionNode lhs, MJExpressionNode rhs) {
+        TypeDescriptor lhsType = typeOf(lhs);
+        TypeDescriptor rhsType = typeOf(rhs);
+        if (lhsType != rhsType && !(isNumeric(lhsType) && isNumeric(rhsType)) && !(isNullable(lhsType, rhsType) || isNullable(rhsType, lhsType))) {
+            throw new Error("Operator " + operator + " is not defined for " + name(lhsType) + " and " + name(rhsType));
+        }
+    }
+
+    /** Operands of <code>&& ||</code> and conditions of <code>if</code>/<code>while</code>. */
+    public static void checkBool(String what, MJExpressionNode expression) {
+        TypeDescriptor type = typeOf(expression);
+        if (type != BoolDescriptor.INSTANCE) {
+            throw new Error(what + " should be bool, but is " + name(type));
+        }
+    }
+
+    /** Assignments, initializations, arguments and return values; int widens to double. */
+    public static void checkAssignable(TypeDescriptor target, MJExpressionNode value) {
+        TypeDescriptor targetType = baseType(target);
+        TypeDescriptor valueType = typeOf(value);
+        if (targetType == valueType) {
+            return;
+        }
+        if (targetType == DoubleDescriptor.INSTANCE && valueType == IntDescriptor.INSTANCE) {
+            return;
+        }
+        if (isNullable(targetType, valueType)) {
+            return;
+        }
+        throw new Error("Cannot assign " + name(valueType) + " to " + name(targetType));
+    }
+
+    /** Type of the field <code>name</code> of <code>receiver</code>. */
+    public static TypeDescriptor fieldType(MJExpressionNode receiver, String name) {
+        return fieldType(typeOf(receiver), name);
+    }
+
+    public static TypeDescriptor fieldType(TypeDescriptor type, String name) {
+        if (!(type instanceof ClassTypeDescriptor)) {
+            throw new Error("Cannot access field " + name + " of " + name(type));
+        }
+        FieldDescriptor field = ((ClassTypeDescriptor) type).getField(name);
+        if (field == null) {
+            throw new Error("Class " + name(type) + " has no field " + name);
+        }
+        return field.getType();
+    }
+
+    private static boolean isNullable(TypeDescriptor target, TypeDescriptor value) {
+        return isReference(target) && value == NullDescriptor.INSTANCE;
+    }
+
+    /** Array lengths and indices. */
+    public static void checkIndex(String what, MJExpressionNode expression) {
+        TypeDescriptor type = typeOf(expression);
+        if (type != IntDescriptor.INSTANCE) {
+            throw new Error(what + " should be int, but is " + name(type));
+        }
+    }
+
+    /** Type of <code>array[index]</code>. */
+    public static TypeDescriptor elementType(MJExpressionNode array, MJExpressionNode index) {
+        TypeDescriptor type = typeOf(array);
+        checkIndex("Array index", index);
+        if (!(type instanceof ArrayTypeDescriptor)) {
+            throw new Error("Cannot index " + name(type));
+        }
+        return ((ArrayTypeDescriptor) type).getElementType();
+    }
+
+    public static void checkArguments(String function, TypeDescriptor[] parameterTypes, List<MJExpressionNode> arguments) {
+        if (parameterTypes.length != arguments.size()) {
+            throw new Error("Function " + function + " expects " + parameterTypes.length + " arguments, but got " + arguments.size());
+        }
+        for (int i = 0; i < parameterTypes.length; i++) {
+            checkAssignable(parameterTypes[i], arguments.get(i));
+        }
+    }
+
+    public static void checkReturn(TypeDescriptor returnType, MJExpressionNode value) {
+        if (returnType == null) {
+            if (value != null) {
+                throw new Error("Void function cannot return a value");
+            }
+        } else {
+            if (value == null) {
+                throw new Error("Missing return value");
+            }
+            checkAssignable(returnType, value);
+        }
+    }
+
+    private static String name(TypeDescriptor type) {
+        if (type == BoolDescriptor.INSTANCE) {
+            return "bool";
+        } else if (type == CharDescriptor.INSTANCE) {
+            return "char";
+        } else if (type == IntDescriptor.INSTANCE) {
+            return "int";
+        } else if (type == DoubleDescriptor.INSTANCE) {
+            return "double";
+        } else if (type instanceof ArrayTypeDescriptor) {
+            return name(((ArrayTypeDescriptor) type).getElementType()) + "[]";
+        }
+        return String.valueOf(type);
+    }
+}
@@ -25,6 +25,9 @@ public final class RecursiveDescendScanner {
     /** Current column in input stream. */
     protected int col;
 
+    /** Number of characters read so far, so the offset of ch is pos - 1. */
+    protected int pos;
+
     // TODO Exercise 2: implementation of scanner
 
     /** Mapping from keyword names to appropriate token codes. */
@@ -41,14 +44,20 @@ public final class RecursiveDescendScanner {
         keywords.put(Kind.break_.label(), Kind.break_);
         keywords.put(Kind.continue_.label(), Kind.continue_);
         keywords.put(Kind.class_.label(), Kind.class_);
+        keywords.put(Kind.struct.label(), Kind.struct);
         keywords.put(Kind.else_.label(), Kind.else_);
         keywords.put(Kind.final_.label(), Kind.final_);
+        keywords.put(Kind.for_.label(), Kind.for_);
+        keywords.put(Kind.foreach.label(), Kind.foreach);
         keywords.put(Kind.if_.label(), Kind.if_);
         keywords.put(Kind.new_.label(), Kind.new_);
+        keywords.put(Kind.null_.label(), Kind.null_);
         keywords.put(Kind.print.label(), Kind.print);
+        keywords.put(Kind.pure.label(), Kind.pure);
         keywords.put(Kind.program.label(), Kind.program);
         keywords.put(Kind.read.label(), Kind.read);
         keywords.put(Kind.return_.label(), Kind.return_);
+        keywords.put(Kind.tail.label(), Kind.tail);
         keywords.put(Kind.void_.label(), Kind.void_);
         keywords.put(Kind.while_.label(), Kind.while_);
         keywords.put(Kind.abs.label(), Kind.abs);
@@ -61,6 +70,9 @@ public final class RecursiveDescendScanner {
     private void nextCh() {
         try {
             ch = (char) in.read();
+            if (ch != EOF) {
+                pos++;
+            }
             switch (ch) {
                 // No special handling for CR necessary. It is skipped in the
                 // next() method because it is whitespace.
@@ -89,6 +101,7 @@ public final class RecursiveDescendScanner {
         }
         // ----- start of new token
         Token t = new Token(Kind.none, line, col);
+        t.pos = ch == EOF ? pos : pos - 1;
 
         switch (ch) {
             // ----- ident or keyword
@@ -172,6 +185,10 @@ public final class RecursiveDescendScanner {
                 t.kind = Kind.comma;
                 nextCh();
                 break;
+            case ':':
+                t.kind = Kind.colon;
+                nextCh();
+                break;
             case '.':
                 t.kind = Kind.period;
                 nextCh();
@@ -281,6 +298,22 @@ public final class RecursiveDescendScanner {
                 if (ch == '=') {
                     t.kind = Kind.geq;
                     nextCh();
+                } else if (ch == '>') {
+                    nextCh();
+                    if (ch == '>') {
+                        nextCh();
+                        if (ch == '=') {
+                            t.kind = Kind.ushras;
+                            nextCh();
+                        } else {
+                            t.kind = Kind.ushr;
+                        }
+                    } else if (ch == '=') {
+                        t.kind = Kind.shras;
+                        nextCh();
+                    } else {
+                        t.kind = Kind.shr;
+                    }
                 } else {
                     t.kind = Kind.gtr;
                 }
@@ -290,6 +323,14 @@ public final class RecursiveDescendScanner {
                 if (ch == '=') {
                     t.kind = Kind.leq;
                     nextCh();
+                } else if (ch == '<') {
+                    nextCh();
+                    if (ch == '=') {
+                        t.kind = Kind.shlas;
+                        nextCh();
+                    } else {
+                        t.kind = Kind.shl;
+                    }
                 } else {
                     t.kind = Kind.lss;
                 }
@@ -299,8 +340,11 @@ public final class RecursiveDescendScanner {
                 if (ch == '&') {
                     t.kind = Kind.and;
                     nextCh();
+                } else if (ch == '=') {
+                    t.kind = Kind.bitandas;
+                    nextCh();
                 } else {
-                    throw new Error("Invalid char &");
+                    t.kind = Kind.bitand;
                 }
                 break;
             case '|':
@@ -308,15 +352,32 @@ public final class RecursiveDescendScanner {
                 if (ch == '|') {
                     t.kind = Kind.or;
                     nextCh();
+                } else if (ch == '=') {
+                    t.kind = Kind.bitoras;
+                    nextCh();
                 } else {
-                    throw new Error("Invalid char |");
+                    t.kind = Kind.bitor;
                 }
                 break;
+            case '^':
+                nextCh();
+                if (ch == '=') {
+                    t.kind = Kind.xoras;
+                    nextCh();
+                } else {
+                    t.kind = Kind.xor;
+                }
+                break;
+            case '~':
+                t.kind = Kind.tilde;
+                nextCh();
+                break;
             default:
                 throw new Error("Invalid char " + ch);
                 // nextCh();
                 // break;
         } // end switch
+        t.end = ch == EOF ? pos : pos - 1;
         return t;
     }
 
@@ -1,27 +1,36 @@
 package org.truffle.cs.mj.parser;
 
+import static org.truffle.cs.mj.parser.Token.Kind.abs;
 import static org.truffle.cs.mj.parser.Token.Kind.and;
 import static org.truffle.cs.mj.parser.Token.Kind.assign;
+import static org.truffle.cs.mj.parser.Token.Kind.bitand;
+import static org.truffle.cs.mj.parser.Token.Kind.bitor;
 import static org.truffle.cs.mj.parser.Token.Kind.break_;
 import static org.truffle.cs.mj.parser.Token.Kind.charConst;
 import static org.truffle.cs.mj.parser.Token.Kind.class_;
+import static org.truffle.cs.mj.parser.Token.Kind.colon;
 import static org.truffle.cs.mj.parser.Token.Kind.comma;
 import static org.truffle.cs.mj.parser.Token.Kind.continue_;
 import static org.truffle.cs.mj.parser.Token.Kind.else_;
 import static org.truffle.cs.mj.parser.Token.Kind.eof;
 import static org.truffle.cs.mj.parser.Token.Kind.final_;
+import static org.truffle.cs.mj.parser.Token.Kind.for_;
+import static org.truffle.cs.mj.parser.Token.Kind.foreach;
 import static org.truffle.cs.mj.parser.Token.Kind.ident;
 import static org.truffle.cs.mj.parser.Token.Kind.if_;
 import static org.truffle.cs.mj.parser.Token.Kind.lbrace;
 import static org.truffle.cs.mj.parser.Token.Kind.lbrack;
 import static org.truffle.cs.mj.parser.Token.Kind.lpar;
+import static org.truffle.cs.mj.parser.Token.Kind.lss;
 import static org.truffle.cs.mj.parser.Token.Kind.minus;
 import static org.truffle.cs.mj.parser.Token.Kind.new_;
+import static org.truffle.cs.mj.parser.Token.Kind.null_;
 import static org.truffle.cs.mj.parser.Token.Kind.number;
 import static org.truffle.cs.mj.parser.Token.Kind.or;
 import static org.truffle.cs.mj.parser.Token.Kind.period;
 import static org.truffle.cs.mj.parser.Token.Kind.plus;
 import static org.truffle.cs.mj.parser.Token.Kind.print;
+import static org.truffle.cs.mj.parser.Token.Kind.pure;
 import static org.truffle.cs.mj.parser.Token.Kind.program;
 import static org.truffle.cs.mj.parser.Token.Kind.rbrace;
 import static org.truffle.cs.mj.parser.Token.Kind.rbrack;
@@ -30,10 +39,17 @@ import static org.truffle.cs.mj.parser.Token.Kind.rem;
 import static org.truffle.cs.mj.parser.Token.Kind.return_;
 import static org.truffle.cs.mj.parser.Token.Kind.rpar;
 import static org.truffle.cs.mj.parser.Token.Kind.semicolon;
+import static org.truffle.cs.mj.parser.Token.Kind.shl;
+import static org.truffle.cs.mj.parser.Token.Kind.shr;
 import static org.truffle.cs.mj.parser.Token.Kind.slash;
+import static org.truffle.cs.mj.parser.Token.Kind.struct;
+import static org.truffle.cs.mj.parser.Token.Kind.tail;
+import static org.truffle.cs.mj.parser.Token.Kind.tilde;
 import static org.truffle.cs.mj.parser.Token.Kind.times;
+import static org.truffle.cs.mj.parser.Token.Kind.ushr;
 import static org.truffle.cs.mj.parser.Token.Kind.void_;
 import static org.truffle.cs.mj.parser.Token.Kind.while_;
+import static org.truffle.cs.mj.parser.Token.Kind.xor;
 
 import java.util.ArrayList;
 import java.util.Arrays;
@@ -43,6 +59,7 @@ import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
+import org.truffle.cs.mj.nodes.MJArrayNodeFactory;
 import org.truffle.cs.mj.nodes.MJBinaryNode;
 import org.truffle.cs.mj.nodes.MJBlock;
 import org.truffle.cs.mj.nodes.MJBreakNode;
@@ -50,22 +67,43 @@ import org.truffle.cs.mj.nodes.MJConditionalNode;
 import org.truffle.cs.mj.nodes.MJConstantNode;
 import org.truffle.cs.mj.nodes.MJConstantNodeFactory;
 import org.truffle.cs.mj.nodes.MJContinueNode;
+import org.truffle.cs.mj.nodes.MJCountedLoop;
 import org.truffle.cs.mj.nodes.MJExpressionNode;
 import org.truffle.cs.mj.nodes.MJExpressionStatement;
+import org.truffle.cs.mj.nodes.MJFieldNode;
+import org.truffle.cs.mj.nodes.MJFieldNode.MJNewObjectNode;
+import org.truffle.cs.mj.nodes.MJForLoop;
 import org.truffle.cs.mj.nodes.MJFunction;
+import org.truffle.cs.mj.nodes.MJGlobals;
 import org.truffle.cs.mj.nodes.MJInvokeNode;
+import org.truffle.cs.mj.nodes.MJMathNodeFactory;
 import org.truffle.cs.mj.nodes.MJPrintNodeGen;
 import org.truffle.cs.mj.nodes.MJReadNode;
 import org.truffle.cs.mj.nodes.MJReadParameterNode;
 import org.truffle.cs.mj.nodes.MJReturnNode;
+import org.truffle.cs.mj.nodes.MJTailCallNode;
 import org.truffle.cs.mj.nodes.MJStatementNode;
+import org.truffle.cs.mj.nodes.MJUnaryNodeFactory;
+import org.truffle.cs.mj.nodes.MJVariableNode.MJReadIntLocalVariableNode;
+import org.truffle.cs.mj.nodes.MJVariableNode.MJReadObjectLocalVariableNode;
 import org.truffle.cs.mj.parser.identifiertable.TypeTable;
+import org.truffle.cs.mj.parser.identifiertable.types.ArrayTypeDescriptor;
+import org.truffle.cs.mj.parser.identifiertable.types.ClassTypeDescriptor;
+import org.truffle.cs.mj.parser.identifiertable.types.ClassTypeDescriptor.FieldDescriptor;
+import org.truffle.cs.mj.parser.identifiertable.types.TypeDescriptor;
+import org.truffle.cs.mj.parser.identifiertable.types.primitives.DoubleDescriptor;
+import org.truffle.cs.mj.parser.identifiertable.types.primitives.IntDescriptor;
 import org.truffle.cs.mj.nodes.MJWhileLoop;
 import org.truffle.cs.mj.nodes.MJBinaryNodeFactory;
 
 import com.oracle.truffle.api.CallTarget;
 import com.oracle.truffle.api.Truffle;
+import com.oracle.truffle.api.TruffleLanguage;
+import com.oracle.truffle.api.frame.FrameDescriptor;
+import com.oracle.truffle.api.frame.FrameSlot;
 import com.oracle.truffle.api.frame.VirtualFrame;
+import com.oracle.truffle.api.source.Source;
+import com.oracle.truffle.api.source.SourceSection;
 
 public final class RecursiveDescentParser {
     /** Maximum number of global variables per program */
@@ -89,14 +127,28 @@ public final class RecursiveDescentParser {
     /** According scanner */
     public final RecursiveDescendScanner scanner;
 
+    /** The program text, or <code>null</code> if nodes get no source sections. */
+    private final Source source;
+
+    /** The language running the program, or <code>null</code> when it runs outside of an engine. */
+    private final TruffleLanguage<?> language;
+
     public RecursiveDescentParser(RecursiveDescendScanner scanner) {
+        this(scanner, null, null);
+    }
+
+    /** A parser that attaches <code>source</code> sections to the nodes, for tools to use. */
+    public RecursiveDescentParser(RecursiveDescendScanner scanner, Source source, TruffleLanguage<?> language) {
         this.scanner = scanner;
+        this.source = source;
+        this.language = language;
+        this.currentContext = new MJFunctionContext(language == null);
         // Avoid crash when 1st symbol has scanner error.
         la = new Token(Token.Kind.none, 1, 1);
-        firstExpr = EnumSet.of(ident, number, charConst, minus, lpar, new_);
+        firstExpr = EnumSet.of(ident, number, charConst, minus, lpar, new_, abs, tilde, null_);
         firstStat = EnumSet.of(ident, semicolon, lbrace, break_, continue_, if_,
-                        print, read, return_, while_, final_);
-        firstMethodDecl = EnumSet.of(void_, ident);
+                        print, read, return_, while_, for_, foreach, final_);
+        firstMethodDecl = EnumSet.of(tail, pure, void_, ident);
     }
 
     /** Sets of starting tokens for some productions. */
@@ -110,6 +162,21 @@ public final class RecursiveDescentParser {
         return t.kind;
     }
 
+    /** The source from the start of <code>start</code> to the end of the last recognized token. */
+    private SourceSection section(Token start) {
+        if (source == null) {
+            return null;
+        }
+        return source.createSection(start.pos, Math.max(t.end - start.pos, 0));
+    }
+
+    private MJExpressionNode withSection(MJExpressionNode node, Token start) {
+        if (node != null && node.getSourceSection() == null) {
+            node.setSourceSection(section(start));
+        }
+        return node;
+    }
+
     /** Verifies symbol and reads ahead. */
     private void check(Token.Kind expected) {
         if (sym == expected) {
@@ -123,7 +190,7 @@ public final class RecursiveDescentParser {
      * Program = <br>
      * "program" ident <br>
      * { ConstDecl | VarDecl | ClassDecl } <br>
-     * "{" { MethodDecl } "}" .
+     * "{" { MethodDecl | ConstExprDecl } "}" .
      */
     private void Program() {
         check(program);
@@ -133,7 +200,7 @@ public final class RecursiveDescentParser {
                 ConstExprDecl();
             } else if (sym == ident) {
                 VarDecl();
-            } else if (sym == class_) {
+            } else if (sym == class_ || sym == struct) {
                 ClassDecl();
             } else {
                 break;
@@ -143,29 +210,37 @@ public final class RecursiveDescentParser {
         for (;;) {
             if (sym == rbrace || sym == eof) {
                 break;
+            } else if (sym == final_) {
+                // after the pure functions it calls
+                ConstExprDecl();
             } else if (firstMethodDecl.contains(sym)) {
                 MethodDecl();
             }
         }
         check(rbrace);
+        for (MJFunction f : functions) {
+            if (!f.hasBody())
+                throw new Error("Function " + f.getName() + " is declared but not defined");
+        }
     }
 
-    /** ConstExprDecl = "final" Type ident "=" ( number | charConst ) ";" . */
+    /**
+     * ConstExprDecl = "final" Type ident "=" Expr ";" .
+     * <p>
+     * The initializer is evaluated right away, see {@link MJConstantFolding}.
+     */
     private void ConstExprDecl() {
         check(final_);
         String typeName = Type();
         check(ident);
         String varname = t.str;
         check(assign);
-        if (sym == number) {
-            scan();
-            currentContext.createGlobalConstant(typeName, varname, Integer.valueOf(t.val));
-        } else if (sym == charConst) {
-            scan();
-            currentContext.createGlobalConstant(typeName, varname, Character.valueOf((char) t.val));
-        } else {
-            throw new Error("Constexpr declaration should be of type Int of Char");
-        }
+        MJExpressionNode value = Expr();
+        TypeDescriptor type = currentContext.getTypeDescriptor(typeName);
+        if (!MJTypeChecker.isPrimitive(type))
+            throw new Error("Constant " + varname + " must be int, char, double or bool");
+        MJTypeChecker.checkAssignable(type, value);
+        currentContext.createGlobalConstant(typeName, varname, MJConstantFolding.evaluate(varname, value, type));
         check(semicolon);
     }
 
@@ -194,18 +269,48 @@ public final class RecursiveDescentParser {
         check(semicolon);
     }
 
-    /** ClassDecl = "class" ident "{" { VarDecl } "}" . */
+    /**
+     * ClassDecl = ( "class" | "struct" ) ident "{" { VarDecl } "}" . <br>
+     * Arrays of a struct are stored flattened, one primitive array per field.
+     */
     private void ClassDecl() {
-        check(class_);
+        boolean isStruct = sym == struct;
+        scan();
         check(ident);
+        // registered before the fields, so a class can have fields of its own type
+        ClassTypeDescriptor classType = new ClassTypeDescriptor(t.str, isStruct);
+        TypeTable.getInstance().addClassType(classType);
         check(lbrace);
         while (sym == ident) {
-            VarDecl();
+            FieldDecl(classType);
         }
         check(rbrace);
     }
 
-    MJFunctionContext currentContext = new MJFunctionContext();
+    /** VarDecl = Type ident { "," ident } ";" . (inside ClassDecl) */
+    private void FieldDecl(ClassTypeDescriptor classType) {
+        String typeName = Type();
+        TypeDescriptor type = TypeTable.getInstance().getTypeDescriptor(typeName);
+        if (type == null)
+            throw new Error("Unknown type " + typeName);
+        MJTypeChecker.checkNotAuto("Field", type);
+        check(ident);
+        classType.addField(t.str, type);
+        while (sym == comma) {
+            scan();
+            check(ident);
+            classType.addField(t.str, type);
+        }
+        check(semicolon);
+    }
+
+    MJFunctionContext currentContext;
+    /** Counted loops whose body is being parsed, innermost last. */
+    private final List<MJBoundsSpeculation> boundsSpeculations = new ArrayList<>();
+    /** Declared return type of the function being parsed, <code>null</code> for void. */
+    TypeDescriptor currentReturnType;
+    MJFunction currentFunction;
+    boolean currentTailCalls;
     public List<MJFunction> functions = new ArrayList<>();
     public HashMap<MJFunction, CallTarget> callAble = new HashMap<MJFunction, CallTarget>();
 
@@ -217,6 +322,11 @@ public final class RecursiveDescentParser {
         return null;
     }
 
+    /** The globals of the program, which every run starts at their default values. */
+    public MJGlobals getGlobals() {
+        return currentContext.getGlobals();
+    }
+
     public MJFunction getMain() {
         for (MJFunction f : functions) {
             if (f.getName().equals("main"))
@@ -228,8 +338,13 @@ public final class RecursiveDescentParser {
     public MJExpressionNode callFunction(String funcName) {
         List<MJExpressionNode> params = ActPars();
         MJFunction caleeFunction = getFunction(funcName);
-        if (caleeFunction == null)
+        if (caleeFunction == null) {
+            MJExpressionNode intrinsic = createIntrinsic(funcName, params);
+            if (intrinsic != null)
+                return intrinsic;
             throw new Error("Function does not exists");
+        }
+        MJTypeChecker.checkArguments(funcName, caleeFunction.parameterTypes, params);
         CallTarget callTarget = callAble.get(caleeFunction);
         if (callTarget == null) {
             callTarget = Truffle.getRuntime().createCallTarget(caleeFunction);
@@ -240,10 +355,25 @@ public final class RecursiveDescentParser {
 
     /**
      * MethodDecl = <br>
-     * ( Type | "void" ) ident "(" [ FormPars ] ")" <br>
+     * { "tail" | "pure" } ( Type | "void" ) ident "(" [ FormPars ] ")" <br>
      * ( ";" | { VarDecl } Block ) .
+     * <p>
+     * In a <code>tail</code> function every <code>return f(...)</code> is a tail call, see
+     * {@link MJTailCallNode}; otherwise only calls of the function itself are. Calls of a
+     * <code>pure</code> function are memoized, see {@link MJPurityAnalysis}.
      */
     private void MethodDecl() {
+        Token start = la;
+        currentTailCalls = false;
+        boolean isPure = false;
+        while (sym == tail || sym == pure) {
+            scan();
+            if (t.kind == tail) {
+                currentTailCalls = true;
+            } else {
+                isPure = true;
+            }
+        }
         String funcType = null;
         if (sym == ident) {
             funcType = Type();
@@ -260,11 +390,56 @@ public final class RecursiveDescentParser {
             FormPars();
         }
         check(rpar);
+        currentReturnType = funcType == null ? null : currentContext.getTypeDescriptor(funcType);
+        MJTypeChecker.checkNotAuto("Return type of " + name, currentReturnType);
+        MJFunction declared = getFunction(name);
+        if (declared != null) {
+            if (declared.hasBody() || declared.returnType != currentReturnType || !Arrays.equals(declared.parameterTypes, currentContext.getParameterTypes()) || declared.isPure() != isPure)
+                throw new Error("Double declaration of function " + name);
+            currentFunction = declared;
+        } else {
+            currentFunction = new MJFunction(language, name, null, currentContext.getContextFrameDescriptor(), currentReturnType, currentContext.getParameterTypes());
+            if (isPure) {
+                checkMemoizable(currentFunction);
+                currentFunction.memoize();
+            }
+            functions.add(currentFunction);
+        }
+        // a forward declaration, for functions that call each other
+        if (sym == semicolon) {
+            scan();
+            return;
+        }
+        // variables declared before the body get a scope of their own, around the body's
+        currentContext.stepInBlock();
+        FrameDescriptor functionScope = currentContext.getContextFrameDescriptor();
         while (sym == ident) {
             VarDecl();
         }
-        functions.add(new MJFunction(name, null, currentContext.getContextFrameDescriptor(), funcType == null ? null : currentContext.getTypeDescriptor(funcType)));
-        functions.get(functions.size() - 1).changeBody(Block());
+        MJStatementNode body = Block();
+        currentContext.stepOutBlock();
+        if (!functionScope.getSlots().isEmpty()) {
+            body = new MJBlock(new MJStatementNode[]{body}, functionScope);
+        }
+        body.setSourceSection(section(start));
+        body.addRootTag();
+        currentFunction.setSourceSection(body.getSourceSection());
+        currentFunction.changeBody(body);
+        if (isPure) {
+            MJPurityAnalysis.check(currentFunction, currentFunction.getBody());
+        }
+    }
+
+    /** A pure function returns a primitive and takes at most two int, char or bool arguments. */
+    private static void checkMemoizable(MJFunction function) {
+        if (function.returnType == null || !MJTypeChecker.isPrimitive(function.returnType))
+            throw new Error("Pure function " + function.getName() + " must return int, char, double or bool");
+        if (function.parameterTypes.length > 2)
+            throw new Error("Pure function " + function.getName() + " takes more than two arguments");
+        for (TypeDescriptor type : function.parameterTypes) {
+            if (!MJTypeChecker.isPrimitive(type) || MJTypeChecker.baseType(type) == DoubleDescriptor.INSTANCE)
+                throw new Error("Pure function " + function.getName() + " can only take int, char or bool arguments");
+        }
     }
 
     /** FormPars = Type ident { "," Type ident } . */
@@ -280,14 +455,16 @@ public final class RecursiveDescentParser {
         }
     }
 
-    /** Type = ident . */
+    /** Type = ident [ "[" "]" ] . */
     private String Type() {
         check(ident);
-        return t.str;
-// if (sym == lbrack) {
-// scan();
-// check(rbrack);
-// }
+        String typeName = t.str;
+        if (sym == lbrack) {
+            scan();
+            check(rbrack);
+            typeName += "[]";
+        }
+        return typeName;
     }
 
     /** Block = "{" { Statement } "}" . */
@@ -313,11 +490,186 @@ public final class RecursiveDescentParser {
         return statementNodes;
     }
 
+    /** Designator ( Assignop Expr | ActPars | "++" | "--" ) . */
+    private MJStatementNode DesignatorStatement() {
+        MJStatementNode statement;
+        Designation des = Designator();
+        switch (sym) {
+            case assign:
+                scan();
+                statement = writeDesignator(des, Expr());
+                break;
+            case plusas:
+                scan();
+                statement = writeDesignator(des,
+                                createBinary(plus, readDesignator(des), Expr()));
+                break;
+            case minusas:
+                scan();
+                statement = writeDesignator(des,
+                                createBinary(minus, readDesignator(des), Expr()));
+                break;
+            case timesas:
+                scan();
+                statement = writeDesignator(des,
+                                createBinary(times, readDesignator(des), Expr()));
+                break;
+            case slashas:
+                scan();
+                statement = writeDesignator(des,
+                                createBinary(slash, readDesignator(des), Expr()));
+                break;
+            case remas:
+                scan();
+                statement = writeDesignator(des,
+                                createBinary(rem, readDesignator(des), Expr()));
+                break;
+            case bitandas:
+                scan();
+                statement = writeDesignator(des,
+                                createBinary(bitand, readDesignator(des), Expr()));
+                break;
+            case bitoras:
+                scan();
+                statement = writeDesignator(des,
+                                createBinary(bitor, readDesignator(des), Expr()));
+                break;
+            case xoras:
+                scan();
+                statement = writeDesignator(des,
+                                createBinary(xor, readDesignator(des), Expr()));
+                break;
+            case shlas:
+                scan();
+                statement = writeDesignator(des,
+                                createBinary(shl, readDesignator(des), Expr()));
+                break;
+            case shras:
+                scan();
+                statement = writeDesignator(des,
+                                createBinary(shr, readDesignator(des), Expr()));
+                break;
+            case ushras:
+                scan();
+                statement = writeDesignator(des,
+                                createBinary(ushr, readDesignator(des), Expr()));
+                break;
+            case lpar:
+                statement = new MJExpressionStatement(callFunction(des.functionName()));
+                break;
+            case pplus:
+                scan();
+                statement = writeDesignator(des,
+                                createBinary(plus, readDesignator(des), MJConstantNodeFactory.IntNodeGen.create(1)));
+                break;
+            case mminus:
+                scan();
+                statement = writeDesignator(des,
+                                createBinary(minus, readDesignator(des), MJConstantNodeFactory.IntNodeGen.create(1)));
+                break;
+            default:
+                throw new Error("Designator Follow");
+        }
+        return statement;
+    }
+
+    /** ForInit = Type ident "=" Expr | DesignatorStatement . */
+    private MJStatementNode ForInit() {
+        if (sym == ident && TypeTable.getInstance().getAvailableTypes().contains(la.str)) {
+            String typeName = Type();
+            check(ident);
+            String name = t.str;
+            currentContext.createLocalVar(typeName, name);
+            check(assign);
+            return currentContext.writeVariable(name, Expr());
+        }
+        return DesignatorStatement();
+    }
+
+    /** Parses the body of a for loop, and runs the loop as a counted loop if it has that shape. */
+    private MJStatementNode ForBody(MJExpressionNode condition, MJStatementNode update) {
+        FrameSlot induction = update == null ? null : MJCountedLoopMatcher.inductionSlot(update);
+        int writes = induction == null ? 0 : currentContext.getWriteCount(induction);
+        MJBoundsSpeculation speculation = null;
+        if (MJCountedLoopMatcher.isUpward(condition, update)) {
+            speculation = new MJBoundsSpeculation(induction, currentContext.getWriteCounts());
+            boundsSpeculations.add(speculation);
+        }
+        MJStatementNode body = Statement();
+        MJCountedLoop countedLoop = null;
+        if (induction != null && currentContext.getWriteCount(induction) == writes) {
+            countedLoop = MJCountedLoopMatcher.match(condition, update, body);
+        }
+        if (speculation != null) {
+            boundsSpeculations.remove(boundsSpeculations.size() - 1);
+            speculation.finish(countedLoop, currentContext);
+        }
+        if (countedLoop != null) {
+            return countedLoop;
+        }
+        return new MJForLoop(condition, update, body);
+    }
+
+    /**
+     * Adds <code>array</code> to the bounds speculation of the enclosing upward counted loop if
+     * <code>index</code> is the loop's induction variable and <code>array</code> a local array of
+     * primitives.
+     */
+    private void speculateInBounds(MJExpressionNode array, MJExpressionNode index) {
+        if (!(index instanceof MJReadIntLocalVariableNode) || !(array instanceof MJReadObjectLocalVariableNode)) {
+            return;
+        }
+        TypeDescriptor arrayType = array.getType();
+        if (!(arrayType instanceof ArrayTypeDescriptor) || !MJTypeChecker.isPrimitive(((ArrayTypeDescriptor) arrayType).getElementType())) {
+            return;
+        }
+        FrameSlot indexSlot = ((MJReadIntLocalVariableNode) index).getSlot();
+        for (int i = boundsSpeculations.size() - 1; i >= 0; i--) {
+            MJBoundsSpeculation speculation = boundsSpeculations.get(i);
+            if (speculation.inductionSlot == indexSlot) {
+                speculation.addArray(((MJReadObjectLocalVariableNode) array).getSlot());
+                return;
+            }
+        }
+    }
+
+    /**
+     * <code>foreach (T x : a) body</code> is parsed as
+     * <code>{ $a = a; for ($i = 0; $i &lt; len($a); $i++) { T x = $a[$i]; body } }</code>, with hidden
+     * variables <code>$a</code> and <code>$i</code>, which makes it a counted loop.
+     */
+    private MJStatementNode ForEach(String elementTypeName, String elementName, MJExpressionNode iterable, Token start) {
+        String array = currentContext.createTemporary(MJTypeChecker.typeOf(iterable));
+        String index = currentContext.createTemporary(IntDescriptor.INSTANCE);
+        MJStatementNode initArray = currentContext.writeVariable(array, iterable);
+        MJStatementNode initIndex = currentContext.writeVariable(index, MJConstantNodeFactory.IntNodeGen.create(0));
+        MJExpressionNode condition = createBinary(lss, currentContext.readVariable(index),
+                        MJArrayNodeFactory.MJArrayLengthNodeGen.create(currentContext.readVariable(array)));
+        MJStatementNode update = currentContext.writeVariable(index,
+                        createBinary(plus, currentContext.readVariable(index), MJConstantNodeFactory.IntNodeGen.create(1)));
+
+        currentContext.stepInBlock();
+        currentContext.createLocalVar(elementTypeName, elementName);
+        MJExpressionNode arrayNode = currentContext.readVariable(array);
+        MJExpressionNode indexNode = currentContext.readVariable(index);
+        MJStatementNode next = currentContext.writeVariable(elementName,
+                        MJArrayNodeFactory.MJReadArrayElementNodeGen.create(arrayNode, indexNode, MJTypeChecker.elementType(arrayNode, indexNode)));
+        MJStatementNode body = Statement();
+        MJStatementNode loopBody = new MJBlock(new MJStatementNode[]{next, body}, currentContext.getContextFrameDescriptor());
+        currentContext.stepOutBlock();
+
+        MJCountedLoop loop = MJCountedLoopMatcher.match(condition, update, loopBody);
+        loop.setSourceSection(section(start));
+        return new MJBlock(new MJStatementNode[]{initArray, initIndex, loop}, currentContext.getContextFrameDescriptor());
+    }
+
     /**
      * Statement = <br>
      * Designator ( Assignop Expr | ActPars | "++" | "--" ) ";" <br>
      * | "if" "(" Condition ")" Statement [ "else" Statement ] <br>
      * | "while" "(" Condition ")" Statement <br>
+     * | "for" "(" [ ForInit ] ";" [ Condition ] ";" [ DesignatorStatement ] ")" Statement <br>
+     * | "foreach" "(" Type ident ":" Expr ")" Statement <br>
      * | "break" ";" <br>
      * | "return" [ Expr ] ";" <br>
      * | "read" "(" Designator ")" ";" <br>
@@ -326,6 +678,7 @@ public final class RecursiveDescentParser {
      * | ";" .
      */
     private MJStatementNode Statement() {
+        Token start = la;
         MJStatementNode curStatementNode = null;
         switch (sym) {
             // ----- assignment, method call, in- or decrement, variable initializaton
@@ -343,53 +696,7 @@ public final class RecursiveDescentParser {
                     };
                     break;
                 }
-                String des = Designator();
-                switch (sym) {
-                    case assign:
-                        scan();
-                        curStatementNode = currentContext.writeVariable(des, Expr());
-                        break;
-                    case plusas:
-                        scan();
-                        curStatementNode = currentContext.writeVariable(des,
-                                        MJBinaryNodeFactory.AddNodeGen.create(currentContext.readVariable(des), Expr()));
-                        break;
-                    case minusas:
-                        scan();
-                        curStatementNode = currentContext.writeVariable(des,
-                                        MJBinaryNodeFactory.SubtractNodeGen.create(currentContext.readVariable(des), Expr()));
-                        break;
-                    case timesas:
-                        scan();
-                        curStatementNode = currentContext.writeVariable(des,
-                                        MJBinaryNodeFactory.MultiplicationNodeGen.create(currentContext.readVariable(des), Expr()));
-                        break;
-                    case slashas:
-                        scan();
-                        curStatementNode = currentContext.writeVariable(des,
-                                        MJBinaryNodeFactory.DividerNodeGen.create(currentContext.readVariable(des), Expr()));
-                        break;
-                    case remas:
-                        scan();
-                        curStatementNode = currentContext.writeVariable(des,
-                                        MJBinaryNodeFactory.ModulationNodeGen.create(currentContext.readVariable(des), Expr()));
-                        break;
-                    case lpar:
-                        curStatementNode = new MJExpressionStatement(callFunction(des));
-                        break;
-                    case pplus:
-                        scan();
-                        curStatementNode = currentContext.writeVariable(des,
-                                        MJBinaryNodeFactory.AddNodeGen.create(currentContext.readVariable(des), MJConstantNodeFactory.IntNodeGen.create(1)));
-                        break;
-                    case mminus:
-                        scan();
-                        curStatementNode = currentContext.writeVariable(des,
-                                        MJBinaryNodeFactory.SubtractNodeGen.create(currentContext.readVariable(des), MJConstantNodeFactory.IntNodeGen.create(1)));
-                        break;
-                    default:
-                        throw new Error("Designator Follow");
-                }
+                curStatementNode = DesignatorStatement();
                 check(semicolon);
                 break;
             case final_:
@@ -400,6 +707,7 @@ public final class RecursiveDescentParser {
                 scan();
                 check(lpar);
                 MJExpressionNode condition = Condition();
+                MJTypeChecker.checkBool("Condition", condition);
                 check(rpar);
                 MJStatementNode trueBlock = Statement();
                 MJStatementNode falseBlock = null;
@@ -414,10 +722,53 @@ public final class RecursiveDescentParser {
                 scan();
                 check(lpar);
                 MJExpressionNode conditionNode = Condition();
+                MJTypeChecker.checkBool("Condition", conditionNode);
                 check(rpar);
                 MJStatementNode block = Statement();
                 curStatementNode = new MJWhileLoop(conditionNode, block);
                 break;
+            // ----- "for" "(" [ ForInit ] ";" [ Condition ] ";" [ DesignatorStatement ] ")" Statement
+            case for_:
+                scan();
+                check(lpar);
+                currentContext.stepInBlock();
+                List<MJStatementNode> forStatements = new ArrayList<>();
+                if (sym != semicolon) {
+                    forStatements.add(ForInit());
+                }
+                check(semicolon);
+                MJExpressionNode forCondition = null;
+                if (sym != semicolon) {
+                    forCondition = Condition();
+                    MJTypeChecker.checkBool("Condition", forCondition);
+                }
+                check(semicolon);
+                MJStatementNode forUpdate = null;
+                if (sym != rpar) {
+                    forUpdate = DesignatorStatement();
+                }
+                check(rpar);
+                MJStatementNode forLoop = ForBody(forCondition, forUpdate);
+                // the loop is the statement, the block only holds the loop variable
+                forLoop.setSourceSection(section(start));
+                forStatements.add(forLoop);
+                curStatementNode = new MJBlock(forStatements.toArray(new MJStatementNode[forStatements.size()]), currentContext.getContextFrameDescriptor());
+                currentContext.stepOutBlock();
+                break;
+            // ----- "foreach" "(" Type ident ":" Expr ")" Statement
+            case foreach:
+                scan();
+                check(lpar);
+                currentContext.stepInBlock();
+                String elementTypeName = Type();
+                check(ident);
+                String elementName = t.str;
+                check(colon);
+                MJExpressionNode iterable = Expr();
+                check(rpar);
+                curStatementNode = ForEach(elementTypeName, elementName, iterable, start);
+                currentContext.stepOutBlock();
+                break;
             // ----- "break" ";"
             case break_:
                 scan();
@@ -437,19 +788,27 @@ public final class RecursiveDescentParser {
                 MJExpressionNode retValue = null;
                 if (sym != semicolon) {
                     retValue = Expr();
+                }
+                MJTypeChecker.checkReturn(currentReturnType, retValue);
+                if (retValue instanceof MJInvokeNode && ((MJInvokeNode) retValue).isCallTo(currentFunction)) {
+                    curStatementNode = new MJTailCallNode(((MJInvokeNode) retValue).getParams());
+                } else if (retValue instanceof MJInvokeNode && currentTailCalls && !currentFunction.getName().equals("main")) {
+                    // main returns to the host, which has no trampoline
+                    MJInvokeNode call = (MJInvokeNode) retValue;
+                    curStatementNode = new MJTailCallNode(call.getCallTarget(), call.getParams());
                 } else {
+                    curStatementNode = new MJReturnNode(retValue);
                 }
-                curStatementNode = new MJReturnNode(retValue);
                 check(semicolon);
                 break;
             // ----- "read" "(" Designator ")" ";"
             case read:
                 scan();
                 check(lpar);
-                des = Designator();
+                Designation des = Designator();
                 check(rpar);
                 check(semicolon);
-                curStatementNode = currentContext.writeVariable(des, new MJReadNode());
+                curStatementNode = writeDesignator(des, new MJReadNode());
                 break;
             // ----- "print" "(" Expr [ comma number ] ")" ";"
             case print:
@@ -473,9 +832,134 @@ public final class RecursiveDescentParser {
             default:
                 throw new Error("Invalid start...");
         }
+        if (curStatementNode != null && curStatementNode.getSourceSection() == null) {
+            curStatementNode.setSourceSection(section(start));
+        }
         return curStatementNode;
     }
 
+    /** Type checks the operands and creates the node for a binary operator. */
+    private MJExpressionNode createBinary(Token.Kind op, MJExpressionNode lhs, MJExpressionNode rhs) {
+        switch (op) {
+            case plus:
+                MJTypeChecker.checkNumeric(op.label(), lhs, rhs);
+                return MJBinaryNodeFactory.AddNodeGen.create(lhs, rhs);
+            case minus:
+                MJTypeChecker.checkNumeric(op.label(), lhs, rhs);
+                return MJBinaryNodeFactory.SubtractNodeGen.create(lhs, rhs);
+            case times:
+                MJTypeChecker.checkNumeric(op.label(), lhs, rhs);
+                return MJBinaryNodeFactory.MultiplicationNodeGen.create(lhs, rhs);
+            case slash:
+                MJTypeChecker.checkNumeric(op.label(), lhs, rhs);
+                return MJBinaryNodeFactory.DividerNodeGen.create(lhs, rhs);
+            case rem:
+                MJTypeChecker.checkNumeric(op.label(), lhs, rhs);
+                return MJBinaryNodeFactory.ModulationNodeGen.create(lhs, rhs);
+            case eql:
+                MJTypeChecker.checkEquality(op.label(), lhs, rhs);
+                if (MJTypeChecker.isReference(MJTypeChecker.typeOf(lhs)) || MJTypeChecker.isReference(MJTypeChecker.typeOf(rhs))) {
+                    return MJBinaryNodeFactory.ReferenceEqualNodeGen.create(lhs, rhs);
+                }
+                return MJBinaryNodeFactory.EqualNodeGen.create(lhs, rhs);
+            case neq:
+                MJTypeChecker.checkEquality(op.label(), lhs, rhs);
+                if (MJTypeChecker.isReference(MJTypeChecker.typeOf(lhs)) || MJTypeChecker.isReference(MJTypeChecker.typeOf(rhs))) {
+                    return MJBinaryNodeFactory.ReferenceNotEqualNodeGen.create(lhs, rhs);
+                }
+                return MJBinaryNodeFactory.NotEqualNodeGen.create(lhs, rhs);
+            case lss:
+                MJTypeChecker.checkNumeric(op.label(), lhs, rhs);
+                return MJBinaryNodeFactory.LessNodeGen.create(lhs, rhs);
+            case leq:
+                MJTypeChecker.checkNumeric(op.label(), lhs, rhs);
+                return MJBinaryNodeFactory.LessEqualNodeGen.create(lhs, rhs);
+            case gtr:
+                MJTypeChecker.checkNumeric(op.label(), lhs, rhs);
+                return MJBinaryNodeFactory.GreaterNodeGen.create(lhs, rhs);
+            case geq:
+                MJTypeChecker.checkNumeric(op.label(), lhs, rhs);
+                return MJBinaryNodeFactory.GreaterEqualNodeGen.create(lhs, rhs);
+            case bitand:
+                MJTypeChecker.checkInteger(op.label(), lhs, rhs);
+                return MJBinaryNodeFactory.BitAndNodeGen.create(lhs, rhs);
+            case bitor:
+                MJTypeChecker.checkInteger(op.label(), lhs, rhs);
+                return MJBinaryNodeFactory.BitOrNodeGen.create(lhs, rhs);
+            case xor:
+                MJTypeChecker.checkInteger(op.label(), lhs, rhs);
+                return MJBinaryNodeFactory.BitXorNodeGen.create(lhs, rhs);
+            case shl:
+                MJTypeChecker.checkInteger(op.label(), lhs, rhs);
+                return MJBinaryNodeFactory.ShiftLeftNodeGen.create(lhs, rhs);
+            case shr:
+                MJTypeChecker.checkInteger(op.label(), lhs, rhs);
+                return MJBinaryNodeFactory.ShiftRightNodeGen.create(lhs, rhs);
+            case ushr:
+                MJTypeChecker.checkInteger(op.label(), lhs, rhs);
+                return MJBinaryNodeFactory.UnsignedShiftRightNodeGen.create(lhs, rhs);
+            case and:
+                MJTypeChecker.checkBool("Operand of " + op.label(), lhs);
+                MJTypeChecker.checkBool("Operand of " + op.label(), rhs);
+                return MJBinaryNodeFactory.AndNodeGen.create(lhs, rhs);
+            case or:
+                MJTypeChecker.checkBool("Operand of " + op.label(), lhs);
+                MJTypeChecker.checkBool("Operand of " + op.label(), rhs);
+                return MJBinaryNodeFactory.OrNodeGen.create(lhs, rhs);
+            default:
+                throw new Error("Unknown operator " + op);
+        }
+    }
+
+    /**
+     * Creates the node for a built-in math function, or returns <code>null</code> if there is no
+     * built-in with this name. User functions with the same name take precedence.
+     */
+    private MJExpressionNode createIntrinsic(String name, List<MJExpressionNode> args) {
+        switch (name) {
+            case "abs":
+            case "floor":
+            case "sqrt":
+            case "sin":
+            case "cos":
+                if (args.size() != 1)
+                    throw new Error("Function " + name + " expects 1 argument, but got " + args.size());
+                MJTypeChecker.checkNumeric(name, args.get(0), args.get(0));
+                break;
+            case "len":
+                if (args.size() != 1)
+                    throw new Error("Function " + name + " expects 1 argument, but got " + args.size());
+                return MJArrayNodeFactory.MJArrayLengthNodeGen.create(args.get(0));
+            case "min":
+            case "max":
+            case "pow":
+                if (args.size() != 2)
+                    throw new Error("Function " + name + " expects 2 arguments, but got " + args.size());
+                MJTypeChecker.checkNumeric(name, args.get(0), args.get(1));
+                break;
+            default:
+                return null;
+        }
+        switch (name) {
+            case "abs":
+                return MJMathNodeFactory.AbsNodeGen.create(args.get(0));
+            case "floor":
+                return MJMathNodeFactory.FloorNodeGen.create(args.get(0));
+            case "sqrt":
+                return MJMathNodeFactory.SqrtNodeGen.create(args.get(0));
+            case "sin":
+                return MJMathNodeFactory.SinNodeGen.create(args.get(0));
+            case "cos":
+                return MJMathNodeFactory.CosNodeGen.create(args.get(0));
+            case "min":
+                return MJMathNodeFactory.MinNodeGen.create(args.get(0), args.get(1));
+            case "max":
+                return MJMathNodeFactory.MaxNodeGen.create(args.get(0), args.get(1));
+            default:
+                return MJMathNodeFactory.PowNodeGen.create(args.get(0), args.get(1));
+        }
+    }
+
     /** ActPars = "(" [ Expr { "," Expr } ] ")" . */
     private List<MJExpressionNode> ActPars() {
         List<MJExpressionNode> exprsExpressionNodes = new ArrayList<>();
@@ -496,12 +980,13 @@ public final class RecursiveDescentParser {
 
     /** Condition = CondTerm { "||" CondTerm } . */
     private MJExpressionNode Condition() {
+        Token start = la;
         MJExpressionNode expressionNode = CondTerm();
         while (sym == or) {
             scan();
-            expressionNode = MJBinaryNodeFactory.OrNodeGen.create(expressionNode, CondTerm());
+            expressionNode = createBinary(or, expressionNode, CondTerm());
         }
-        return expressionNode;
+        return withSection(expressionNode, start);
     }
 
     /** CondTerm = CondFact { "&&" CondFact } . */
@@ -509,7 +994,7 @@ public final class RecursiveDescentParser {
         MJExpressionNode expressionNode = CondFact();
         while (sym == and) {
             scan();
-            expressionNode = MJBinaryNodeFactory.AndNodeGen.create(expressionNode, CondFact());
+            expressionNode = createBinary(and, expressionNode, CondFact());
         }
         return expressionNode;
 
@@ -518,24 +1003,15 @@ public final class RecursiveDescentParser {
     /** CondFact = Expr Relop Expr . */
     private MJExpressionNode CondFact() {
         MJExpressionNode expressionNode = Expr();
-        switch (scan()) {
+        Token.Kind relop = scan();
+        switch (relop) {
             case neq:
-                expressionNode = MJBinaryNodeFactory.NotEqualNodeGen.create(expressionNode, Expr());
-                break;
             case lss:
-                expressionNode = MJBinaryNodeFactory.LessNodeGen.create(expressionNode, Expr());
-                break;
             case leq:
-                expressionNode = MJBinaryNodeFactory.LessEqualNodeGen.create(expressionNode, Expr());
-                break;
             case eql:
-                expressionNode = MJBinaryNodeFactory.EqualNodeGen.create(expressionNode, Expr());
-                break;
             case geq:
-                expressionNode = MJBinaryNodeFactory.GreaterEqualNodeGen.create(expressionNode, Expr());
-                break;
             case gtr:
-                expressionNode = MJBinaryNodeFactory.GreaterNodeGen.create(expressionNode, Expr());
+                expressionNode = createBinary(relop, expressionNode, Expr());
                 break;
             default:
                 break;
@@ -543,8 +1019,49 @@ public final class RecursiveDescentParser {
         return expressionNode;
     }
 
-    /** Expr = [ "-" ] Term { Addop Term } . */
+    /** Expr = XorExpr { "|" XorExpr } . */
     private MJExpressionNode Expr() {
+        Token start = la;
+        MJExpressionNode expressionNode = XorExpr();
+        while (sym == bitor) {
+            scan();
+            expressionNode = createBinary(bitor, expressionNode, XorExpr());
+        }
+        return withSection(expressionNode, start);
+    }
+
+    /** XorExpr = AndExpr { "^" AndExpr } . */
+    private MJExpressionNode XorExpr() {
+        MJExpressionNode expressionNode = AndExpr();
+        while (sym == xor) {
+            scan();
+            expressionNode = createBinary(xor, expressionNode, AndExpr());
+        }
+        return expressionNode;
+    }
+
+    /** AndExpr = ShiftExpr { "&" ShiftExpr } . */
+    private MJExpressionNode AndExpr() {
+        MJExpressionNode expressionNode = ShiftExpr();
+        while (sym == bitand) {
+            scan();
+            expressionNode = createBinary(bitand, expressionNode, ShiftExpr());
+        }
+        return expressionNode;
+    }
+
+    /** ShiftExpr = ArithExpr { Shiftop ArithExpr } . */
+    private MJExpressionNode ShiftExpr() {
+        MJExpressionNode expressionNode = ArithExpr();
+        while (sym == shl || sym == shr || sym == ushr) {
+            Token.Kind shiftop = scan();
+            expressionNode = createBinary(shiftop, expressionNode, ArithExpr());
+        }
+        return expressionNode;
+    }
+
+    /** ArithExpr = [ "-" ] Term { Addop Term } . */
+    private MJExpressionNode ArithExpr() {
         MJExpressionNode expressionNode = null;
         boolean neg = false;
         if (sym == minus) {
@@ -553,16 +1070,16 @@ public final class RecursiveDescentParser {
         }
         expressionNode = Term();
         if (neg)
-            expressionNode = MJBinaryNodeFactory.MultiplicationNodeGen.create(
+            expressionNode = createBinary(times,
                             MJConstantNodeFactory.IntNodeGen.create(-1),
                             expressionNode);
         while (sym == plus || sym == minus) {
             if (sym == plus) {
                 scan();
-                expressionNode = MJBinaryNodeFactory.AddNodeGen.create(expressionNode, Term());
+                expressionNode = createBinary(plus, expressionNode, Term());
             } else if (sym == minus) {
                 scan();
-                expressionNode = MJBinaryNodeFactory.SubtractNodeGen.create(expressionNode, Term());
+                expressionNode = createBinary(minus, expressionNode, Term());
             }
         }
         return expressionNode;
@@ -573,19 +1090,8 @@ public final class RecursiveDescentParser {
         MJExpressionNode expressionNode = null;
         expressionNode = Factor();
         while (sym == times || sym == slash || sym == rem) {
-            switch (scan()) {
-                case times:
-                    expressionNode = MJBinaryNodeFactory.MultiplicationNodeGen.create(expressionNode, Factor());
-                    break;
-                case slash:
-                    expressionNode = MJBinaryNodeFactory.DividerNodeGen.create(expressionNode, Factor());
-                    break;
-                case rem:
-                    expressionNode = MJBinaryNodeFactory.ModulationNodeGen.create(expressionNode, Factor());
-                    break;
-                default:
-                    break;
-            }
+            Token.Kind mulop = scan();
+            expressionNode = createBinary(mulop, expressionNode, Factor());
         }
         return expressionNode;
     }
@@ -593,26 +1099,28 @@ public final class RecursiveDescentParser {
     /**
      * Factor = <br>
      * Designator [ ActPars ] <br>
+     * | "abs" ActPars <br>
      * | number <br>
      * | charConst <br>
      * | "new" ident [ "[" Expr "]" ] <br>
-     * | "(" Expr ")" .
+     * | "null" <br>
+     * | "(" Expr ")" <br>
+     * | "~" Factor .
      */
     private MJExpressionNode Factor() {
+        Token start = la;
         MJExpressionNode expressionNode = null;
         switch (sym) {
             case abs:
                 scan();
-                check(lpar);
-                Expr();
-                check(rpar);
+                expressionNode = createIntrinsic(t.str, ActPars());
                 break;
             case ident:
-                String name = Designator();
+                Designation des = Designator();
                 if (sym == lpar) {
-                    expressionNode = callFunction(name);
+                    expressionNode = callFunction(des.functionName());
                 } else {
-                    expressionNode = currentContext.readVariable(name);
+                    expressionNode = readDesignator(des);
                 }
                 break;
             case number:
@@ -626,42 +1134,143 @@ public final class RecursiveDescentParser {
             case new_:
                 scan();
                 check(ident);
+                TypeDescriptor type = TypeTable.getInstance().getTypeDescriptor(t.str);
+                if (type == null) {
+                    throw new Error("Type " + t.str + " was not defined");
+                }
                 if (sym == lbrack) {
                     scan();
-                    Expr();
+                    MJExpressionNode length = Expr();
                     check(rbrack);
+                    MJTypeChecker.checkIndex("Array length", length);
+                    expressionNode = MJArrayNodeFactory.MJNewArrayNodeGen.create(length, TypeTable.getInstance().getArrayType(type));
+                    break;
                 }
+                if (!(type instanceof ClassTypeDescriptor)) {
+                    throw new Error(t.str + " is not a class");
+                }
+                expressionNode = new MJNewObjectNode((ClassTypeDescriptor) type);
+                break;
+            case null_:
+                scan();
+                expressionNode = MJConstantNodeFactory.NullNodeGen.create();
                 break;
             case lpar:
                 scan();
-                Expr();
+                expressionNode = Expr();
                 check(rpar);
                 break;
+            case tilde:
+                scan();
+                expressionNode = Factor();
+                MJTypeChecker.checkInteger(tilde.label(), expressionNode, expressionNode);
+                expressionNode = MJUnaryNodeFactory.BitNotNodeGen.create(expressionNode);
+                break;
             default:
                 throw new Error("Invalid fact");
         }
-        return expressionNode;
+        return withSection(expressionNode, start);
     }
 
     /** Designator = ident { "." ident | "[" Expr "]" } . */
-    private String Designator() {
+    private Designation Designator() {
         check(ident);
+        Designation des = new Designation(t.str, null, null, null);
         while (sym == period || sym == lbrack) {
             if (sym == period) {
                 scan();
                 check(ident);
-                throw new Error("Fields ignored for now");
+                if (des.isStructElement()) {
+                    // ps[i].x of a flattened struct array accesses the column of x directly
+                    MJTypeChecker.fieldType(des.type, t.str);
+                    des = new Designation(t.str, des.receiver, des.index, des.type);
+                } else {
+                    MJExpressionNode receiver = readDesignator(des);
+                    des = new Designation(t.str, receiver, null, MJTypeChecker.fieldType(receiver, t.str));
+                }
             } else {
-                // scan();
-                // Expr();
-                // check(rbrack);
-                throw new Error("Arrays ignored for now...");
+                scan();
+                MJExpressionNode array = readDesignator(des);
+                MJExpressionNode index = Expr();
+                check(rbrack);
+                des = new Designation(null, array, index, MJTypeChecker.elementType(array, index));
             }
         }
-        return t.str;
+        return des;
+    }
+
+    /**
+     * What a Designator denotes: a variable <code>name</code>, the field <code>name</code> of the object
+     * computed by <code>receiver</code>, the element <code>index</code> of the array computed by
+     * <code>receiver</code>, or the field <code>name</code> of such an element if the array is a
+     * flattened struct array. <code>type</code> is the type of the field or the element.
+     */
+    private static final class Designation {
+        final String name;
+        final MJExpressionNode receiver;
+        final MJExpressionNode index;
+        final TypeDescriptor type;
+
+        Designation(String name, MJExpressionNode receiver, MJExpressionNode index, TypeDescriptor type) {
+            this.name = name;
+            this.receiver = receiver;
+            this.index = index;
+            this.type = type;
+        }
+
+        boolean isStructElement() {
+            return index != null && name == null && type instanceof ClassTypeDescriptor && ((ClassTypeDescriptor) type).isStruct();
+        }
+
+        FieldDescriptor structField() {
+            return ((ClassTypeDescriptor) type).getField(name);
+        }
+
+        String functionName() {
+            if (receiver != null)
+                throw new Error("Methods are not supported");
+            return name;
+        }
+    }
+
+    private static MJExpressionNode copy(MJExpressionNode node) {
+        return (MJExpressionNode) node.deepCopy();
+    }
+
+    /** Receiver and index are copied, so a designator can be both read and written, e.g. by "+=". */
+    private MJExpressionNode readDesignator(Designation des) {
+        if (des.receiver == null) {
+            return currentContext.readVariable(des.name);
+        } else if (des.index == null) {
+            return MJFieldNode.createRead(copy(des.receiver), des.name, des.type);
+        } else if (des.name == null) {
+            MJExpressionNode array = copy(des.receiver);
+            MJExpressionNode index = copy(des.index);
+            speculateInBounds(array, index);
+            return MJArrayNodeFactory.MJReadArrayElementNodeGen.create(array, index, des.type);
+        }
+        return MJArrayNodeFactory.MJReadStructFieldNodeGen.create(copy(des.receiver), copy(des.index), des.structField());
+    }
+
+    private MJStatementNode writeDesignator(Designation des, MJExpressionNode value) {
+        if (des.receiver == null) {
+            return currentContext.writeVariable(des.name, value);
+        }
+        TypeDescriptor type = des.name != null && des.index != null ? des.structField().getType() : des.type;
+        MJTypeChecker.checkAssignable(type, value);
+        if (des.index == null) {
+            return MJFieldNode.createWrite(copy(des.receiver), value, des.name, des.type);
+        } else if (des.name == null) {
+            MJExpressionNode array = copy(des.receiver);
+            MJExpressionNode index = copy(des.index);
+            speculateInBounds(array, index);
+            return MJArrayNodeFactory.MJWriteArrayElementNodeGen.create(array, index, value, des.type);
+        }
+        return MJArrayNodeFactory.MJWriteStructFieldNodeGen.create(copy(des.receiver), copy(des.index), value, des.structField());
     }
 
     public void parse() {
+        TypeTable.getInstance().reset();
         scan(); // scan first symbol
         Program(); // start analysis
 
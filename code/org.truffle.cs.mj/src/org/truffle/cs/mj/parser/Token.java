@@ -25,16 +25,30 @@ public class Token {
 		geq(">="),
 		and("&&"),
 		or("||"),
+		bitand("&"),
+		bitor("|"),
+		xor("^"),
+		tilde("~"),
+		shl("<<"),
+		shr(">>"),
+		ushr(">>>"),
 		assign("="),
 		plusas("+="),
 		minusas("-="),
 		timesas("*="),
 		slashas("/="),
 		remas("%="),
+		bitandas("&="),
+		bitoras("|="),
+		xoras("^="),
+		shlas("<<="),
+		shras(">>="),
+		ushras(">>>="),
 		pplus("++"),
 		mminus("--"),
 		semicolon(";"),
 		comma(","),
+		colon(":"),
 		period("."),
 		lpar("("),
 		rpar(")"),
@@ -45,15 +59,21 @@ public class Token {
 		break_("break"),
 		continue_("continue"),
 		class_("class"),
+		struct("struct"),
 		else_("else"),
 		final_("final"),
+		for_("for"),
+		foreach("foreach"),
 		if_("if"),
 		new_("new"),
+		null_("null"),
 		print("print"),
+		pure("pure"),
         abs("abs"),
 		program("program"),
 		read("read"),
 		return_("return"),
+		tail("tail"),
 		void_("void"),
 		while_("while"),
 		eof("end of file");
@@ -84,6 +104,12 @@ public class Token {
     /** Column number of this token. */
     public final int col;
 
+    /** Character offset of the first character of this token. */
+    public int pos;
+
+    /** Character offset just past the last character of this token. */
+    public int end;
+
     /** Value of this token (for numbers or character constants). */
     public int val;
 
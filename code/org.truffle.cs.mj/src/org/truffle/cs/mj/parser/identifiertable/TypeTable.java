@@ -3,6 +3,9 @@ package org.truffle.cs.mj.parser.identifiertable;
 import java.util.HashMap;
 import java.util.Set;
 
+import org.truffle.cs.mj.parser.identifiertable.types.ArrayTypeDescriptor;
+import org.truffle.cs.mj.parser.identifiertable.types.AutoDescriptor;
+import org.truffle.cs.mj.parser.identifiertable.types.ClassTypeDescriptor;
 import org.truffle.cs.mj.parser.identifiertable.types.TypeDescriptor;
 import org.truffle.cs.mj.parser.identifiertable.types.primitives.BoolDescriptor;
 import org.truffle.cs.mj.parser.identifiertable.types.primitives.CharDescriptor;
@@ -16,11 +19,13 @@ import org.truffle.cs.mj.parser.identifiertable.types.primitives.constants.Const
 public class TypeTable {
 
     HashMap<String, TypeDescriptor> typeDescriptors;
+    HashMap<TypeDescriptor, ArrayTypeDescriptor> arrayTypes;
 
     private static TypeTable instance = new TypeTable();
 
     private TypeTable() {
         typeDescriptors = new HashMap<>();
+        arrayTypes = new HashMap<>();
         addBuiltinTypes();
     }
 
@@ -28,15 +33,29 @@ public class TypeTable {
         return instance;
     }
 
+    /** Forgets the classes of a previously parsed program. */
+    public void reset() {
+        typeDescriptors.clear();
+        arrayTypes.clear();
+        addBuiltinTypes();
+    }
+
     private void addBuiltinTypes() {
-        typeDescriptors.put("bool", new BoolDescriptor().getInstance());
-        typeDescriptors.put("int", new IntDescriptor().getInstance());
-        typeDescriptors.put("char", new CharDescriptor().getInstance());
-        typeDescriptors.put("double", new DoubleDescriptor().getInstance());
-        typeDescriptors.put("const_bool", new ConstantBoolDescriptor().getInstance());
-        typeDescriptors.put("const_int", new ConstantIntDescriptor().getInstance());
-        typeDescriptors.put("const_char", new ConstantCharDescriptor().getInstance());
-        typeDescriptors.put("const_double", new ConstantDoubleDescriptor().getInstance());
+        typeDescriptors.put("bool", BoolDescriptor.INSTANCE);
+        typeDescriptors.put("int", IntDescriptor.INSTANCE);
+        typeDescriptors.put("char", CharDescriptor.INSTANCE);
+        typeDescriptors.put("double", DoubleDescriptor.INSTANCE);
+        typeDescriptors.put("auto", AutoDescriptor.INSTANCE);
+        typeDescriptors.put("const_bool", ConstantBoolDescriptor.INSTANCE);
+        typeDescriptors.put("const_int", ConstantIntDescriptor.INSTANCE);
+        typeDescriptors.put("const_char", ConstantCharDescriptor.INSTANCE);
+        typeDescriptors.put("const_double", ConstantDoubleDescriptor.INSTANCE);
+    }
+
+    public void addClassType(ClassTypeDescriptor classType) {
+        if (typeDescriptors.containsKey(classType.getName()))
+            throw new Error("Double declaration of type " + classType.getName());
+        typeDescriptors.put(classType.getName(), classType);
     }
 
     public Set<String> getAvailableTypes() {
@@ -44,10 +63,29 @@ public class TypeTable {
     }
 
     public TypeDescriptor getTypeDescriptor(String identifier) {
+        if (identifier.endsWith("[]")) {
+            TypeDescriptor elementType = getTypeDescriptor(identifier.substring(0, identifier.length() - 2));
+            return elementType == null ? null : getArrayType(elementType);
+        }
         return typeDescriptors.get(identifier);
     }
 
     public TypeDescriptor getTypeDescriptor(String identifier, boolean isConst) {
+        if (identifier.endsWith("[]")) {
+            // only the elements of an array could be constant, which is not supported
+            return getTypeDescriptor(identifier);
+        }
         return typeDescriptors.get((isConst ? "const_" : "") + identifier);
     }
+
+    public ArrayTypeDescriptor getArrayType(TypeDescriptor elementType) {
+        if (elementType == AutoDescriptor.INSTANCE)
+            throw new Error("Array elements cannot be auto");
+        ArrayTypeDescriptor arrayType = arrayTypes.get(elementType);
+        if (arrayType == null) {
+            arrayType = new ArrayTypeDescriptor(elementType);
+            arrayTypes.put(elementType, arrayType);
+        }
+        return arrayType;
+    }
 }
@@ -0,0 +1,63 @@
+package org.truffle.cs.mj.parser.identifiertable.types;
+
+import org.truffle.cs.mj.parser.identifiertable.types.primitives.BoolDescriptor;
+import org.truffle.cs.mj.parser.identifiertable.types.primitives.CharDescriptor;
+import org.truffle.cs.mj.parser.identifiertable.types.primitives.DoubleDescriptor;
+import org.truffle.cs.mj.parser.identifiertable.types.primitives.IntDescriptor;
+
+import com.oracle.truffle.api.frame.FrameSlotKind;
+
+/**
+ * Type <code>X[]</code>. Arrays of primitives are backed by the matching Java array, arrays of a
+ * <code>struct</code> by a {@link StructArray} and all other arrays by <code>Object[]</code>. One
+ * descriptor exists per element type (see {@link org.truffle.cs.mj.parser.identifiertable.TypeTable}),
+ * so array types compare by identity like all other types.
+ */
+public class ArrayTypeDescriptor implements TypeDescriptor {
+
+    private final TypeDescriptor elementType;
+
+    public ArrayTypeDescriptor(TypeDescriptor elementType) {
+        this.elementType = elementType;
+    }
+
+    public TypeDescriptor getElementType() {
+        return elementType;
+    }
+
+    public boolean isStructArray() {
+        return elementType instanceof ClassTypeDescriptor && ((ClassTypeDescriptor) elementType).isStruct();
+    }
+
+    public Object newArray(int length) {
+        if (elementType instanceof IntDescriptor) {
+            return new int[length];
+        } else if (elementType instanceof CharDescriptor) {
+            return new char[length];
+        } else if (elementType instanceof DoubleDescriptor) {
+            return new double[length];
+        } else if (elementType instanceof BoolDescriptor) {
+            return new boolean[length];
+        } else if (isStructArray()) {
+            return new StructArray((ClassTypeDescriptor) elementType, length);
+        }
+        return new Object[length];
+    }
+
+    public TypeDescriptor getInstance() {
+        return this;
+    }
+
+    public FrameSlotKind getSlotKind() {
+        return FrameSlotKind.Object;
+    }
+
+    public Object getDefaultValue() {
+        return null;
+    }
+
+    @Override
+    public String toString() {
+        return elementType + "[]";
+    }
+}
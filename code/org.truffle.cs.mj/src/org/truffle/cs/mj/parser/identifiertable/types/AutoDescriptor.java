@@ -0,0 +1,26 @@
+package org.truffle.cs.mj.parser.identifiertable.types;
+
+import com.oracle.truffle.api.frame.FrameSlotKind;
+
+/**
+ * Type of variables declared with <code>auto</code>. Their slot kind is not known at parse time:
+ * it starts as {@link FrameSlotKind#Illegal} and is speculated from the values written at run time.
+ */
+public class AutoDescriptor implements TypeDescriptor {
+    public static final AutoDescriptor INSTANCE = new AutoDescriptor();
+
+    private AutoDescriptor() {
+    }
+
+    public AutoDescriptor getInstance() {
+        return INSTANCE;
+    }
+
+    public FrameSlotKind getSlotKind() {
+        return FrameSlotKind.Illegal;
+    }
+
+    public Object getDefaultValue() {
+        return null;
+    }
+}
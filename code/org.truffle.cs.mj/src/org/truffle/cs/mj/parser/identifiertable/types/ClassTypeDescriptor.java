@@ -1,17 +1,91 @@
 package org.truffle.cs.mj.parser.identifiertable.types;
 
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+
+import org.truffle.cs.mj.parser.identifiertable.types.primitives.BoolDescriptor;
+import org.truffle.cs.mj.parser.identifiertable.types.primitives.CharDescriptor;
+import org.truffle.cs.mj.parser.identifiertable.types.primitives.DoubleDescriptor;
+import org.truffle.cs.mj.parser.identifiertable.types.primitives.IntDescriptor;
+
 import com.oracle.truffle.api.frame.FrameSlotKind;
+import com.oracle.truffle.api.object.DynamicObject;
+import com.oracle.truffle.api.object.Layout;
+import com.oracle.truffle.api.object.Location;
+import com.oracle.truffle.api.object.LocationModifier;
+import com.oracle.truffle.api.object.ObjectType;
+import com.oracle.truffle.api.object.Property;
+import com.oracle.truffle.api.object.Shape;
 
+/**
+ * Type of a <code>class</code> declaration. Instances are {@link DynamicObject}s that all share one
+ * fixed {@link Shape}: every field is defined up front in a location of its declared type (int,
+ * double and bool fields in primitive storage, chars widened to int), and because the type checker
+ * only lets values of the declared type reach a field, an instance never changes its shape.
+ * <p>
+ * A <code>struct</code> is a class with only primitive fields whose arrays are stored flattened, see
+ * {@link StructArray}.
+ */
 public class ClassTypeDescriptor implements TypeDescriptor {
 
-    private final TypeDescriptor typeDescriptor;
+    public static final Layout LAYOUT = Layout.createLayout();
+
+    private final String name;
+    private final boolean struct;
+    private final LinkedHashMap<String, FieldDescriptor> fields = new LinkedHashMap<>();
+    private Shape shape;
+
+    public ClassTypeDescriptor(String name, boolean struct) {
+        this.name = name;
+        this.struct = struct;
+        this.shape = LAYOUT.createShape(new MJObjectType(this));
+    }
+
+    public String getName() {
+        return name;
+    }
 
-    public ClassTypeDescriptor(TypeDescriptor typeDescriptor) {
-        this.typeDescriptor = typeDescriptor;
+    public boolean isStruct() {
+        return struct;
+    }
+
+    public void addField(String fieldName, TypeDescriptor type) {
+        if (fields.containsKey(fieldName))
+            throw new Error("Double declaration of field " + fieldName + " in class " + name);
+        Class<?> storage = storageType(type);
+        if (struct && storage == Object.class)
+            throw new Error("Field " + fieldName + " of struct " + name + " must be int, char, double or bool");
+        Location location;
+        if (storage == Object.class) {
+            location = shape.allocator().locationForType(Object.class);
+        } else {
+            location = shape.allocator().locationForType(storage, EnumSet.of(LocationModifier.NonNull));
+        }
+        shape = shape.addProperty(Property.create(fieldName, location, 0));
+        fields.put(fieldName, new FieldDescriptor(fieldName, fields.size(), type, location));
+    }
+
+    public FieldDescriptor getField(String fieldName) {
+        return fields.get(fieldName);
+    }
+
+    public List<FieldDescriptor> getFields() {
+        return new ArrayList<>(fields.values());
+    }
+
+    /** The shape shared by all instances, complete once the declaration is parsed. */
+    public Shape getShape() {
+        return shape;
+    }
+
+    public DynamicObject newInstance() {
+        return shape.newInstance();
     }
 
     public FrameSlotKind getSlotKind() {
-        return null;
+        return FrameSlotKind.Object;
     }
 
     public Object getDefaultValue() {
@@ -19,7 +93,89 @@ public class ClassTypeDescriptor implements TypeDescriptor {
     }
 
     public TypeDescriptor getInstance() {
-        return null;
+        return this;
     }
 
+    @Override
+    public String toString() {
+        return name;
+    }
+
+    static Class<?> storageType(TypeDescriptor type) {
+        if (type instanceof IntDescriptor || type instanceof CharDescriptor) {
+            return int.class;
+        } else if (type instanceof DoubleDescriptor) {
+            return double.class;
+        } else if (type instanceof BoolDescriptor) {
+            return boolean.class;
+        }
+        return Object.class;
+    }
+
+    public static ClassTypeDescriptor getClassDescriptor(DynamicObject object) {
+        return ((MJObjectType) object.getShape().getObjectType()).classDescriptor;
+    }
+
+    /** A field of a class and the location it is stored in. */
+    public static final class FieldDescriptor {
+        private final String name;
+        private final int index;
+        private final TypeDescriptor type;
+        private final Location location;
+
+        FieldDescriptor(String name, int index, TypeDescriptor type, Location location) {
+            this.name = name;
+            this.index = index;
+            this.type = type;
+            this.location = location;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        /** Position in the declaration, and the column of a {@link StructArray}. */
+        public int getIndex() {
+            return index;
+        }
+
+        public TypeDescriptor getType() {
+            return type;
+        }
+
+        public Location getLocation() {
+            return location;
+        }
+
+        /** Converts a stored value back to the field's type. */
+        public Object fromStorage(Object stored) {
+            if (type instanceof CharDescriptor) {
+                return (char) (int) stored;
+            }
+            return stored;
+        }
+
+        /** Converts a value of the field's type to the stored representation. */
+        public Object toStorage(Object value) {
+            if (type instanceof CharDescriptor) {
+                return (int) (char) value;
+            } else if (type instanceof DoubleDescriptor && value instanceof Integer) {
+                return (double) (int) value;
+            }
+            return value;
+        }
+    }
+
+    static final class MJObjectType extends ObjectType {
+        final ClassTypeDescriptor classDescriptor;
+
+        MJObjectType(ClassTypeDescriptor classDescriptor) {
+            this.classDescriptor = classDescriptor;
+        }
+
+        @Override
+        public String toString(DynamicObject object) {
+            return classDescriptor.getName();
+        }
+    }
 }
@@ -0,0 +1,30 @@
+package org.truffle.cs.mj.parser.identifiertable.types;
+
+import com.oracle.truffle.api.frame.FrameSlotKind;
+
+/**
+ * Type of the <code>null</code> literal, assignable to and comparable with every class type.
+ */
+public class NullDescriptor implements TypeDescriptor {
+    public static final NullDescriptor INSTANCE = new NullDescriptor();
+
+    private NullDescriptor() {
+    }
+
+    public NullDescriptor getInstance() {
+        return INSTANCE;
+    }
+
+    public FrameSlotKind getSlotKind() {
+        return FrameSlotKind.Object;
+    }
+
+    public Object getDefaultValue() {
+        return null;
+    }
+
+    @Override
+    public String toString() {
+        return "null";
+    }
+}
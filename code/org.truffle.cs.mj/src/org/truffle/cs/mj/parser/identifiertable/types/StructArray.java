@@ -0,0 +1,93 @@
+package org.truffle.cs.mj.parser.identifiertable.types;
+
+import java.util.List;
+
+import org.truffle.cs.mj.parser.identifiertable.types.ClassTypeDescriptor.FieldDescriptor;
+
+import com.oracle.truffle.api.CompilerDirectives.TruffleBoundary;
+import com.oracle.truffle.api.object.DynamicObject;
+
+/**
+ * Flattened array of a <code>struct</code>: every field is stored in its own primitive array (int
+ * for int and char, double, boolean), so <code>ps[i].x</code> is one indexed load from the column of
+ * <code>x</code> and a loop over one field walks contiguous memory.
+ * <p>
+ * Elements have no identity of their own. Assigning an instance to an element copies its fields into
+ * the columns, reading an element as a whole copies them out into a new instance, and a fresh array
+ * holds zero-initialized elements instead of <code>null</code>.
+ */
+public final class StructArray {
+
+    private final ClassTypeDescriptor type;
+    private final Object[] columns;
+    private final int length;
+
+    StructArray(ClassTypeDescriptor type, int length) {
+        this.type = type;
+        this.length = length;
+        List<FieldDescriptor> fields = type.getFields();
+        this.columns = new Object[fields.size()];
+        for (FieldDescriptor field : fields) {
+            Class<?> storage = ClassTypeDescriptor.storageType(field.getType());
+            if (storage == int.class) {
+                columns[field.getIndex()] = new int[length];
+            } else if (storage == double.class) {
+                columns[field.getIndex()] = new double[length];
+            } else {
+                columns[field.getIndex()] = new boolean[length];
+            }
+        }
+    }
+
+    public ClassTypeDescriptor getType() {
+        return type;
+    }
+
+    public int getLength() {
+        return length;
+    }
+
+    /** The primitive array holding the field with the given {@link FieldDescriptor#getIndex()}. */
+    public Object getColumn(int field) {
+        return columns[field];
+    }
+
+    @TruffleBoundary
+    public DynamicObject get(int index) {
+        if (index < 0 || index >= length)
+            throw new ArrayIndexOutOfBoundsException(index);
+        DynamicObject element = type.newInstance();
+        for (FieldDescriptor field : type.getFields()) {
+            Object column = columns[field.getIndex()];
+            Object value;
+            if (column instanceof int[]) {
+                value = ((int[]) column)[index];
+            } else if (column instanceof double[]) {
+                value = ((double[]) column)[index];
+            } else {
+                value = ((boolean[]) column)[index];
+            }
+            element.set(field.getName(), value);
+        }
+        return element;
+    }
+
+    @TruffleBoundary
+    public void set(int index, DynamicObject element) {
+        if (index < 0 || index >= length)
+            throw new ArrayIndexOutOfBoundsException(index);
+        if (element == null)
+            throw new Error("Cannot store null in an array of struct " + type.getName());
+        for (FieldDescriptor field : type.getFields()) {
+            Object column = columns[field.getIndex()];
+            Object value = element.get(field.getName());
+            if (column instanceof int[]) {
+                ((int[]) column)[index] = (int) value;
+            } else if (column instanceof double[]) {
+                ((double[]) column)[index] = (double) value;
+            } else {
+                ((boolean[]) column)[index] = (boolean) value;
+            }
+        }
+    }
+}
@@ -6,10 +6,13 @@ import com.oracle.truffle.api.frame.FrameSlotKind;
 
 public class BoolDescriptor implements TypeDescriptor {
 
-    private static BoolDescriptor instance = new BoolDescriptor();
+    public static final BoolDescriptor INSTANCE = new BoolDescriptor();
+
+    protected BoolDescriptor() {
+    }
 
     public BoolDescriptor getInstance() {
-        return instance;
+        return INSTANCE;
     }
 
     public FrameSlotKind getSlotKind() {
@@ -19,4 +22,9 @@ public class BoolDescriptor implements TypeDescriptor {
     public Object getDefaultValue() {
         return false;
     }
+
+    @Override
+    public String toString() {
+        return "bool";
+    }
 }
@@ -5,17 +5,26 @@ import org.truffle.cs.mj.parser.identifiertable.types.TypeDescriptor;
 import com.oracle.truffle.api.frame.FrameSlotKind;
 
 public class CharDescriptor implements TypeDescriptor {
-    private static CharDescriptor instance = new CharDescriptor();
+    public static final CharDescriptor INSTANCE = new CharDescriptor();
+
+    protected CharDescriptor() {
+    }
 
     public CharDescriptor getInstance() {
-        return instance;
+        return INSTANCE;
     }
 
+    /** Chars are kept in int slots, a byte slot would truncate them. */
     public FrameSlotKind getSlotKind() {
-        return FrameSlotKind.Byte;
+        return FrameSlotKind.Int;
     }
 
     public Object getDefaultValue() {
         return '\0';
     }
+
+    @Override
+    public String toString() {
+        return "char";
+    }
 }
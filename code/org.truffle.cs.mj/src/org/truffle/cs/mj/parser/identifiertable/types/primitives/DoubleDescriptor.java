@@ -6,10 +6,13 @@ import com.oracle.truffle.api.frame.FrameSlotKind;
 
 public class DoubleDescriptor implements TypeDescriptor {
 
-    private static DoubleDescriptor instance = new DoubleDescriptor();
+    public static final DoubleDescriptor INSTANCE = new DoubleDescriptor();
+
+    protected DoubleDescriptor() {
+    }
 
     public DoubleDescriptor getInstance() {
-        return instance;
+        return INSTANCE;
     }
 
     public FrameSlotKind getSlotKind() {
@@ -19,4 +22,9 @@ public class DoubleDescriptor implements TypeDescriptor {
     public Object getDefaultValue() {
         return 0.0;
     }
+
+    @Override
+    public String toString() {
+        return "double";
+    }
 }
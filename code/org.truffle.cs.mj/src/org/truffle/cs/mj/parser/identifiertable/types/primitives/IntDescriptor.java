@@ -4,13 +4,14 @@ import org.truffle.cs.mj.parser.identifiertable.types.TypeDescriptor;
 
 import com.oracle.truffle.api.frame.FrameSlotKind;
 
-import sun.net.www.content.audio.wav;
-
 public class IntDescriptor implements TypeDescriptor {
-    private static IntDescriptor instance = new IntDescriptor();
+    public static final IntDescriptor INSTANCE = new IntDescriptor();
+
+    protected IntDescriptor() {
+    }
 
     public IntDescriptor getInstance() {
-        return instance;
+        return INSTANCE;
     }
 
     public FrameSlotKind getSlotKind() {
@@ -20,4 +21,9 @@ public class IntDescriptor implements TypeDescriptor {
     public Object getDefaultValue() {
         return 0;
     }
+
+    @Override
+    public String toString() {
+        return "int";
+    }
 }
@@ -3,11 +3,14 @@ package org.truffle.cs.mj.parser.identifiertable.types.primitives.constants;
 import org.truffle.cs.mj.parser.identifiertable.types.primitives.CharDescriptor;
 
 public class ConstantCharDescriptor extends CharDescriptor implements ConstantTypeDescriptor {
-    private static ConstantCharDescriptor instance = new ConstantCharDescriptor();
+    public static final ConstantCharDescriptor INSTANCE = new ConstantCharDescriptor();
+
+    private ConstantCharDescriptor() {
+    }
 
     @Override
     public ConstantCharDescriptor getInstance() {
-        return instance;
+        return INSTANCE;
     }
 
 }
@@ -4,11 +4,14 @@ import org.truffle.cs.mj.parser.identifiertable.types.primitives.DoubleDescripto
 
 public class ConstantDoubleDescriptor extends DoubleDescriptor implements ConstantTypeDescriptor {
 
-    private static ConstantDoubleDescriptor instance = new ConstantDoubleDescriptor();
+    public static final ConstantDoubleDescriptor INSTANCE = new ConstantDoubleDescriptor();
+
+    private ConstantDoubleDescriptor() {
+    }
 
     @Override
     public ConstantDoubleDescriptor getInstance() {
-        return instance;
+        return INSTANCE;
     }
 
 }
@@ -0,0 +1,91 @@
+package org.truffle.cs.mj.tools;
+
+import java.io.PrintStream;
+import java.util.List;
+
+import org.graalvm.options.OptionCategory;
+import org.graalvm.options.OptionDescriptors;
+import org.graalvm.options.OptionKey;
+import org.graalvm.options.OptionStability;
+import org.truffle.cs.mj.nodes.MJExpressionNode;
+import org.truffle.cs.mj.nodes.MJTags;
+
+import com.oracle.truffle.api.Option;
+import com.oracle.truffle.api.frame.VirtualFrame;
+import com.oracle.truffle.api.instrumentation.EventContext;
+import com.oracle.truffle.api.instrumentation.ExecutionEventNode;
+import com.oracle.truffle.api.instrumentation.ExecutionEventNodeFactory;
+import com.oracle.truffle.api.instrumentation.SourceSectionFilter;
+import com.oracle.truffle.api.instrumentation.TruffleInstrument;
+
+/**
+ * Counts the arrays and class instances every <code>new</code> of a MicroJava++ program allocates,
+ * and estimates their size, see {@link MJAllocationProfiler}. The instrument attaches to the nodes
+ * tagged {@link MJTags.AllocationTag} and looks at the value they return.
+ * <p>
+ * Enabled with <code>--mj-allocation</code>, which also prints the sites that allocated the most bytes
+ * when the engine closes; the profiler is available as a service for snapshots while the program
+ * runs.
+ */
+@TruffleInstrument.Registration(id = MJAllocationInstrument.ID, name = "MicroJava++ allocations", services = MJAllocationProfiler.class)
+public final class MJAllocationInstrument extends TruffleInstrument {
+
+    public static final String ID = "mj-allocation";
+
+    @Option(name = "", help = "Count allocations and estimated bytes per MicroJava++ allocation site.", category = OptionCategory.USER, stability = OptionStability.STABLE) //
+    static final OptionKey<Boolean> ENABLED = new OptionKey<>(false);
+
+    @Option(name = "top", help = "Number of allocation sites --mj-allocation prints at exit.", category = OptionCategory.USER, stability = OptionStability.STABLE) //
+    static final OptionKey<Integer> TOP = new OptionKey<>(10);
+
+    private final MJAllocationProfiler profiler = new MJAllocationProfiler();
+    private boolean enabled;
+
+    @Override
+    protected OptionDescriptors getOptionDescriptors() {
+        return new MJAllocationInstrumentOptionDescriptors();
+    }
+
+    @Override
+    protected void onCreate(Env env) {
+        env.registerService(profiler);
+        enabled = env.getOptions().get(ENABLED);
+        if (!enabled) {
+            return;
+        }
+        env.getInstrumenter().attachExecutionEventFactory(SourceSectionFilter.newBuilder().tagIs(MJTags.AllocationTag.class).build(), new ExecutionEventNodeFactory() {
+            public ExecutionEventNode create(EventContext context) {
+                MJExpressionNode allocation = (MJExpressionNode) context.getInstrumentedNode();
+                return new AllocationEventNode(profiler.site(context.getInstrumentedSourceSection(), allocation.getType()));
+            }
+        });
+    }
+
+    @Override
+    protected void onDispose(Env env) {
+        if (!enabled) {
+            return;
+        }
+        List<MJAllocationProfiler.Allocations> sites = profiler.snapshot();
+        PrintStream out = new PrintStream(env.err(), true);
+        out.println("[mj] allocation sites by estimated bytes:");
+        int top = env.getOptions().get(TOP);
+        for (int i = 0; i < Math.min(top, sites.size()); i++) {
+            out.println("[mj]   " + sites.get(i));
+        }
+        out.flush();
+    }
+
+    private static final class AllocationEventNode extends ExecutionEventNode {
+        private final MJAllocationProfiler.Site site;
+
+        AllocationEventNode(MJAllocationProfiler.Site site) {
+            this.site = site;
+        }
+
+        @Override
+        protected void onReturnValue(VirtualFrame frame, Object result) {
+            site.record(MJAllocationProfiler.length(result));
+        }
+    }
+}
@@ -0,0 +1,200 @@
+package org.truffle.cs.mj.tools;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.truffle.cs.mj.parser.identifiertable.types.ArrayTypeDescriptor;
+import org.truffle.cs.mj.parser.identifiertable.types.ClassTypeDescriptor;
+import org.truffle.cs.mj.parser.identifiertable.types.ClassTypeDescriptor.FieldDescriptor;
+import org.truffle.cs.mj.parser.identifiertable.types.StructArray;
+import org.truffle.cs.mj.parser.identifiertable.types.TypeDescriptor;
+import org.truffle.cs.mj.parser.identifiertable.types.primitives.BoolDescriptor;
+import org.truffle.cs.mj.parser.identifiertable.types.primitives.CharDescriptor;
+import org.truffle.cs.mj.parser.identifiertable.types.primitives.DoubleDescriptor;
+import org.truffle.cs.mj.parser.identifiertable.types.primitives.IntDescriptor;
+
+import com.oracle.truffle.api.CompilerDirectives.TruffleBoundary;
+import com.oracle.truffle.api.source.SourceSection;
+
+/**
+ * Allocations per site, as gathered by {@link MJAllocationInstrument}. Host code gets it from the
+ * engine with <code>engine.getInstruments().get("mj-allocation").lookup(MJAllocationProfiler.class)</code>
+ * and can take a {@link #snapshot()} at any time.
+ * <p>
+ * Sizes are estimates for a 64-bit VM with compressed references: a 16 byte header per object and
+ * array, 4 bytes per reference, and 8 bytes per field of a class instance.
+ */
+public final class MJAllocationProfiler {
+
+    private static final int HEADER_BYTES = 16;
+    private static final int REFERENCE_BYTES = 4;
+    private static final int FIELD_BYTES = 8;
+
+    private final Map<SourceSection, Site> sites = new LinkedHashMap<>();
+
+    MJAllocationProfiler() {
+    }
+
+    /** All sites that allocated, the most bytes first. */
+    public synchronized List<Allocations> snapshot() {
+        List<Allocations> result = new ArrayList<>();
+        for (Site site : sites.values()) {
+            long count = site.count.sum();
+            if (count > 0) {
+                result.add(new Allocations(site.location, site.description, count, site.bytes.sum()));
+            }
+        }
+        Collections.sort(result, new Comparator<Allocations>() {
+            public int compare(Allocations a, Allocations b) {
+                return Long.compare(b.getBytes(), a.getBytes());
+            }
+        });
+        return result;
+    }
+
+    /** Forgets everything allocated so far. */
+    public synchronized void clear() {
+        for (Site site : sites.values()) {
+            site.count.reset();
+            site.bytes.reset();
+        }
+    }
+
+    /** The site allocating values of <code>type</code> at <code>section</code>. */
+    @TruffleBoundary
+    synchronized Site site(SourceSection section, TypeDescriptor type) {
+        Site site = sites.get(section);
+        if (site == null) {
+            String location = section.getSource().getName() + ":" + section.getStartLine() + ":" + section.getStartColumn();
+            if (type instanceof ArrayTypeDescriptor) {
+                site = arraySite(location, ((ArrayTypeDescriptor) type).getElementType());
+            } else {
+                ClassTypeDescriptor classType = (ClassTypeDescriptor) type;
+                site = new Site(location, "new " + classType.getName(), align(HEADER_BYTES + FIELD_BYTES * classType.getFields().size()), 0);
+            }
+            sites.put(section, site);
+        }
+        return site;
+    }
+
+    private static Site arraySite(String location, TypeDescriptor elementType) {
+        String description = "new " + elementType + "[]";
+        if (elementType instanceof ClassTypeDescriptor && ((ClassTypeDescriptor) elementType).isStruct()) {
+            // the StructArray, its column table and one primitive array per field
+            List<FieldDescriptor> fields = ((ClassTypeDescriptor) elementType).getFields();
+            long fixed = HEADER_BYTES * 2 + align(HEADER_BYTES + REFERENCE_BYTES * fields.size());
+            long perElement = 0;
+            for (FieldDescriptor field : fields) {
+                fixed += HEADER_BYTES;
+                perElement += field.getType() instanceof DoubleDescriptor ? 8 : field.getType() instanceof BoolDescriptor ? 1 : 4;
+            }
+            return new Site(location, description, fixed, perElement);
+        }
+        return new Site(location, description, HEADER_BYTES, elementBytes(elementType));
+    }
+
+    private static long elementBytes(TypeDescriptor elementType) {
+        if (elementType instanceof IntDescriptor) {
+            return 4;
+        } else if (elementType instanceof CharDescriptor) {
+            return 2;
+        } else if (elementType instanceof DoubleDescriptor) {
+            return 8;
+        } else if (elementType instanceof BoolDescriptor) {
+            return 1;
+        }
+        return REFERENCE_BYTES;
+    }
+
+    private static long align(long bytes) {
+        return (bytes + 7) & ~7L;
+    }
+
+    /** Length of a new array, 0 for a class instance. */
+    static int length(Object value) {
+        if (value instanceof int[]) {
+            return ((int[]) value).length;
+        } else if (value instanceof char[]) {
+            return ((char[]) value).length;
+        } else if (value instanceof double[]) {
+            return ((double[]) value).length;
+        } else if (value instanceof boolean[]) {
+            return ((boolean[]) value).length;
+        } else if (value instanceof Object[]) {
+            return ((Object[]) value).length;
+        } else if (value instanceof StructArray) {
+            return ((StructArray) value).getLength();
+        }
+        return 0;
+    }
+
+    /**
+     * An allocation site with its counts so far. Program threads record while host code takes
+     * snapshots, so the counts are adders.
+     */
+    static final class Site {
+        final String location;
+        final String description;
+        final long fixedBytes;
+        final long bytesPerElement;
+        final LongAdder count = new LongAdder();
+        final LongAdder bytes = new LongAdder();
+
+        Site(String location, String description, long fixedBytes, long bytesPerElement) {
+            this.location = location;
+            this.description = description;
+            this.fixedBytes = fixedBytes;
+            this.bytesPerElement = bytesPerElement;
+        }
+
+        @TruffleBoundary
+        void record(int length) {
+            count.increment();
+            bytes.add(fixedBytes + align(bytesPerElement * length));
+        }
+    }
+
+    /** What one site allocated, at the time of a {@link MJAllocationProfiler#snapshot()}. */
+    public static final class Allocations {
+        private final String location;
+        private final String description;
+        private final long count;
+        private final long bytes;
+
+        Allocations(String location, String description, long count, long bytes) {
+            this.location = location;
+            this.description = description;
+            this.count = count;
+            this.bytes = bytes;
+        }
+
+        /** <code>source:line:column</code> of the <code>new</code>. */
+        public String getLocation() {
+            return location;
+        }
+
+        /** The allocation, e.g. <code>new int[]</code>. */
+        public String getDescription() {
+            return description;
+        }
+
+        public long getCount() {
+            return count;
+        }
+
+        /** Estimated size of everything the site allocated. */
+        public long getBytes() {
+            return bytes;
+        }
+
+        @Override
+        public String toString() {
+            return location + " " + description + ": " + count + " allocations, " + bytes + " bytes";
+        }
+    }
+}
@@ -0,0 +1,238 @@
+package org.truffle.cs.mj.tools;
+
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.truffle.cs.mj.main.MJContext;
+
+import com.oracle.truffle.api.Assumption;
+import com.oracle.truffle.api.CallTarget;
+import com.oracle.truffle.api.CompilerDirectives;
+import com.oracle.truffle.api.CompilerDirectives.TruffleBoundary;
+import com.oracle.truffle.api.RootCallTarget;
+import com.oracle.truffle.api.Truffle;
+import com.oracle.truffle.api.nodes.Node;
+import com.oracle.truffle.api.nodes.RootNode;
+import com.oracle.truffle.api.source.SourceSection;
+
+/**
+ * Log of the compilation events a MicroJava++ program causes, attributed to its functions and lines:
+ * <ul>
+ * <li><code>compiled</code>: a function is entered as the root of compiled code for the first time,
+ * or again after it was deoptimized;</li>
+ * <li><code>deopt</code>: compiled code left for the interpreter at one of the nodes' own transfer
+ * points, with the reason, see {@link #transferToInterpreterAndInvalidate};</li>
+ * <li><code>invalidate</code>: a speculation of the nodes was invalidated;</li>
+ * <li><code>interpreted</code>: a call target that was entered as the root of compiled code is
+ * entered in the interpreter again, so its code was invalidated, also by causes the nodes do not
+ * report, such as a specialization change. Copies of a function inlined into other compiled code do
+ * not count.</li>
+ * </ul>
+ * Events are kept per call target. A function is flagged once its deopts and re-entries reach the
+ * threshold, and the log ends with counts per function.
+ * <p>
+ * Every context with <code>--mj.compilation-log</code> has a log of its own, kept by its
+ * {@link MJContext}. Until any log is started, the hooks are guarded by an assumption and compile to
+ * plain transfers to the interpreter.
+ */
+public final class MJCompilationLog {
+
+    private static final Assumption neverStarted = Truffle.getRuntime().createAssumption("MicroJava++ compilation log never started");
+
+    private final PrintStream out;
+    private final boolean ownsOut;
+    private final int threshold;
+    private final Map<CallTarget, FunctionEvents> functions = new LinkedHashMap<>();
+    private boolean stopped;
+
+    private MJCompilationLog(PrintStream out, boolean ownsOut, int threshold) {
+        this.out = out;
+        this.ownsOut = ownsOut;
+        this.threshold = threshold;
+    }
+
+    /**
+     * A log to the file <code>output</code>, or to <code>fallback</code> if it is empty, which flags
+     * functions once they deoptimize <code>threshold</code> times.
+     */
+    public static MJCompilationLog start(String output, OutputStream fallback, int threshold) {
+        MJCompilationLog log;
+        if (output.isEmpty()) {
+            log = new MJCompilationLog(new PrintStream(fallback, true), false, threshold);
+        } else {
+            try {
+                log = new MJCompilationLog(new PrintStream(new FileOutputStream(output), true), true, threshold);
+            } catch (IOException e) {
+                throw new Error("Cannot write compilation log to " + output + ": " + e.getMessage());
+            }
+        }
+        neverStarted.invalidate();
+        return log;
+    }
+
+    /** Stops logging and prints the counts per function. */
+    public synchronized void stop() {
+        if (stopped) {
+            return;
+        }
+        stopped = true;
+        for (Map.Entry<CallTarget, FunctionEvents> entry : functions.entrySet()) {
+            FunctionEvents events = entry.getValue();
+            out.println("[mj] summary " + name(entry.getKey()) + ": " + events.compilations + " compiled, " + events.deopts + " deopts, " + events.reentries + " interpreted again" +
+                            (events.flagged ? ", repeatedly deoptimized" : ""));
+        }
+        if (ownsOut) {
+            out.close();
+        } else {
+            out.flush();
+        }
+    }
+
+    /** Called on every function entry. */
+    public static void enter(RootNode function) {
+        if (!neverStarted.isValid()) {
+            MJCompilationLog log = of(function);
+            if (log != null) {
+                boolean compiled = CompilerDirectives.inCompiledCode();
+                log.entered(function, compiled && CompilerDirectives.inCompilationRoot(), !compiled);
+            }
+        }
+    }
+
+    /**
+     * {@link CompilerDirectives#transferToInterpreterAndInvalidate()} that logs the deopt at
+     * <code>site</code> when it leaves compiled code.
+     */
+    public static void transferToInterpreterAndInvalidate(Node site, String reason) {
+        boolean compiled = CompilerDirectives.inCompiledCode();
+        CompilerDirectives.transferToInterpreterAndInvalidate();
+        if (compiled && !neverStarted.isValid()) {
+            MJCompilationLog log = of(site);
+            if (log != null) {
+                log.deoptimized(site, reason);
+            }
+        }
+    }
+
+    /** {@link CompilerDirectives#transferToInterpreter()} that logs the deopt at <code>site</code>. */
+    public static void transferToInterpreter(Node site, String reason) {
+        boolean compiled = CompilerDirectives.inCompiledCode();
+        CompilerDirectives.transferToInterpreter();
+        if (compiled && !neverStarted.isValid()) {
+            MJCompilationLog log = of(site);
+            if (log != null) {
+                log.deoptimized(site, reason);
+            }
+        }
+    }
+
+    /** Logs that the speculation <code>what</code> made at <code>site</code> no longer holds. */
+    public static void invalidated(Node site, String what) {
+        if (!neverStarted.isValid()) {
+            MJCompilationLog log = of(site);
+            if (log != null) {
+                log.logInvalidated(site, what);
+            }
+        }
+    }
+
+    /**
+     * Logs that the speculation <code>what</code> no longer holds, in <code>context</code>, which is
+     * <code>null</code> for a program run outside of an engine.
+     */
+    public static void invalidated(MJContext context, String what) {
+        if (!neverStarted.isValid() && context != null && context.getCompilationLog() != null) {
+            context.getCompilationLog().logInvalidated(null, what);
+        }
+    }
+
+    private static MJCompilationLog of(Node site) {
+        MJContext context = MJContext.get(site);
+        return context == null ? null : context.getCompilationLog();
+    }
+
+    @TruffleBoundary
+    private synchronized void entered(RootNode function, boolean compiledRoot, boolean interpreted) {
+        if (stopped) {
+            return;
+        }
+        FunctionEvents events = events(function.getCallTarget());
+        if (compiledRoot && !events.compiled) {
+            events.compiled = true;
+            events.compilations++;
+            log("compiled", function, function, null);
+        } else if (interpreted && events.compiled) {
+            events.compiled = false;
+            events.reentries++;
+            log("interpreted", function, function, "compiled code was invalidated");
+            checkRepeated(function, events);
+        }
+    }
+
+    @TruffleBoundary
+    private synchronized void deoptimized(Node site, String reason) {
+        if (stopped) {
+            return;
+        }
+        RootNode function = site.getRootNode();
+        log("deopt", function, site, reason);
+        if (function != null) {
+            FunctionEvents events = events(function.getCallTarget());
+            events.deopts++;
+            checkRepeated(function, events);
+        }
+    }
+
+    @TruffleBoundary
+    private synchronized void logInvalidated(Node site, String what) {
+        if (!stopped) {
+            log("invalidate", site == null ? null : site.getRootNode(), site, what);
+        }
+    }
+
+    private FunctionEvents events(CallTarget target) {
+        FunctionEvents events = functions.get(target);
+        if (events == null) {
+            events = new FunctionEvents();
+            functions.put(target, events);
+        }
+        return events;
+    }
+
+    private static String name(CallTarget target) {
+        return target instanceof RootCallTarget ? ((RootCallTarget) target).getRootNode().getName() : String.valueOf(target);
+    }
+    private void checkRepeated(RootNode function, FunctionEvents events) {
+        if (!events.flagged && events.deopts + events.reentries >= threshold) {
+            events.flagged = true;
+            out.println("[mj] warning " + function.getName() + " deoptimized " + (events.deopts + events.reentries) + " times");
+        }
+    }
+
+    private void log(String event, RootNode function, Node location, String detail) {
+        StringBuilder line = new StringBuilder("[mj] ").append(event);
+        if (function != null) {
+            line.append(' ').append(function.getName());
+        }
+        SourceSection section = location == null ? null : location.getEncapsulatingSourceSection();
+        if (section != null && section.isAvailable()) {
+            line.append(" at ").append(section.getSource().getName()).append(':').append(section.getStartLine());
+        }
+        if (detail != null) {
+            line.append(": ").append(detail);
+        }
+        out.println(line);
+    }
+
+    private static final class FunctionEvents {
+        boolean compiled;
+        boolean flagged;
+        int compilations;
+        int deopts;
+        int reentries;
+    }
+}
@@ -0,0 +1,266 @@
+package org.truffle.cs.mj.tools;
+
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.graalvm.options.OptionCategory;
+import org.graalvm.options.OptionDescriptors;
+import org.graalvm.options.OptionKey;
+import org.graalvm.options.OptionStability;
+
+import com.oracle.truffle.api.CompilerDirectives.TruffleBoundary;
+import com.oracle.truffle.api.Option;
+import com.oracle.truffle.api.frame.VirtualFrame;
+import com.oracle.truffle.api.instrumentation.EventContext;
+import com.oracle.truffle.api.instrumentation.ExecutionEventNode;
+import com.oracle.truffle.api.instrumentation.ExecutionEventNodeFactory;
+import com.oracle.truffle.api.instrumentation.LoadSourceSectionEvent;
+import com.oracle.truffle.api.instrumentation.LoadSourceSectionListener;
+import com.oracle.truffle.api.instrumentation.SourceSectionFilter;
+import com.oracle.truffle.api.instrumentation.StandardTags;
+import com.oracle.truffle.api.instrumentation.TruffleInstrument;
+import com.oracle.truffle.api.nodes.RootNode;
+import com.oracle.truffle.api.source.Source;
+import com.oracle.truffle.api.source.SourceSection;
+
+/**
+ * Counts how often every statement and function of a MicroJava++ program runs, and writes two
+ * reports when the engine closes:
+ * <ul>
+ * <li>an annotated copy of each source, every line prefixed with its count, <code>#####</code> for a
+ * line whose statements never ran and <code>-</code> for a line without statements, followed by the
+ * hottest lines and the statements that never ran;</li>
+ * <li>an LCOV tracefile with the function and line counts, for coverage tools.</li>
+ * </ul>
+ * The count of a line is that of its most executed statement. Statements are known from the moment
+ * their function is parsed, so code that never runs is reported as well.
+ * <p>
+ * Enabled with <code>--mj-coverage</code>. A counter is a plain field increment in the compiled code
+ * of the statement, cheap enough to leave on for canary runs.
+ */
+@TruffleInstrument.Registration(id = MJCoverageInstrument.ID, name = "MicroJava++ coverage")
+public final class MJCoverageInstrument extends TruffleInstrument {
+
+    public static final String ID = "mj-coverage";
+
+    /** Number of lines listed as hottest in the annotated report. */
+    private static final int HOT_LINES = 10;
+
+    @Option(name = "", help = "Count executions per MicroJava++ line and statement and write coverage reports.", category = OptionCategory.USER, stability = OptionStability.STABLE) //
+    static final OptionKey<Boolean> ENABLED = new OptionKey<>(false);
+
+    @Option(name = "annotated", help = "File the annotated sources of --mj-coverage are written to.", category = OptionCategory.USER, stability = OptionStability.STABLE) //
+    static final OptionKey<String> ANNOTATED = new OptionKey<>("mj-coverage.txt");
+
+    @Option(name = "lcov", help = "File the LCOV tracefile of --mj-coverage is written to.", category = OptionCategory.USER, stability = OptionStability.STABLE) //
+    static final OptionKey<String> LCOV = new OptionKey<>("mj-coverage.info");
+
+    private final Map<Source, SourceCoverage> sources = new LinkedHashMap<>();
+    private boolean enabled;
+
+    @Override
+    protected OptionDescriptors getOptionDescriptors() {
+        return new MJCoverageInstrumentOptionDescriptors();
+    }
+
+    @Override
+    protected void onCreate(Env env) {
+        enabled = env.getOptions().get(ENABLED);
+        if (!enabled) {
+            return;
+        }
+        SourceSectionFilter statements = SourceSectionFilter.newBuilder().tagIs(StandardTags.StatementTag.class).build();
+        SourceSectionFilter functions = SourceSectionFilter.newBuilder().tagIs(StandardTags.RootTag.class).build();
+        env.getInstrumenter().attachLoadSourceSectionListener(statements, new LoadSourceSectionListener() {
+            public void onLoad(LoadSourceSectionEvent event) {
+                counter(event.getSourceSection(), event.getNode().getRootNode(), false);
+            }
+        }, true);
+        env.getInstrumenter().attachLoadSourceSectionListener(functions, new LoadSourceSectionListener() {
+            public void onLoad(LoadSourceSectionEvent event) {
+                counter(event.getSourceSection(), event.getNode().getRootNode(), true);
+            }
+        }, true);
+        env.getInstrumenter().attachExecutionEventFactory(statements, new ExecutionEventNodeFactory() {
+            public ExecutionEventNode create(EventContext context) {
+                return new CountingNode(counter(context.getInstrumentedSourceSection(), context.getInstrumentedNode().getRootNode(), false));
+            }
+        });
+        env.getInstrumenter().attachExecutionEventFactory(functions, new ExecutionEventNodeFactory() {
+            public ExecutionEventNode create(EventContext context) {
+                return new CountingNode(counter(context.getInstrumentedSourceSection(), context.getInstrumentedNode().getRootNode(), true));
+            }
+        });
+    }
+
+    @Override
+    protected void onDispose(Env env) {
+        if (!enabled) {
+            return;
+        }
+        writeAnnotated(env.getOptions().get(ANNOTATED));
+        writeLcov(env.getOptions().get(LCOV));
+    }
+
+    /** The counter of the statement or function at <code>section</code>, shared by all its copies. */
+    @TruffleBoundary
+    private synchronized Counter counter(SourceSection section, RootNode root, boolean function) {
+        SourceCoverage coverage = sources.get(section.getSource());
+        if (coverage == null) {
+            coverage = new SourceCoverage(section.getSource());
+            sources.put(section.getSource(), coverage);
+        }
+        Map<SourceSection, Counter> counters = function ? coverage.functions : coverage.statements;
+        Counter counter = counters.get(section);
+        if (counter == null) {
+            counter = new Counter(section, function && root != null ? root.getName() : null);
+            counters.put(section, counter);
+        }
+        return counter;
+    }
+
+    private synchronized void writeAnnotated(String output) {
+        try (PrintWriter out = new PrintWriter(new FileWriter(output))) {
+            for (SourceCoverage coverage : sources.values()) {
+                Map<Integer, Long> lines = coverage.lineCounts();
+                Source source = coverage.source;
+                out.println("==> " + name(source) + ": " + coverage.coveredLines(lines) + " of " + lines.size() + " lines executed");
+                for (int line = 1; line <= source.getLineCount(); line++) {
+                    Long count = lines.get(line);
+                    String prefix = count == null ? "-" : count == 0 ? "#####" : String.valueOf(count);
+                    out.println(String.format("%10s: %4d: %s", prefix, line, source.getCharacters(line)));
+                }
+                out.println();
+                out.println("Hottest lines:");
+                List<Map.Entry<Integer, Long>> hot = new ArrayList<>(lines.entrySet());
+                Collections.sort(hot, new Comparator<Map.Entry<Integer, Long>>() {
+                    public int compare(Map.Entry<Integer, Long> a, Map.Entry<Integer, Long> b) {
+                        return Long.compare(b.getValue(), a.getValue());
+                    }
+                });
+                for (int i = 0; i < Math.min(HOT_LINES, hot.size()) && hot.get(i).getValue() > 0; i++) {
+                    int line = hot.get(i).getKey();
+                    out.println(String.format("%10d: %4d: %s", hot.get(i).getValue(), line, source.getCharacters(line).toString().trim()));
+                }
+                out.println();
+                out.println("Never executed:");
+                for (Counter statement : coverage.statements.values()) {
+                    if (statement.count == 0) {
+                        out.println(String.format("%4d:%d: %s", statement.section.getStartLine(), statement.section.getStartColumn(), firstLine(statement.section)));
+                    }
+                }
+                for (Counter function : coverage.functions.values()) {
+                    if (function.count == 0) {
+                        out.println(String.format("%4d:%d: function %s", function.section.getStartLine(), function.section.getStartColumn(), function.name));
+                    }
+                }
+                out.println();
+            }
+        } catch (IOException e) {
+            throw new Error("Cannot write coverage to " + output + ": " + e.getMessage());
+        }
+    }
+
+    private synchronized void writeLcov(String output) {
+        try (PrintWriter out = new PrintWriter(new FileWriter(output))) {
+            for (SourceCoverage coverage : sources.values()) {
+                Map<Integer, Long> lines = coverage.lineCounts();
+                out.println("TN:");
+                out.println("SF:" + (coverage.source.getPath() != null ? coverage.source.getPath() : coverage.source.getName()));
+                int hitFunctions = 0;
+                for (Counter function : coverage.functions.values()) {
+                    out.println("FN:" + function.section.getStartLine() + "," + function.name);
+                }
+                for (Counter function : coverage.functions.values()) {
+                    out.println("FNDA:" + function.count + "," + function.name);
+                    if (function.count > 0) {
+                        hitFunctions++;
+                    }
+                }
+                out.println("FNF:" + coverage.functions.size());
+                out.println("FNH:" + hitFunctions);
+                for (Map.Entry<Integer, Long> line : lines.entrySet()) {
+                    out.println("DA:" + line.getKey() + "," + line.getValue());
+                }
+                out.println("LF:" + lines.size());
+                out.println("LH:" + coverage.coveredLines(lines));
+                out.println("end_of_record");
+            }
+        } catch (IOException e) {
+            throw new Error("Cannot write coverage to " + output + ": " + e.getMessage());
+        }
+    }
+
+    private static String name(Source source) {
+        return source.getPath() != null ? source.getPath() : source.getName();
+    }
+
+    private static String firstLine(SourceSection section) {
+        String text = section.getCharacters().toString().trim();
+        int newline = text.indexOf('\n');
+        return newline < 0 ? text : text.substring(0, newline).trim() + " ...";
+    }
+
+    /** Executions of one statement or function. */
+    static final class Counter {
+        final SourceSection section;
+        final String name;
+        long count;
+
+        Counter(SourceSection section, String name) {
+            this.section = section;
+            this.name = name;
+        }
+    }
+
+    private static final class SourceCoverage {
+        final Source source;
+        final Map<SourceSection, Counter> statements = new LinkedHashMap<>();
+        final Map<SourceSection, Counter> functions = new LinkedHashMap<>();
+
+        SourceCoverage(Source source) {
+            this.source = source;
+        }
+
+        /** The count of every line that starts a statement. */
+        Map<Integer, Long> lineCounts() {
+            Map<Integer, Long> lines = new TreeMap<>();
+            for (Counter statement : statements.values()) {
+                Long count = lines.get(statement.section.getStartLine());
+                lines.put(statement.section.getStartLine(), count == null ? statement.count : Math.max(count, statement.count));
+            }
+            return lines;
+        }
+
+        int coveredLines(Map<Integer, Long> lines) {
+            int covered = 0;
+            for (long count : lines.values()) {
+                if (count > 0) {
+                    covered++;
+                }
+            }
+            return covered;
+        }
+    }
+
+    private static final class CountingNode extends ExecutionEventNode {
+        private final Counter counter;
+
+        CountingNode(Counter counter) {
+            this.counter = counter;
+        }
+
+        @Override
+        protected void onEnter(VirtualFrame frame) {
+            counter.count++;
+        }
+    }
+}
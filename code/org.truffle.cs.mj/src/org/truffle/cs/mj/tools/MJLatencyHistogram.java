@@ -0,0 +1,72 @@
+package org.truffle.cs.mj.tools;
+
+/**
+ * Latencies in nanoseconds, bucketed like an HDR histogram: values below 16 get a bucket each, and
+ * every power of two above is split into 16 equal buckets, so a percentile is exact to within 1/16
+ * of its value at any magnitude while the histogram stays a fixed array of counts.
+ */
+public final class MJLatencyHistogram {
+
+    private static final int SUB_BUCKET_BITS = 4;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+
+    private final long[] counts = new long[(64 - SUB_BUCKET_BITS + 1) * SUB_BUCKETS];
+    private long count;
+    private long total;
+    private long max;
+
+    public synchronized void record(long nanos) {
+        long value = Math.max(nanos, 0);
+        counts[index(value)]++;
+        count++;
+        total += value;
+        max = Math.max(max, value);
+    }
+
+    public synchronized long getCount() {
+        return count;
+    }
+
+    public synchronized long getTotal() {
+        return total;
+    }
+
+    public synchronized long getMax() {
+        return max;
+    }
+
+    /** The largest value of the bucket holding the <code>percentile</code>th value, 0 if empty. */
+    public synchronized long getPercentile(double percentile) {
+        if (count == 0) {
+            return 0;
+        }
+        long rank = Math.max(1, (long) Math.ceil(count * percentile / 100));
+        long seen = 0;
+        for (int i = 0; i < counts.length; i++) {
+            seen += counts[i];
+            if (seen >= rank) {
+                return Math.min(highestValue(i), max);
+            }
+        }
+        return max;
+    }
+
+    private static int index(long value) {
+        if (value < SUB_BUCKETS) {
+            return (int) value;
+        }
+        int exponent = 63 - Long.numberOfLeadingZeros(value);
+        int subBucket = (int) (value >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+        return (exponent - SUB_BUCKET_BITS + 1) * SUB_BUCKETS + subBucket;
+    }
+
+    private static long highestValue(int index) {
+        if (index < SUB_BUCKETS) {
+            return index;
+        }
+        int exponent = index / SUB_BUCKETS + SUB_BUCKET_BITS - 1;
+        long subBucket = index % SUB_BUCKETS;
+        long width = 1L << (exponent - SUB_BUCKET_BITS);
+        return ((SUB_BUCKETS + subBucket) << (exponent - SUB_BUCKET_BITS)) + width - 1;
+    }
+}
@@ -0,0 +1,179 @@
+package org.truffle.cs.mj.tools;
+
+import java.util.Arrays;
+
+import org.truffle.cs.mj.nodes.MJMemoTable;
+
+import com.oracle.truffle.api.CompilerDirectives.TruffleBoundary;
+
+/**
+ * The metrics {@link MJMetricsInstrument} gathers, as standard MBeans. They are updated by the
+ * program thread and read by JMX clients without synchronization, so a reading may lag behind by a
+ * call.
+ */
+public final class MJMetrics {
+
+    private MJMetrics() {
+    }
+
+    public interface FunctionMetricsMBean {
+        String getFunction();
+
+        /** Calls that entered the function; memoized calls of a <code>pure</code> function do not. */
+        long getCalls();
+
+        /** Time spent in the function including its callees, over all calls. */
+        long getTotalNanos();
+
+        long getMeanNanos();
+
+        long getP50Nanos();
+
+        long getP90Nanos();
+
+        long getP99Nanos();
+
+        long getMaxNanos();
+    }
+
+    /** Calls of one function and their latencies, from entry to return. */
+    public static final class FunctionMetrics implements FunctionMetricsMBean {
+        private final String function;
+        private final MJLatencyHistogram latencies = new MJLatencyHistogram();
+        // entry times of the active calls, the last one innermost
+        private long[] entries = new long[16];
+        private int depth;
+
+        FunctionMetrics(String function) {
+            this.function = function;
+        }
+
+        @TruffleBoundary
+        void enter() {
+            if (depth == entries.length) {
+                entries = Arrays.copyOf(entries, depth * 2);
+            }
+            entries[depth++] = System.nanoTime();
+        }
+
+        @TruffleBoundary
+        void exit() {
+            if (depth > 0) {
+                latencies.record(System.nanoTime() - entries[--depth]);
+            }
+        }
+
+        public String getFunction() {
+            return function;
+        }
+
+        public long getCalls() {
+            return latencies.getCount();
+        }
+
+        public long getTotalNanos() {
+            return latencies.getTotal();
+        }
+
+        public long getMeanNanos() {
+            long calls = latencies.getCount();
+            return calls == 0 ? 0 : latencies.getTotal() / calls;
+        }
+
+        public long getP50Nanos() {
+            return latencies.getPercentile(50);
+        }
+
+        public long getP90Nanos() {
+            return latencies.getPercentile(90);
+        }
+
+        public long getP99Nanos() {
+            return latencies.getPercentile(99);
+        }
+
+        public long getMaxNanos() {
+            return latencies.getMax();
+        }
+    }
+
+    public interface CallSiteMetricsMBean {
+        /** <code>source:line:column</code> of the call. */
+        String getLocation();
+
+        String getCaller();
+
+        String getCallee();
+
+        long getCalls();
+    }
+
+    /** Executions of one call, including those answered from a memo table or made as a tail call. */
+    public static final class CallSiteMetrics implements CallSiteMetricsMBean {
+        private final String location;
+        private final String caller;
+        private final String callee;
+        long calls;
+
+        CallSiteMetrics(String location, String caller, String callee) {
+            this.location = location;
+            this.caller = caller;
+            this.callee = callee;
+        }
+
+        public String getLocation() {
+            return location;
+        }
+
+        public String getCaller() {
+            return caller;
+        }
+
+        public String getCallee() {
+            return callee;
+        }
+
+        public long getCalls() {
+            return calls;
+        }
+    }
+
+    public interface MemoTableMBean {
+        String getFunction();
+
+        /** Calls answered from the table. */
+        long getHits();
+
+        /** Calls that had to run the function. */
+        long getMisses();
+
+        double getHitRate();
+    }
+
+    /** The memo table of a <code>pure</code> function. */
+    public static final class MemoTable implements MemoTableMBean {
+        private final String function;
+        private final MJMemoTable table;
+
+        MemoTable(String function, MJMemoTable table) {
+            this.function = function;
+            this.table = table;
+        }
+
+        public String getFunction() {
+            return function;
+        }
+
+        public long getHits() {
+            return table.getHits();
+        }
+
+        public long getMisses() {
+            return table.getMisses();
+        }
+
+        public double getHitRate() {
+            return table.getHitRate();
+        }
+    }
+}
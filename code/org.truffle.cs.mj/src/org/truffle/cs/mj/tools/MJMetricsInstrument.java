@@ -0,0 +1,195 @@
+package org.truffle.cs.mj.tools;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.graalvm.options.OptionCategory;
+import org.graalvm.options.OptionDescriptors;
+import org.graalvm.options.OptionKey;
+import org.graalvm.options.OptionStability;
+import org.truffle.cs.mj.nodes.MJFunction;
+import org.truffle.cs.mj.nodes.MJInvokeNode;
+import org.truffle.cs.mj.nodes.MJTailCallNode;
+
+import com.oracle.truffle.api.CallTarget;
+import com.oracle.truffle.api.CompilerDirectives.TruffleBoundary;
+import com.oracle.truffle.api.Option;
+import com.oracle.truffle.api.RootCallTarget;
+import com.oracle.truffle.api.frame.VirtualFrame;
+import com.oracle.truffle.api.instrumentation.EventContext;
+import com.oracle.truffle.api.instrumentation.ExecutionEventNode;
+import com.oracle.truffle.api.instrumentation.ExecutionEventNodeFactory;
+import com.oracle.truffle.api.instrumentation.SourceSectionFilter;
+import com.oracle.truffle.api.instrumentation.StandardTags;
+import com.oracle.truffle.api.instrumentation.TruffleInstrument;
+import com.oracle.truffle.api.nodes.Node;
+import com.oracle.truffle.api.nodes.RootNode;
+import com.oracle.truffle.api.source.SourceSection;
+
+/**
+ * Counts the calls of every MicroJava++ function and of every call site, and records how long each
+ * function call takes, see {@link MJMetrics}. The metrics are registered as MBeans of the platform
+ * MBean server, under <code>org.truffle.cs.mj:type=Function</code> and
+ * <code>org.truffle.cs.mj:type=CallSite</code>, so any JMX client can read them while the program
+ * runs. The hit rates of the memo tables of <code>pure</code> functions are registered under
+ * <code>org.truffle.cs.mj:type=MemoTable</code>.
+ * <p>
+ * Enabled with <code>--mj-metrics</code>. Only then does the instrument attach to the function bodies
+ * and calls, so programs run without it carry no trace of it.
+ */
+@TruffleInstrument.Registration(id = MJMetricsInstrument.ID, name = "MicroJava++ metrics")
+public final class MJMetricsInstrument extends TruffleInstrument {
+
+    public static final String ID = "mj-metrics";
+
+    private static final String DOMAIN = "org.truffle.cs.mj";
+
+    @Option(name = "", help = "Export call counts and latencies of MicroJava++ functions over JMX.", category = OptionCategory.USER, stability = OptionStability.STABLE) //
+    static final OptionKey<Boolean> ENABLED = new OptionKey<>(false);
+
+    private final Map<String, MJMetrics.FunctionMetrics> functions = new HashMap<>();
+    private final Map<String, MJMetrics.CallSiteMetrics> callSites = new HashMap<>();
+    private final List<ObjectName> registered = new ArrayList<>();
+
+    @Override
+    protected OptionDescriptors getOptionDescriptors() {
+        return new MJMetricsInstrumentOptionDescriptors();
+    }
+
+    @Override
+    protected void onCreate(Env env) {
+        if (!env.getOptions().get(ENABLED)) {
+            return;
+        }
+        env.getInstrumenter().attachExecutionEventFactory(SourceSectionFilter.newBuilder().tagIs(StandardTags.RootTag.class).build(), new ExecutionEventNodeFactory() {
+            public ExecutionEventNode create(EventContext context) {
+                return new FunctionEventNode(function(context));
+            }
+        });
+        env.getInstrumenter().attachExecutionEventFactory(SourceSectionFilter.newBuilder().tagIs(StandardTags.CallTag.class).build(), new ExecutionEventNodeFactory() {
+            public ExecutionEventNode create(EventContext context) {
+                return new CallSiteEventNode(callSite(context));
+            }
+        });
+    }
+
+    @Override
+    protected void onDispose(Env env) {
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        for (ObjectName name : registered) {
+            try {
+                server.unregisterMBean(name);
+            } catch (JMException e) {
+                // already gone
+            }
+        }
+        registered.clear();
+    }
+
+    /** The metrics of the function whose body <code>context</code> is, shared by all its copies. */
+    @TruffleBoundary
+    private synchronized MJMetrics.FunctionMetrics function(EventContext context) {
+        String function = qualifiedName(context.getInstrumentedNode().getRootNode(), context.getInstrumentedSourceSection());
+        MJMetrics.FunctionMetrics metrics = functions.get(function);
+        if (metrics == null) {
+            metrics = new MJMetrics.FunctionMetrics(function);
+            functions.put(function, metrics);
+            register("Function", function, metrics);
+            RootNode root = context.getInstrumentedNode().getRootNode();
+            if (root instanceof MJFunction && ((MJFunction) root).isPure()) {
+                register("MemoTable", function, new MJMetrics.MemoTable(function, ((MJFunction) root).getMemoTable()));
+            }
+        }
+        return metrics;
+    }
+
+    /** The metrics of the call <code>context</code> is, shared by all its copies. */
+    @TruffleBoundary
+    private synchronized MJMetrics.CallSiteMetrics callSite(EventContext context) {
+        SourceSection section = context.getInstrumentedSourceSection();
+        String location = section.getSource().getName() + ":" + section.getStartLine() + ":" + section.getStartColumn();
+        MJMetrics.CallSiteMetrics metrics = callSites.get(location);
+        if (metrics == null) {
+            RootNode caller = context.getInstrumentedNode().getRootNode();
+            metrics = new MJMetrics.CallSiteMetrics(location, qualifiedName(caller, section), callee(context.getInstrumentedNode(), caller));
+            callSites.put(location, metrics);
+            register("CallSite", location, metrics);
+        }
+        return metrics;
+    }
+
+    private static String qualifiedName(RootNode function, SourceSection section) {
+        String name = function == null ? "<unknown>" : function.getName();
+        return section == null ? name : section.getSource().getName() + ":" + name;
+    }
+
+    private static String callee(Node call, RootNode caller) {
+        CallTarget target = null;
+        if (call instanceof MJInvokeNode) {
+            target = ((MJInvokeNode) call).getCallTarget();
+        } else if (call instanceof MJTailCallNode) {
+            target = ((MJTailCallNode) call).getTarget();
+            if (target == null) {
+                return caller == null ? "<unknown>" : caller.getName();
+            }
+        }
+        return target instanceof RootCallTarget ? ((RootCallTarget) target).getRootNode().getName() : "<unknown>";
+    }
+
+    private void register(String type, String name, Object metrics) {
+        try {
+            ObjectName objectName = new ObjectName(DOMAIN + ":type=" + type + ",name=" + ObjectName.quote(name));
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            server.registerMBean(metrics, objectName);
+            registered.add(objectName);
+        } catch (JMException e) {
+            throw new Error("Cannot register metrics for " + name + ": " + e.getMessage());
+        }
+    }
+
+    /** Times every execution of a function body. */
+    private static final class FunctionEventNode extends ExecutionEventNode {
+        private final MJMetrics.FunctionMetrics metrics;
+
+        FunctionEventNode(MJMetrics.FunctionMetrics metrics) {
+            this.metrics = metrics;
+        }
+
+        @Override
+        protected void onEnter(VirtualFrame frame) {
+            metrics.enter();
+        }
+
+        @Override
+        protected void onReturnValue(VirtualFrame frame, Object result) {
+            metrics.exit();
+        }
+
+        @Override
+        protected void onReturnExceptional(VirtualFrame frame, Throwable exception) {
+            // also how return statements and tail calls leave the body
+            metrics.exit();
+        }
+    }
+
+    /** Counts every execution of a call. */
+    private static final class CallSiteEventNode extends ExecutionEventNode {
+        private final MJMetrics.CallSiteMetrics metrics;
+
+        CallSiteEventNode(MJMetrics.CallSiteMetrics metrics) {
+            this.metrics = metrics;
+        }
+
+        @Override
+        protected void onEnter(VirtualFrame frame) {
+            metrics.calls++;
+        }
+    }
+}
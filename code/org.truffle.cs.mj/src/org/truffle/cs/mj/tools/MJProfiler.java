@@ -0,0 +1,155 @@
+package org.truffle.cs.mj.tools;
+
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.truffle.cs.mj.main.MJContext;
+import org.truffle.cs.mj.nodes.MJFunction;
+
+import com.oracle.truffle.api.Assumption;
+import com.oracle.truffle.api.CompilerDirectives.TruffleBoundary;
+import com.oracle.truffle.api.RootCallTarget;
+import com.oracle.truffle.api.Truffle;
+import com.oracle.truffle.api.TruffleRuntime;
+import com.oracle.truffle.api.frame.FrameInstance;
+import com.oracle.truffle.api.frame.FrameInstanceVisitor;
+import com.oracle.truffle.api.nodes.Node;
+import com.oracle.truffle.api.nodes.RootNode;
+import com.oracle.truffle.api.source.SourceSection;
+
+/**
+ * Sampling profiler for MicroJava++ programs. A background thread requests a sample every interval,
+ * and the program thread takes it at its next function entry or loop iteration, see {@link #poll}: it
+ * walks its own stack with {@link TruffleRuntime#iterateFrames}, which only sees the frames of the
+ * calling thread, and records one <code>function:line</code> entry per {@link MJFunction}. A frame
+ * without source information is recorded by name only.
+ * <p>
+ * The profile is written in the collapsed stack format of flame graph tools: one line per distinct
+ * stack, outermost frame first and frames separated by <code>;</code>, followed by the number of
+ * samples that saw it.
+ * <p>
+ * Every context with <code>--mj.profile</code> has a profiler of its own, kept by its
+ * {@link MJContext}. Until any profiler is started, {@link #poll} is guarded by an assumption and
+ * compiles to nothing.
+ */
+public final class MJProfiler {
+
+    private static final Assumption neverStarted = Truffle.getRuntime().createAssumption("MicroJava++ profiler never started");
+
+    private final Map<String, Integer> stacks = new TreeMap<>();
+    private final Thread timer;
+    private volatile boolean sampleRequested;
+    private volatile boolean stopped;
+
+    private MJProfiler(final int intervalMillis) {
+        timer = new Thread(new Runnable() {
+            public void run() {
+                while (!stopped) {
+                    try {
+                        Thread.sleep(intervalMillis);
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                    sampleRequested = true;
+                }
+            }
+        }, "MicroJava++ profiler");
+        timer.setDaemon(true);
+    }
+
+    /** A profiler that samples every <code>intervalMillis</code> milliseconds. */
+    public static MJProfiler start(int intervalMillis) {
+        if (intervalMillis <= 0) {
+            throw new Error("Profiler interval should be positive, but is " + intervalMillis);
+        }
+        MJProfiler profiler = new MJProfiler(intervalMillis);
+        neverStarted.invalidate();
+        profiler.timer.start();
+        return profiler;
+    }
+
+    /** Stops sampling and writes the collected stacks to <code>output</code>. */
+    public synchronized void stop(String output) {
+        if (stopped) {
+            return;
+        }
+        stopped = true;
+        timer.interrupt();
+        sampleRequested = false;
+        write(output);
+    }
+
+    /**
+     * Takes a sample for the profiler of the current context if one is due; <code>location</code> is
+     * the node the program is executing and gives the line of the innermost frame.
+     */
+    public static void poll(Node location) {
+        if (!neverStarted.isValid()) {
+            MJContext context = MJContext.get(location);
+            MJProfiler profiler = context == null ? null : context.getProfiler();
+            if (profiler != null && profiler.sampleRequested) {
+                profiler.sample(location);
+            }
+        }
+    }
+
+    @TruffleBoundary
+    private synchronized void sample(final Node location) {
+        sampleRequested = false;
+        if (stopped) {
+            return;
+        }
+        final List<String> frames = new ArrayList<>();
+        Truffle.getRuntime().iterateFrames(new FrameInstanceVisitor<Object>() {
+            public Object visitFrame(FrameInstance frame) {
+                RootNode root = ((RootCallTarget) frame.getCallTarget()).getRootNode();
+                if (root instanceof MJFunction) {
+                    // the innermost frame has no call node, it is executing location
+                    Node node = frames.isEmpty() ? location : frame.getCallNode();
+                    frames.add(label((MJFunction) root, node));
+                }
+                return null;
+            }
+        });
+        if (frames.isEmpty()) {
+            return;
+        }
+        Collections.reverse(frames);
+        StringBuilder stack = new StringBuilder();
+        for (String frame : frames) {
+            if (stack.length() > 0) {
+                stack.append(';');
+            }
+            stack.append(frame);
+        }
+        Integer count = stacks.get(stack.toString());
+        stacks.put(stack.toString(), count == null ? 1 : count + 1);
+    }
+
+    private static String label(MJFunction function, Node node) {
+        SourceSection section = node == null ? null : node.getEncapsulatingSourceSection();
+        if (section == null) {
+            section = function.getSourceSection();
+        }
+        if (section == null || !section.isAvailable()) {
+            return function.getName();
+        }
+        return function.getName() + ":" + section.getStartLine();
+    }
+
+    private void write(String output) {
+        try (PrintWriter out = new PrintWriter(new FileWriter(output))) {
+            for (Map.Entry<String, Integer> entry : stacks.entrySet()) {
+                out.println(entry.getKey() + " " + entry.getValue());
+            }
+        } catch (IOException e) {
+            throw new Error("Cannot write profile to " + output + ": " + e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,83 @@
+package org.truffle.cs.mj.tools;
+
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+import org.graalvm.options.OptionCategory;
+import org.graalvm.options.OptionDescriptors;
+import org.graalvm.options.OptionKey;
+import org.graalvm.options.OptionStability;
+
+import com.oracle.truffle.api.Option;
+import com.oracle.truffle.api.instrumentation.LoadSourceSectionEvent;
+import com.oracle.truffle.api.instrumentation.LoadSourceSectionListener;
+import com.oracle.truffle.api.instrumentation.SourceSectionFilter;
+import com.oracle.truffle.api.instrumentation.StandardTags;
+import com.oracle.truffle.api.instrumentation.TruffleInstrument;
+import com.oracle.truffle.api.nodes.RootNode;
+
+/**
+ * Writes a {@link MJSpecializationReport} of every MicroJava++ function when the engine closes, so
+ * the specializations the nodes ended up in after a run can be checked for polymorphic and generic
+ * ones.
+ * <p>
+ * Enabled with <code>--mj-specializations</code>. The instrument only listens for functions being
+ * loaded and attaches nothing to them, so it does not change the specializations it reports.
+ */
+@TruffleInstrument.Registration(id = MJSpecializationInstrument.ID, name = "MicroJava++ specializations")
+public final class MJSpecializationInstrument extends TruffleInstrument {
+
+    public static final String ID = "mj-specializations";
+
+    @Option(name = "", help = "Report the specializations and AST size of every MicroJava++ function at exit.", category = OptionCategory.USER, stability = OptionStability.STABLE) //
+    static final OptionKey<Boolean> ENABLED = new OptionKey<>(false);
+
+    @Option(name = "output", help = "File the --mj-specializations report is written to, standard error if empty.", category = OptionCategory.USER, stability = OptionStability.STABLE) //
+    static final OptionKey<String> OUTPUT = new OptionKey<>("");
+
+    private final Set<RootNode> functions = new LinkedHashSet<>();
+    private boolean enabled;
+
+    @Override
+    protected OptionDescriptors getOptionDescriptors() {
+        return new MJSpecializationInstrumentOptionDescriptors();
+    }
+
+    @Override
+    protected void onCreate(Env env) {
+        enabled = env.getOptions().get(ENABLED);
+        if (!enabled) {
+            return;
+        }
+        env.getInstrumenter().attachLoadSourceSectionListener(SourceSectionFilter.newBuilder().tagIs(StandardTags.RootTag.class).build(), new LoadSourceSectionListener() {
+            public void onLoad(LoadSourceSectionEvent event) {
+                synchronized (functions) {
+                    functions.add(event.getNode().getRootNode());
+                }
+            }
+        }, true);
+    }
+
+    @Override
+    protected void onDispose(Env env) {
+        if (!enabled) {
+            return;
+        }
+        String output = env.getOptions().get(OUTPUT);
+        synchronized (functions) {
+            if (output.isEmpty()) {
+                MJSpecializationReport.write(new ArrayList<>(functions), new PrintStream(env.err(), true));
+                return;
+            }
+            try (PrintStream out = new PrintStream(new FileOutputStream(output))) {
+                MJSpecializationReport.write(new ArrayList<>(functions), out);
+            } catch (IOException e) {
+                throw new Error("Cannot write specialization report to " + output + ": " + e.getMessage());
+            }
+        }
+    }
+}
@@ -0,0 +1,271 @@
+package org.truffle.cs.mj.tools;
+
+import java.io.PrintStream;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.oracle.truffle.api.dsl.Fallback;
+import com.oracle.truffle.api.dsl.Introspection;
+import com.oracle.truffle.api.dsl.Introspection.SpecializationInfo;
+import com.oracle.truffle.api.frame.Frame;
+import com.oracle.truffle.api.instrumentation.InstrumentableNode;
+import com.oracle.truffle.api.nodes.Node;
+import com.oracle.truffle.api.nodes.NodeVisitor;
+import com.oracle.truffle.api.nodes.RootNode;
+import com.oracle.truffle.api.source.SourceSection;
+
+/**
+ * Lists the specializations the DSL nodes of MicroJava++ functions are in, one line per node that
+ * has any, with the size of each function's AST:
+ *
+ * <pre>
+ * == sum (spec.mj:4:3): 10 nodes, ~408 bytes
+ *        4:28  MJBinaryNode.AddNode                             add, add   POLYMORPHIC
+ *        4:43  MJConstantNode.IntNode                           doInt
+ * </pre>
+ *
+ * A node is flagged
+ * <ul>
+ * <li><code>POLYMORPHIC</code> when more than one of its specializations is active, or one is
+ * active with more than one cached instance;</li>
+ * <li><code>GENERIC</code> when it left a specialization for a more generic one, or is in its
+ * {@link Fallback} or in a specialization that takes only <code>Object</code>s.</li>
+ * </ul>
+ * Both mean more than one type check, or a boxed value, in the compiled code of the node.
+ * <p>
+ * Memory is a shallow estimate for a 64-bit VM with compressed references: a 16 byte header per
+ * node, the size of its fields, and the arrays of its {@link Node.Children}. Nodes of instruments are
+ * left out of both counts.
+ */
+public final class MJSpecializationReport {
+
+    private static final int HEADER_BYTES = 16;
+    private static final int REFERENCE_BYTES = 4;
+
+    private static final String POLYMORPHIC = "POLYMORPHIC";
+    private static final String GENERIC = "GENERIC";
+
+    private static final Map<Class<?>, Long> shallowSizes = new HashMap<>();
+
+    private MJSpecializationReport() {
+    }
+
+    /** Writes the report of <code>functions</code> to <code>out</code>. */
+    public static void write(Collection<? extends RootNode> functions, PrintStream out) {
+        int flagged = 0;
+        for (RootNode function : functions) {
+            List<String> lines = new ArrayList<>();
+            long[] size = walk(function, lines);
+            out.println("== " + function.getName() + " (" + location(function.getSourceSection(), true) + "): " + size[0] + " nodes, ~" + size[1] + " bytes");
+            for (String line : lines) {
+                out.println(line);
+                if (isFlagged(line)) {
+                    flagged++;
+                }
+            }
+        }
+        out.println("== " + functions.size() + " functions, " + flagged + " polymorphic or generic nodes");
+        out.flush();
+    }
+
+    /** The report lines of the nodes of <code>function</code> that went polymorphic or generic. */
+    public static List<String> findPolymorphicOrGeneric(RootNode function) {
+        List<String> lines = new ArrayList<>();
+        walk(function, lines);
+        List<String> flagged = new ArrayList<>();
+        for (String line : lines) {
+            if (isFlagged(line)) {
+                flagged.add(line.trim());
+            }
+        }
+        return flagged;
+    }
+
+    private static boolean isFlagged(String line) {
+        return line.endsWith(POLYMORPHIC) || line.endsWith(GENERIC);
+    }
+
+    /** Adds the lines of <code>function</code>'s nodes, returns its node count and size. */
+    private static long[] walk(RootNode function, final List<String> lines) {
+        final long[] size = new long[2];
+        function.accept(new NodeVisitor() {
+            public boolean visit(Node node) {
+                if (node instanceof InstrumentableNode.WrapperNode) {
+                    // descend into the delegate only, the probe belongs to the instruments
+                    ((InstrumentableNode.WrapperNode) node).getDelegateNode().accept(this);
+                    return false;
+                }
+                size[0]++;
+                size[1] += bytes(node);
+                if (Introspection.isIntrospectable(node)) {
+                    String line = describe(node);
+                    if (line != null) {
+                        lines.add(line);
+                    }
+                }
+                return true;
+            }
+        });
+        return size;
+    }
+
+    /** The line of an introspectable node, null if it has not specialized yet. */
+    private static String describe(Node node) {
+        List<SpecializationInfo> infos = Introspection.getSpecializations(node);
+        Class<?> nodeClass = nodeClass(node);
+        StringBuilder active = new StringBuilder();
+        int activeCount = 0;
+        boolean polymorphic = false;
+        boolean generic = false;
+        for (int i = 0; i < infos.size(); i++) {
+            SpecializationInfo info = infos.get(i);
+            if (info.isExcluded()) {
+                generic = true;
+            }
+            if (!info.isActive()) {
+                continue;
+            }
+            if (activeCount++ > 0) {
+                active.append(", ");
+            }
+            active.append(info.getMethodName());
+            int instances = info.getInstances();
+            if (instances > 1) {
+                active.append(" x").append(instances);
+                polymorphic = true;
+            }
+            if (infos.size() > 1 && isLastNamed(infos, i) && hasObjectOverload(nodeClass, info.getMethodName())) {
+                generic = true;
+            }
+        }
+        if (activeCount == 0) {
+            return null;
+        }
+        polymorphic |= activeCount > 1;
+        String name = nodeClass.getName().substring(nodeClass.getName().lastIndexOf('.') + 1).replace('$', '.');
+        StringBuilder line = new StringBuilder(String.format("   %8s  %-48s %s", location(node.getEncapsulatingSourceSection(), false), name, active));
+        if (polymorphic || generic) {
+            line.append("  ");
+        }
+        if (polymorphic) {
+            line.append(' ').append(POLYMORPHIC);
+        }
+        if (generic) {
+            line.append(' ').append(GENERIC);
+        }
+        return line.toString();
+    }
+
+    /** The class the DSL generated the node from. */
+    private static Class<?> nodeClass(Node node) {
+        Class<?> nodeClass = node.getClass();
+        return nodeClass.getSimpleName().endsWith("Gen") ? nodeClass.getSuperclass() : nodeClass;
+    }
+
+    private static boolean isLastNamed(List<SpecializationInfo> infos, int index) {
+        for (int i = index + 1; i < infos.size(); i++) {
+            if (infos.get(i).getMethodName().equals(infos.get(index).getMethodName())) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Whether <code>nodeClass</code> has a method <code>name</code> that takes only frames and
+     * Objects. The DSL annotations are not kept at run time, but overloads of a specialization are
+     * listed in the order they are declared, and the one taking Objects has to come last to be
+     * reachable, as does a {@link Fallback}.
+     */
+    private static boolean hasObjectOverload(Class<?> nodeClass, String name) {
+        for (Class<?> c = nodeClass; c != Node.class; c = c.getSuperclass()) {
+            for (Method method : c.getDeclaredMethods()) {
+                if (method.getName().equals(name) && takesOnlyObjects(method)) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    private static boolean takesOnlyObjects(Method method) {
+        int objects = 0;
+        for (Class<?> parameter : method.getParameterTypes()) {
+            if (parameter == Object.class) {
+                objects++;
+            } else if (!Frame.class.isAssignableFrom(parameter)) {
+                return false;
+            }
+        }
+        return objects > 0;
+    }
+
+    private static String location(SourceSection section, boolean withSource) {
+        if (section == null || !section.isAvailable()) {
+            return "-";
+        }
+        String line = section.getStartLine() + ":" + section.getStartColumn();
+        return withSource ? section.getSource().getName() + ":" + line : line;
+    }
+
+    /** Shallow size of <code>node</code> with its child arrays. */
+    private static long bytes(Node node) {
+        long bytes = shallowSize(node.getClass());
+        for (Class<?> c = node.getClass(); c != Object.class; c = c.getSuperclass()) {
+            for (Field field : c.getDeclaredFields()) {
+                if (field.isAnnotationPresent(Node.Children.class) && !Modifier.isStatic(field.getModifiers())) {
+                    try {
+                        field.setAccessible(true);
+                        Object[] children = (Object[]) field.get(node);
+                        if (children != null) {
+                            bytes += align(HEADER_BYTES + REFERENCE_BYTES * children.length);
+                        }
+                    } catch (IllegalAccessException e) {
+                        // counted without its array
+                    }
+                }
+            }
+        }
+        return bytes;
+    }
+
+    private static synchronized long shallowSize(Class<?> nodeClass) {
+        Long size = shallowSizes.get(nodeClass);
+        if (size == null) {
+            long bytes = HEADER_BYTES;
+            for (Class<?> c = nodeClass; c != Object.class; c = c.getSuperclass()) {
+                for (Field field : c.getDeclaredFields()) {
+                    if (!Modifier.isStatic(field.getModifiers())) {
+                        bytes += fieldBytes(field.getType());
+                    }
+                }
+            }
+            size = align(bytes);
+            shallowSizes.put(nodeClass, size);
+        }
+        return size;
+    }
+
+    private static long fieldBytes(Class<?> type) {
+        if (type == long.class || type == double.class) {
+            return 8;
+        } else if (type == int.class || type == float.class) {
+            return 4;
+        } else if (type == char.class || type == short.class) {
+            return 2;
+        } else if (type == byte.class || type == boolean.class) {
+            return 1;
+        }
+        return REFERENCE_BYTES;
+    }
+
+    private static long align(long bytes) {
+        return (bytes + 7) & ~7L;
+    }
+}
@@ -8,6 +8,7 @@ from argparse import ArgumentParser
 import mx
 import mx_subst
 import mx_sdk
+import mx_unittest
 import re
 
 _suite = mx.suite('trufflecourse')
@@ -31,6 +32,17 @@ def runMJInterpreter(args=None, out=None, get_classpath_options=getClasspathOpti
                                                        "-Dgraal.Dump=Truffle:5"] +
     args + ["org.truffle.cs.mj.main.MJRuntime"], out=out,jdk=mx.get_jdk())
 
+def runMJBenchmark(args=None, out=None, get_classpath_options=getClasspathOptions):
+    """runs MicroJava++ programs in fresh JVMs and writes their startup and warmup times"""
+    dists = ["TruffleCourse"]
+    return mx.run_java(get_classpath_options(dists) + ["-XX:+EnableJVMCI",
+                                                       "-XX:+UseJVMCICompiler",
+                                                       "org.truffle.cs.mj.main.MJBenchmark"] + args, out=out,jdk=mx.get_jdk())
+
+def runMJTest(args=None):
+    """runs the JUnit tests of MicroJava++: partial evaluation of key snippets, and a program with its expected output per language feature"""
+    return mx_unittest.unittest(["--suite", "trufflecourse"] + (args or []))
+
 
 def runPESamples(args=None, out=None, get_classpath_options=getClasspathOptions):
     dists = ["TruffleCourse"]
@@ -43,5 +55,7 @@ def runPESamples(args=None, out=None, get_classpath_options=getClasspathOptions)
 mx.update_commands(_suite, {
     'peSamples' : [runPESamples, ''],
     'mjInterpreter' : [runMJInterpreter, ''],
+    'mjBenchmark' : [runMJBenchmark, '[--iterations n] [--steady n] [--format csv|json] [--output file] [--label version] [--corpus] program.mj[:arg,...]...'],
+    'mjTest' : [runMJTest, '[unittest options]'],
     'plainAST' : [runPlainAST,'']
 })
@@ -8,6 +8,11 @@ suite = {
         "name": "truffle",
         "subdir": True,
         "version": "a5d4ddddcb724626a5d92c009b2d8f7fa394a1e4"
+      },
+      {
+        "name": "compiler",
+        "subdir": True,
+        "version": "a5d4ddddcb724626a5d92c009b2d8f7fa394a1e4"
       }
     ],
   },
@@ -31,6 +36,17 @@ suite = {
       "annotationProcessors": ["truffle:TRUFFLE_DSL_PROCESSOR"],
       "javaCompliance": "1.8"
     },       
+    "org.truffle.cs.mj.test": {
+      "subDir": "code",
+      "sourceDirs": ["src"],
+      "dependencies": [
+        "org.truffle.cs.mj",
+        "compiler:GRAAL_TEST",
+        "mx:JUNIT"
+      ],
+      "javaCompliance": "1.8",
+      "testProject": True
+    },
   },
 
   "distributions": {
@@ -43,6 +59,20 @@ suite = {
       "distDependencies": [
         "truffle:TRUFFLE_API",
       ]   
+    },
+    "TRUFFLECOURSE_TEST": {
+      "subDir": "code",
+      "dependencies": [
+        "org.truffle.cs.mj.test"
+      ],
+      "distDependencies": [
+        "TruffleCourse",
+        "compiler:GRAAL_TEST",
+      ],
+      "exclude": [
+        "mx:JUNIT"
+      ],
+      "testDistribution": True
     }
   }
 }